@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.assets;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Checksum;
+
+/**
+ * 多线程拷贝文件树, 每个文件是一个任务, 在固定数量的工作线程中执行.
+ * 每个工作线程复用一块大buffer; 源为 {@link FileInputStream} 时使用 FileChannel.transferTo.
+ * 文件先写入同目录的临时文件, 同步到磁盘后再重命名, 失败、取消或断电不会留下不完整的文件.
+ * 不依赖 Context, 也可以在普通JVM上运行. eg:
+ * AssetCopyJob job = new AssetCopier().copy(new AssetManagerSource(context), "models", dir);
+ * job.await();
+ */
+public class AssetCopier {
+    private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    public interface ProgressListener {
+        /**
+         * 每个文件结束(成功或失败)时在工作线程中调用, 需要线程安全且快速返回
+         */
+        void onProgress(AssetCopyJob job);
+    }
+
+    private final ExecutorService mExecutor;
+    private final ThreadLocal<byte[]> mBuffers = new ThreadLocal<byte[]>();
+    private volatile int mBufferSize = DEFAULT_BUFFER_SIZE;
+    private volatile ProgressListener mProgressListener;
+
+    public AssetCopier() {
+        this(Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param threads 同时拷贝的文件数
+     */
+    public AssetCopier(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads:" + threads);
+        }
+        mExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "assets_copy_" + mCount.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * @param bytes 每个工作线程的buffer大小, 默认256KB, 也是检查取消的粒度
+     */
+    public void setBufferSize(int bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("bytes:" + bytes);
+        }
+        mBufferSize = bytes;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        mProgressListener = listener;
+    }
+
+    /**
+     * 拷贝源目录(含子目录)下的所有文件. 源路径是文件时拷贝为 toDir 本身.
+     * @param fromPath 源中的目录, eg: "models" 或 "models/sub"
+     * @param toDir 目标目录
+     */
+    public AssetCopyJob copy(AssetSource source, String fromPath, File toDir) {
+        AssetCopyJob job = new AssetCopyJob(this, source, mProgressListener);
+        job.start(fromPath, toDir);
+        return job;
+    }
+
+    /**
+     * 不再接受新任务, 已提交的任务继续执行
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    void execute(Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    /**
+     * 在工作线程中调用, 拷贝一个文件
+     * @return 拷贝的字节数
+     */
+    long copyFile(AssetSource source, String path, File file, AssetCopyJob job) throws IOException {
+        byte[] buffer = mBuffers.get();
+        if (buffer == null || buffer.length != mBufferSize) {
+            buffer = new byte[mBufferSize];
+            mBuffers.set(buffer);
+        }
+        return copyFile(source, path, file, buffer, job, null);
+    }
+
+    /**
+     * 拷贝一个文件到同目录的临时文件, 同步到磁盘后重命名
+     * @param buffer 源不是 {@link FileInputStream} 或需要校验和时使用, 其大小也是检查取消的粒度
+     * @param job 所属的任务, 用于检查取消和统计字节数, 可以为null
+     * @param checksum 不为null时用拷贝的数据更新, 此时不使用transferTo
+     * @return 拷贝的字节数
+     */
+    static long copyFile(AssetSource source, String path, File file, byte[] buffer, AssetCopyJob job,
+            Checksum checksum) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("mkdirs " + dir + " failed");
+        }
+        File temp = new File(dir, "." + file.getName() + ".tmp");
+        long size = 0;
+        boolean success = false;
+        InputStream in = source.open(path);
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                if (checksum == null && in instanceof FileInputStream) {
+                    size = transfer(((FileInputStream) in).getChannel(), out.getChannel(), buffer.length, job);
+                } else {
+                    size = copy(in, out, buffer, job, checksum);
+                }
+                if (!isCancelled(job)) {
+                    out.getFD().sync();
+                }
+            } finally {
+                out.close();
+            }
+            if (!isCancelled(job)) {
+                if (!temp.renameTo(file)) {
+                    throw new IOException("rename " + temp + " to " + file + " failed");
+                }
+                success = true;
+            }
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+            if (!success) {
+                temp.delete();
+            }
+        }
+        return size;
+    }
+
+    private static boolean isCancelled(AssetCopyJob job) {
+        return job != null && job.isCancelled();
+    }
+
+    private static long transfer(FileChannel in, FileChannel out, int chunk, AssetCopyJob job) throws IOException {
+        long size = in.size();
+        long position = 0;
+        while (position < size && !isCancelled(job)) {
+            long count = in.transferTo(position, Math.min(chunk, size - position), out);
+            if (count <= 0) {
+                // 文件被截断
+                break;
+            }
+            position += count;
+            if (job != null) {
+                job.onBytesCopied(count);
+            }
+        }
+        return position;
+    }
+
+    private static long copy(InputStream in, FileOutputStream out, byte[] buffer, AssetCopyJob job,
+            Checksum checksum) throws IOException {
+        long size = 0;
+        int count;
+        while (!isCancelled(job) && (count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+            if (checksum != null) {
+                checksum.update(buffer, 0, count);
+            }
+            size += count;
+            if (job != null) {
+                job.onBytesCopied(count);
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.assets;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link AssetCopier#copy} 返回的拷贝任务, 用于查询进度、取消和等待结束.
+ * 先在工作线程中遍历源目录, 再把每个文件作为任务提交, 遍历结束前总文件数为0.
+ */
+public class AssetCopyJob {
+    private final AssetCopier mCopier;
+    private final AssetSource mSource;
+    private final AssetCopier.ProgressListener mListener;
+    private final CountDownLatch mDone = new CountDownLatch(1);
+
+    private volatile boolean mCancelled = false;
+    private volatile int mTotalFiles = 0;
+    /** 遍历完成前多计1, 避免文件任务先于遍历结束时提前完成 */
+    private final AtomicInteger mPendingFiles = new AtomicInteger(1);
+    private final AtomicInteger mCopiedFiles = new AtomicInteger();
+    private final AtomicInteger mFinishedFiles = new AtomicInteger();
+    private final AtomicLong mCopiedBytes = new AtomicLong();
+    private final Map<String, Throwable> mFailures = new ConcurrentHashMap<String, Throwable>();
+
+    AssetCopyJob(AssetCopier copier, AssetSource source, AssetCopier.ProgressListener listener) {
+        mCopier = copier;
+        mSource = source;
+        mListener = listener;
+    }
+
+    void start(final String fromPath, final File toDir) {
+        try {
+            mCopier.execute(new Runnable() {
+                @Override
+                public void run() {
+                    submitFiles(fromPath, toDir);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mFailures.put(fromPath, e);
+            mDone.countDown();
+        }
+    }
+
+    /**
+     * 取消拷贝, 正在拷贝的文件在当前buffer写完后停止并删除临时文件, 已完成的文件保留
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    public boolean isDone() {
+        return mDone.getCount() == 0;
+    }
+
+    /**
+     * 等待所有文件结束(包括取消后的提前结束)
+     * @return 所有文件都拷贝成功且没有取消
+     */
+    public boolean await() throws InterruptedException {
+        mDone.await();
+        return isSuccess();
+    }
+
+    /**
+     * @return 超时返回false
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return mDone.await(timeout, unit) && isSuccess();
+    }
+
+    private boolean isSuccess() {
+        return !mCancelled && mFailures.isEmpty();
+    }
+
+    /**
+     * @return 源目录下的文件数, 遍历结束前为0
+     */
+    public int getTotalFiles() {
+        return mTotalFiles;
+    }
+
+    /**
+     * @return 已结束(成功、失败或取消)的文件数
+     */
+    public int getFinishedFiles() {
+        return mFinishedFiles.get();
+    }
+
+    public int getCopiedFiles() {
+        return mCopiedFiles.get();
+    }
+
+    public long getCopiedBytes() {
+        return mCopiedBytes.get();
+    }
+
+    /**
+     * @return 拷贝失败的源路径及其异常, 遍历失败时为源目录
+     */
+    public Map<String, Throwable> getFailures() {
+        return Collections.unmodifiableMap(mFailures);
+    }
+
+    void onBytesCopied(long count) {
+        mCopiedBytes.addAndGet(count);
+    }
+
+    private void submitFiles(String fromPath, File toDir) {
+        List<String> paths = new ArrayList<String>();
+        try {
+            listFiles(fromPath, "", paths);
+        } catch (IOException e) {
+            mFailures.put(fromPath, e);
+            paths.clear();
+        }
+        mTotalFiles = paths.size();
+        mPendingFiles.addAndGet(paths.size());
+        for (String path : paths) {
+            final String sourcePath = path.isEmpty() ? fromPath : fromPath + "/" + path;
+            final File file = path.isEmpty() ? toDir : new File(toDir, path);
+            try {
+                mCopier.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        copyFile(sourcePath, file);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                mFailures.put(sourcePath, e);
+                onFileFinished();
+            }
+        }
+        finishPending();
+    }
+
+    private void listFiles(String sourcePath, String relative, List<String> out) throws IOException {
+        if (mCancelled) {
+            return;
+        }
+        String[] names = mSource.list(sourcePath);
+        if (names.length == 0) {
+            out.add(relative);
+            return;
+        }
+        for (String name : names) {
+            listFiles(sourcePath + "/" + name, relative.isEmpty() ? name : relative + "/" + name, out);
+        }
+    }
+
+    private void copyFile(String sourcePath, File file) {
+        if (!mCancelled) {
+            try {
+                mCopier.copyFile(mSource, sourcePath, file, this);
+                if (!mCancelled) {
+                    mCopiedFiles.incrementAndGet();
+                }
+            } catch (IOException e) {
+                mFailures.put(sourcePath, e);
+            } catch (RuntimeException e) {
+                mFailures.put(sourcePath, e);
+            }
+        }
+        onFileFinished();
+    }
+
+    private void onFileFinished() {
+        mFinishedFiles.incrementAndGet();
+        if (mListener != null) {
+            mListener.onProgress(this);
+        }
+        finishPending();
+    }
+
+    private void finishPending() {
+        if (mPendingFiles.decrementAndGet() == 0) {
+            mDone.countDown();
+        }
+    }
+}
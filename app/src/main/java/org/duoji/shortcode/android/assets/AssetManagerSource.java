@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.assets;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * apk中的assets目录
+ */
+public class AssetManagerSource implements AssetSource {
+    private final AssetManager mAssets;
+
+    public AssetManagerSource(Context context) {
+        this(context.getAssets());
+    }
+
+    public AssetManagerSource(AssetManager assets) {
+        mAssets = assets;
+    }
+
+    @Override
+    public String[] list(String path) throws IOException {
+        String[] names = mAssets.list(path);
+        return names == null ? new String[0] : names;
+    }
+
+    @Override
+    public InputStream open(String path) throws IOException {
+        return mAssets.open(path);
+    }
+}
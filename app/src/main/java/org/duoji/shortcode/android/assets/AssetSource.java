@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.assets;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 可以列出和读取的文件树, 路径用/分隔. 使 {@link AssetCopier} 不依赖 Context.
+ * 实现需要线程安全, 会被多个拷贝线程同时调用.
+ */
+public interface AssetSource {
+    /**
+     * @return 目录下的文件和子目录名, 文件或不存在的路径返回空数组
+     */
+    String[] list(String path) throws IOException;
+
+    /**
+     * 打开文件. 返回 {@link java.io.FileInputStream} 时拷贝使用 FileChannel.transferTo
+     */
+    InputStream open(String path) throws IOException;
+}
@@ -17,15 +17,28 @@
 package org.duoji.shortcode.android.assets;
 
 import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.AssetManager;
 import android.util.Log;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
 
 public class AssetsFileUtil {
     private static final String TAG = "AssetsFileUtil";
+    /**
+     * 清单文件与目标目录同级, 文件名为目标目录名加该后缀
+     */
+    public static final String MANIFEST_SUFFIX = ".manifest";
+    private static final int BUFFER_SIZE = 8 * 1024;
 
     /**
      * copy all files include sub dir in assets dir,
@@ -46,15 +59,21 @@ public class AssetsFileUtil {
                 }
             } else {//如果是文件
                 InputStream is = context.getAssets().open(oldPath);
-                FileOutputStream fos = new FileOutputStream(new File(newPath));
-                byte[] buffer = new byte[1024];
-                int byteCount=0;
-                while((byteCount=is.read(buffer))!=-1) {//循环从输入流读取 buffer字节
-                    fos.write(buffer, 0, byteCount);//将读取的输入流写入到输出流
+                try {
+                    FileOutputStream fos = new FileOutputStream(new File(newPath));
+                    try {
+                        byte[] buffer = new byte[BUFFER_SIZE];
+                        int byteCount=0;
+                        while((byteCount=is.read(buffer))!=-1) {//循环从输入流读取 buffer字节
+                            fos.write(buffer, 0, byteCount);//将读取的输入流写入到输出流
+                        }
+                        fos.flush();//刷新缓冲区
+                    } finally {
+                        fos.close();
+                    }
+                } finally {
+                    is.close();
                 }
-                fos.flush();//刷新缓冲区
-                is.close();
-                fos.close();
             }
             return true;
         } catch (IOException e) {
@@ -62,4 +81,167 @@ public class AssetsFileUtil {
             return false;
         }
     }
+
+    /**
+     * 多线程拷贝assets目录, 立即返回, 通过返回的任务等待结束、查询进度和每个文件的失败原因
+     * @param copier 拷贝使用的线程池, 可以在多次拷贝间复用
+     * @param oldPath dir in assets dir, 同 {@link #copyAssetsDir(Context, String, String)}
+     * @param newPath the dir to store files in oldPath.
+     */
+    public static AssetCopyJob copyAssetsDirParallel(Context context, AssetCopier copier, String oldPath, String newPath) {
+        return copier.copy(new AssetManagerSource(context), oldPath, new File(newPath));
+    }
+
+    /**
+     * 增量拷贝assets目录, 适合每次启动时调用.
+     * 拷贝后在目标目录旁写入清单, 记录apk版本和每个文件的大小与CRC32:
+     * apk版本未变时不再遍历assets, 只补齐被删除或大小不对的文件;
+     * apk版本变化时重新遍历, 内容相同的文件不再写入, assets中已删除的文件从目标目录删除.
+     * 每个文件先写临时文件再重命名, 中途退出不会留下不完整的文件.
+     * @param context
+     * @param oldPath dir in assets dir, 同 {@link #copyAssetsDir(Context, String, String)}; 是文件时拷贝为newPath本身
+     * @param newPath the dir to store files in oldPath.
+     * @return 所有文件都拷贝成功返回true
+     */
+    public static boolean copyAssetsDirIncremental(Context context, String oldPath, String newPath) {
+        AssetManager assets = context.getAssets();
+        AssetSource source = new AssetManagerSource(assets);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        File target = new File(newPath);
+        File manifestFile = new File(target.getParentFile(), target.getName() + MANIFEST_SUFFIX);
+        String version = getAssetsVersion(context);
+        AssetsManifest previous = AssetsManifest.read(manifestFile);
+        if (previous != null && previous.matches(version, oldPath)) {
+            boolean success = true;
+            for (AssetsManifest.Entry entry : previous.getEntries()) {
+                File file = targetFile(target, entry.mPath);
+                if (file.isFile() && file.length() == entry.mSize) {
+                    continue;
+                }
+                Log.d(TAG, "restore:" + entry.mPath);
+                try {
+                    extractFile(source, assetPath(oldPath, entry.mPath), entry.mPath, file, buffer);
+                } catch (IOException e) {
+                    Log.e(TAG, "copy " + entry.mPath + " failed", e);
+                    success = false;
+                }
+            }
+            return success;
+        }
+
+        List<String> paths = new ArrayList<String>();
+        try {
+            listFiles(assets, oldPath, "", paths);
+        } catch (IOException e) {
+            Log.e(TAG, "list " + oldPath + " failed", e);
+            return false;
+        }
+        boolean success = true;
+        AssetsManifest manifest = new AssetsManifest(version, oldPath);
+        for (String path : paths) {
+            String assetPath = assetPath(oldPath, path);
+            File file = targetFile(target, path);
+            try {
+                AssetsManifest.Entry old = previous == null ? null : previous.get(path);
+                if (old != null && file.isFile() && file.length() == old.mSize && crc(assets, assetPath) == old.mCrc) {
+                    manifest.put(old);
+                    continue;
+                }
+                manifest.put(extractFile(source, assetPath, path, file, buffer));
+            } catch (IOException e) {
+                Log.e(TAG, "copy " + path + " failed", e);
+                success = false;
+            }
+        }
+        if (previous != null) {
+            Set<String> current = new HashSet<String>(paths);
+            for (AssetsManifest.Entry entry : previous.getEntries()) {
+                if (!current.contains(entry.mPath)) {
+                    targetFile(target, entry.mPath).delete();
+                }
+            }
+        }
+        try {
+            // 有文件失败时不记录版本, 下次重新遍历
+            (success ? manifest : copyOf(manifest, null)).write(manifestFile);
+        } catch (IOException e) {
+            Log.e(TAG, "write manifest failed", e);
+        }
+        return success;
+    }
+
+    /**
+     * @return apk版本号和更新时间, 覆盖安装后改变; 获取失败返回null
+     */
+    static String getAssetsVersion(Context context) {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return info.versionCode + ":" + info.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param relative 相对源目录的路径, oldPath本身是文件时为""
+     */
+    private static String assetPath(String oldPath, String relative) {
+        return relative.isEmpty() ? oldPath : oldPath + "/" + relative;
+    }
+
+    /**
+     * @param relative 相对源目录的路径, oldPath本身是文件时为"", 拷贝到newPath本身
+     */
+    private static File targetFile(File target, String relative) {
+        return relative.isEmpty() ? target : new File(target, relative);
+    }
+
+    private static AssetsManifest copyOf(AssetsManifest manifest, String version) {
+        AssetsManifest copy = new AssetsManifest(version, manifest.getSource());
+        for (AssetsManifest.Entry entry : manifest.getEntries()) {
+            copy.put(entry);
+        }
+        return copy;
+    }
+
+    /**
+     * 递归列出目录下的所有文件, list()为空的当作文件
+     * @param relative 相对源目录的路径, 源目录本身为""
+     */
+    private static void listFiles(AssetManager assets, String assetPath, String relative, List<String> out)
+            throws IOException {
+        String[] names = assets.list(assetPath);
+        if (names == null || names.length == 0) {
+            out.add(relative);
+            return;
+        }
+        for (String name : names) {
+            listFiles(assets, assetPath + "/" + name, relative.isEmpty() ? name : relative + "/" + name, out);
+        }
+    }
+
+    private static long crc(AssetManager assets, String assetPath) throws IOException {
+        InputStream is = assets.open(assetPath);
+        try {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = is.read(buffer)) != -1) {
+                crc.update(buffer, 0, count);
+            }
+            return crc.getValue();
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * 通过 {@link AssetCopier#copyFile} 拷贝, 同时计算清单需要的CRC32
+     */
+    private static AssetsManifest.Entry extractFile(AssetSource source, String assetPath, String relative, File file,
+            byte[] buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = AssetCopier.copyFile(source, assetPath, file, buffer, null, crc);
+        return new AssetsManifest.Entry(relative, size, crc.getValue());
+    }
 }
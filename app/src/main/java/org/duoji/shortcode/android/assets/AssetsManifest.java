@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.assets;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+/**
+ * 记录一次assets目录拷贝的结果: assets版本、源目录和每个文件的大小与CRC32.
+ * 文本格式, 第一行为 "版本\t源目录", 之后每行 "相对路径\t大小\tCRC32". 写入时先写临时文件再重命名.
+ */
+class AssetsManifest {
+    private static final String SEPARATOR = "\t";
+    private static final String NO_VERSION = "-";
+
+    private final String mVersion;
+    private final String mSource;
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>();
+
+    static class Entry {
+        /** 相对源目录的路径, 用/分隔 */
+        final String mPath;
+        final long mSize;
+        final long mCrc;
+
+        Entry(String path, long size, long crc) {
+            mPath = path;
+            mSize = size;
+            mCrc = crc;
+        }
+    }
+
+    /**
+     * @param version assets版本, 为null时下次拷贝总会重新遍历assets
+     * @param source assets中的源目录
+     */
+    AssetsManifest(String version, String source) {
+        mVersion = version;
+        mSource = source;
+    }
+
+    String getVersion() {
+        return mVersion;
+    }
+
+    String getSource() {
+        return mSource;
+    }
+
+    /**
+     * @return 版本和源目录都相同
+     */
+    boolean matches(String version, String source) {
+        return mVersion != null && mVersion.equals(version) && mSource.equals(source);
+    }
+
+    void put(Entry entry) {
+        mEntries.put(entry.mPath, entry);
+    }
+
+    Entry get(String path) {
+        return mEntries.get(path);
+    }
+
+    Collection<Entry> getEntries() {
+        return mEntries.values();
+    }
+
+    int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return 文件不存在或内容损坏时返回null
+     */
+    static AssetsManifest read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line = reader.readLine();
+            String[] header = line == null ? null : line.split(SEPARATOR, -1);
+            if (header == null || header.length != 2) {
+                return null;
+            }
+            AssetsManifest manifest = new AssetsManifest(NO_VERSION.equals(header[0]) ? null : header[0], header[1]);
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR, -1);
+                if (fields.length != 3) {
+                    return null;
+                }
+                manifest.put(new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2], 16)));
+            }
+            return manifest;
+        } catch (IOException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * 写入临时文件并同步到磁盘后重命名, 中途退出不会留下不完整的清单
+     */
+    void write(File file) throws IOException {
+        File temp = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+            writer.write((mVersion == null ? NO_VERSION : mVersion) + SEPARATOR + mSource + "\n");
+            for (Entry entry : mEntries.values()) {
+                writer.write(entry.mPath + SEPARATOR + entry.mSize + SEPARATOR + Long.toHexString(entry.mCrc) + "\n");
+            }
+            writer.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("rename " + temp + " to " + file + " failed");
+        }
+    }
+}
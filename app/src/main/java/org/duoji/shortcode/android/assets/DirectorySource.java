@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.assets;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 本地目录, 用于从已解压的目录拷贝或在JVM上测试
+ */
+public class DirectorySource implements AssetSource {
+    private final File mRoot;
+
+    public DirectorySource(File root) {
+        mRoot = root;
+    }
+
+    @Override
+    public String[] list(String path) throws IOException {
+        File file = new File(mRoot, path);
+        if (!file.isDirectory()) {
+            return new String[0];
+        }
+        String[] names = file.list();
+        if (names == null) {
+            throw new IOException("list " + file + " failed");
+        }
+        return names;
+    }
+
+    @Override
+    public InputStream open(String path) throws IOException {
+        return new FileInputStream(new File(mRoot, path));
+    }
+}
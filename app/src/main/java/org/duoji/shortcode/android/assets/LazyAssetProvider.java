@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.assets;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 按需使用assets目录, 代替启动时整体拷贝.
+ * 第一次查询时遍历一次源目录建立内存索引, 之后的查询不再调用 list();
+ * {@link #getFile(String)} 在第一次调用时才把该文件拷贝到磁盘, 同一文件同时只拷贝一次;
+ * 不需要文件路径时可以用 {@link #open(String)} 或 {@link #readBuffer(String)} 直接读取, 不产生拷贝. eg:
+ * LazyAssetProvider provider = LazyAssetProvider.create(context, "models", new File(context.getFilesDir(), "models"));
+ * File model = provider.getFile("sub/model.bin");
+ */
+public class LazyAssetProvider {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final AssetSource mSource;
+    private final String mRoot;
+    private final File mDir;
+
+    /** 目录的相对路径 -> 子项名, 源目录本身为"" */
+    private volatile Map<String, String[]> mDirs;
+    private final ConcurrentHashMap<String, FutureTask<File>> mExtractions = new ConcurrentHashMap<String, FutureTask<File>>();
+
+    /**
+     * 文件拷贝到 dir 下以apk版本命名的子目录, 覆盖安装后重新拷贝, 旧版本的子目录被删除
+     * @param assetDir dir in assets dir
+     * @param dir 专供该provider使用的目录, 其中其它内容会被删除
+     */
+    public static LazyAssetProvider create(Context context, String assetDir, File dir) {
+        File versionDir = prepareVersionDir(dir, AssetsFileUtil.getAssetsVersion(context));
+        return new LazyAssetProvider(new AssetManagerSource(context), assetDir, versionDir);
+    }
+
+    /**
+     * 删除dir下除当前版本外的所有内容. 版本未知时无法判断已有文件是否有效, 清空后重新拷贝
+     * @return 当前版本的子目录
+     */
+    static File prepareVersionDir(File dir, String version) {
+        File versionDir = new File(dir, version == null ? "unknown" : version.replace(':', '_'));
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (version == null || !child.equals(versionDir)) {
+                    delete(child);
+                }
+            }
+        }
+        return versionDir;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * @param source 源文件树
+     * @param root 源中的目录
+     * @param dir 拷贝的目标目录, 其中已存在的文件视为有效, 源内容变化时需要换一个目录
+     */
+    public LazyAssetProvider(AssetSource source, String root, File dir) {
+        mSource = source;
+        mRoot = root;
+        mDir = dir;
+    }
+
+    /**
+     * @return 拷贝的目标目录
+     */
+    public File getDir() {
+        return mDir;
+    }
+
+    /**
+     * @param path 相对源目录的路径, ""为源目录本身
+     */
+    public boolean exists(String path) throws IOException {
+        return isDirectory(path) || isFile(path);
+    }
+
+    public boolean isDirectory(String path) throws IOException {
+        return index().containsKey(path);
+    }
+
+    public boolean isFile(String path) throws IOException {
+        int slash = path.lastIndexOf('/');
+        String[] names = index().get(slash < 0 ? "" : path.substring(0, slash));
+        if (names == null || isDirectory(path)) {
+            return false;
+        }
+        String name = path.substring(slash + 1);
+        for (String child : names) {
+            if (child.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return 目录下的文件和子目录名, 不是目录时返回null
+     */
+    public String[] list(String path) throws IOException {
+        String[] names = index().get(path);
+        return names == null ? null : names.clone();
+    }
+
+    /**
+     * 获取文件在磁盘上的路径, 第一次调用时拷贝. 多个线程同时请求同一文件时只拷贝一次, 其余线程等待.
+     * @throws IOException 文件不存在或拷贝失败, 失败后再次调用会重新拷贝
+     */
+    public File getFile(final String path) throws IOException {
+        FutureTask<File> task = mExtractions.get(path);
+        if (task == null) {
+            if (!isFile(path)) {
+                throw new IOException(path + " is not a file in " + mRoot);
+            }
+            final File file = new File(mDir, path);
+            FutureTask<File> created = new FutureTask<File>(new Callable<File>() {
+                @Override
+                public File call() throws IOException {
+                    // 之前的进程已拷贝完成, 临时文件重命名后才会出现
+                    if (!file.isFile()) {
+                        AssetCopier.copyFile(mSource, sourcePath(path), file, new byte[BUFFER_SIZE], null, null);
+                    }
+                    return file;
+                }
+            });
+            task = mExtractions.putIfAbsent(path, created);
+            if (task == null) {
+                task = created;
+                task.run();
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while extracting " + path);
+        } catch (ExecutionException e) {
+            mExtractions.remove(path, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("extract " + path + " failed", cause);
+        }
+    }
+
+    /**
+     * 读取文件, 已拷贝到磁盘时读磁盘文件, 否则直接读源, 都不会产生拷贝
+     */
+    public InputStream open(String path) throws IOException {
+        File file = getExtractedFile(path);
+        if (file != null) {
+            return new FileInputStream(file);
+        }
+        return mSource.open(sourcePath(path));
+    }
+
+    /**
+     * 读取整个文件. 已拷贝到磁盘时返回只读的内存映射, 否则读入堆内存
+     */
+    public ByteBuffer readBuffer(String path) throws IOException {
+        File file = getExtractedFile(path);
+        if (file != null) {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                raf.close();
+            }
+        }
+        InputStream in = mSource.open(sourcePath(path));
+        try {
+            // AssetManager的流available()为剩余长度, 大多一次分配即可
+            byte[] data = new byte[Math.max(in.available(), 8 * 1024)];
+            int size = 0;
+            int count;
+            while ((count = in.read(data, size, data.length - size)) != -1) {
+                size += count;
+                if (size == data.length) {
+                    int next = in.read();
+                    if (next == -1) {
+                        break;
+                    }
+                    byte[] grown = new byte[data.length * 2];
+                    System.arraycopy(data, 0, grown, 0, size);
+                    grown[size++] = (byte) next;
+                    data = grown;
+                }
+            }
+            return ByteBuffer.wrap(data, 0, size).slice();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return 本进程中已拷贝完成的文件, 没有时返回null
+     */
+    private File getExtractedFile(String path) {
+        FutureTask<File> task = mExtractions.get(path);
+        if (task == null || !task.isDone()) {
+            return null;
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    private String sourcePath(String path) {
+        return path.isEmpty() ? mRoot : mRoot + "/" + path;
+    }
+
+    /**
+     * 第一次调用时遍历源目录, 之后直接返回
+     */
+    private Map<String, String[]> index() throws IOException {
+        Map<String, String[]> dirs = mDirs;
+        if (dirs == null) {
+            synchronized (this) {
+                dirs = mDirs;
+                if (dirs == null) {
+                    dirs = new HashMap<String, String[]>();
+                    List<String> pending = new ArrayList<String>();
+                    pending.add("");
+                    while (!pending.isEmpty()) {
+                        String dir = pending.remove(pending.size() - 1);
+                        String[] names = mSource.list(sourcePath(dir));
+                        if (names.length == 0 && !dir.isEmpty()) {
+                            // 空的是文件
+                            continue;
+                        }
+                        dirs.put(dir, names);
+                        for (String name : names) {
+                            pending.add(dir.isEmpty() ? name : dir + "/" + name);
+                        }
+                    }
+                    mDirs = dirs;
+                }
+            }
+        }
+        return dirs;
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.process;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 只读查询命令(getprop, cat /proc/..., pm list packages 等)的结果缓存.
+ * 调用时指定TTL, 在TTL内重复调用直接返回缓存的结果; 条目数有上限, 超出时淘汰最久未使用的.
+ * 同一命令同时只执行一次, 执行期间的其它调用等待同一个结果.
+ * 只缓存成功(退出码为0且未超时)的结果.
+ */
+public class CommandCache {
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    private final int mMaxEntries;
+    private final ShellExecutor mExecutor;
+    private volatile long mTimeoutMillis = 0;
+
+    /** 按访问顺序排列, 最久未使用的在最前 */
+    private final LinkedHashMap<String, CacheEntry> mEntries;
+    private final Map<String, LoadTask> mInFlight = new HashMap<String, LoadTask>();
+
+    private long mHitCount = 0;
+    private long mMissCount = 0;
+    private long mCoalescedCount = 0;
+    private long mEvictionCount = 0;
+
+    private static class CacheEntry {
+        final CommandResult mResult;
+        final long mExpireNanos;
+
+        CacheEntry(CommandResult result, long expireNanos) {
+            mResult = result;
+            mExpireNanos = expireNanos;
+        }
+    }
+
+    /**
+     * 执行命令, 结束后写入缓存并移出执行中列表
+     */
+    private class LoadTask extends FutureTask<CommandResult> {
+        final String mKey;
+        final long mTtlNanos;
+
+        LoadTask(String key, long ttlNanos, Callable<CommandResult> callable) {
+            super(callable);
+            mKey = key;
+            mTtlNanos = ttlNanos;
+        }
+
+        @Override
+        protected void done() {
+            onLoaded(this);
+        }
+    }
+
+    /**
+     * 只能使用 {@link #execute(String, boolean, long)}
+     */
+    public CommandCache(int maxEntries) {
+        this(null, maxEntries);
+    }
+
+    /**
+     * @param executor {@link #submit(String, boolean, long)} 使用的线程池
+     * @param maxEntries 缓存的最大条目数
+     */
+    public CommandCache(ShellExecutor executor, int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries:" + maxEntries);
+        }
+        mExecutor = executor;
+        mMaxEntries = maxEntries;
+        mEntries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > mMaxEntries) {
+                    mEvictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 设置未命中时执行命令的超时
+     * @param millis 超时时间, 0表示不超时
+     */
+    public void setTimeout(long millis) {
+        mTimeoutMillis = millis;
+    }
+
+    /**
+     * 在调用线程中执行, 命中缓存或同一命令正在执行时不启动新进程
+     * @param ttlMillis 结果的有效期, 小于等于0表示不缓存, 直接执行
+     * @return 执行结果, 等待时被中断返回退出码为 {@link CommandResult#EXIT_CODE_UNKNOWN} 的结果
+     */
+    public CommandResult execute(String cmd, boolean isNeedSu, long ttlMillis) {
+        if (ttlMillis <= 0) {
+            return ProcessExecUtil.getInstance().execute(cmd, isNeedSu, mTimeoutMillis, null);
+        }
+        String key = key(cmd, isNeedSu);
+        LoadTask task;
+        boolean leader = false;
+        synchronized (this) {
+            CommandResult cached = getCached(key);
+            if (cached != null) {
+                return cached;
+            }
+            task = mInFlight.get(key);
+            if (task != null) {
+                mCoalescedCount++;
+            } else {
+                task = newTask(key, cmd, isNeedSu, ttlMillis);
+                leader = true;
+            }
+        }
+        if (leader) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new CommandResult(cmd, "", "interrupted\n", CommandResult.EXIT_CODE_UNKNOWN, 0, false);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * 在线程池中执行, 命中缓存时返回已完成的Future
+     * @param ttlMillis 结果的有效期, 小于等于0表示不缓存, 直接执行
+     * @throws RejectedExecutionException 线程池队列已满或已shutdown
+     */
+    public Future<CommandResult> submit(String cmd, boolean isNeedSu, long ttlMillis) {
+        if (mExecutor == null) {
+            throw new IllegalStateException("no executor");
+        }
+        if (ttlMillis <= 0) {
+            return mExecutor.submit(cmd, isNeedSu, mTimeoutMillis);
+        }
+        String key = key(cmd, isNeedSu);
+        LoadTask task;
+        synchronized (this) {
+            CommandResult cached = getCached(key);
+            if (cached != null) {
+                FutureTask<CommandResult> done = new FutureTask<CommandResult>(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                }, cached);
+                done.run();
+                return done;
+            }
+            task = mInFlight.get(key);
+            if (task != null) {
+                mCoalescedCount++;
+                return task;
+            }
+            task = newTask(key, cmd, isNeedSu, ttlMillis);
+        }
+        try {
+            mExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 取消后done()会把任务移出执行中列表
+            task.cancel(false);
+            throw e;
+        }
+        return task;
+    }
+
+    /**
+     * 移除命令的缓存结果(su和sh都移除), 正在执行的结果也不再写入缓存
+     */
+    public synchronized void invalidate(String cmd) {
+        for (int i = 0; i < 2; i++) {
+            String key = key(cmd, i == 0);
+            mEntries.remove(key);
+            mInFlight.remove(key);
+        }
+    }
+
+    /**
+     * 清空缓存, 正在执行的结果也不再写入缓存
+     */
+    public synchronized void invalidateAll() {
+        mEntries.clear();
+        mInFlight.clear();
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return 未命中而实际执行命令的次数
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return 等待同一命令正在执行的结果的次数
+     */
+    public synchronized long getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /**
+     * @return 因超过条目上限被淘汰的次数, 不含过期和手动移除
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    private static String key(String cmd, boolean isNeedSu) {
+        return (isNeedSu ? "su:" : "sh:") + cmd;
+    }
+
+    /**
+     * 调用时持有锁, 过期的条目直接移除
+     */
+    private CommandResult getCached(String key) {
+        CacheEntry entry = mEntries.get(key);
+        if (entry != null) {
+            if (entry.mExpireNanos - System.nanoTime() > 0) {
+                mHitCount++;
+                return entry.mResult;
+            }
+            mEntries.remove(key);
+        }
+        return null;
+    }
+
+    /**
+     * 调用时持有锁, 创建任务并加入执行中列表
+     */
+    private LoadTask newTask(String key, final String cmd, final boolean isNeedSu, long ttlMillis) {
+        mMissCount++;
+        LoadTask task = new LoadTask(key, TimeUnit.MILLISECONDS.toNanos(ttlMillis), new Callable<CommandResult>() {
+            @Override
+            public CommandResult call() {
+                return ProcessExecUtil.getInstance().execute(cmd, isNeedSu, mTimeoutMillis, null);
+            }
+        });
+        mInFlight.put(key, task);
+        return task;
+    }
+
+    private synchronized void onLoaded(LoadTask task) {
+        if (mInFlight.get(task.mKey) != task) {
+            // 执行期间被移除
+            return;
+        }
+        mInFlight.remove(task.mKey);
+        if (task.isCancelled()) {
+            return;
+        }
+        try {
+            CommandResult result = task.get();
+            if (result.isSuccess()) {
+                mEntries.put(task.mKey, new CacheEntry(result, System.nanoTime() + task.mTtlNanos));
+            }
+        } catch (InterruptedException ignored) {
+            // 任务已结束, get()不会阻塞
+        } catch (ExecutionException ignored) {
+        }
+    }
+}
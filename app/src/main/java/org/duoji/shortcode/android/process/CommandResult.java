@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.process;
+
+/**
+ * 一次命令执行的结果, 创建后不可修改, 可以在线程间安全传递
+ */
+public final class CommandResult {
+    /** 无法得到退出码(进程启动失败、超时或shell异常退出) */
+    public static final int EXIT_CODE_UNKNOWN = -1;
+
+    private final String mCommand;
+    private final String mOutput;
+    private final String mError;
+    private final int mExitCode;
+    private final long mDurationMillis;
+    private final boolean mTimedOut;
+
+    CommandResult(String command, String output, String error, int exitCode, long durationMillis, boolean timedOut) {
+        mCommand = command;
+        mOutput = output;
+        mError = error;
+        mExitCode = exitCode;
+        mDurationMillis = durationMillis;
+        mTimedOut = timedOut;
+    }
+
+    public String getCommand() {
+        return mCommand;
+    }
+
+    /**
+     * @return 标准输出, 每行以\n结尾
+     */
+    public String getOutput() {
+        return mOutput;
+    }
+
+    /**
+     * @return 错误输出, 每行以\n结尾
+     */
+    public String getError() {
+        return mError;
+    }
+
+    public int getExitCode() {
+        return mExitCode;
+    }
+
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    public boolean isTimedOut() {
+        return mTimedOut;
+    }
+
+    /**
+     * @return 退出码为0且未超时
+     */
+    public boolean isSuccess() {
+        return mExitCode == 0 && !mTimedOut;
+    }
+
+    @Override
+    public String toString() {
+        return "CommandResult{command=" + mCommand + ", exitCode=" + mExitCode
+                + ", durationMillis=" + mDurationMillis + ", timedOut=" + mTimedOut + "}";
+    }
+}
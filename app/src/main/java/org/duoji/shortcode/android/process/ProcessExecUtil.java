@@ -16,20 +16,48 @@
 
 package org.duoji.shortcode.android.process;
 
-import android.text.TextUtils;
 import android.util.Log;
 
 import java.io.BufferedReader;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ProcessExecUtil {
     private static final String TAG = "ProcessExecUtil";
     private static ProcessExecUtil mInstance;
 
+    /**
+     * 读取子进程错误流的线程池, 与读取输出流的调用线程并发, 避免任一管道写满后子进程阻塞
+     */
+    static final ExecutorService sDrainExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("process_drain"));
+    /**
+     * 超时后结束子进程
+     */
+    static final ScheduledExecutorService sWatchdog = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("process_watchdog"));
+
     private String mInputInfo;
     private String mErrorInfo;
+    /**
+     * 默认超时, 0表示不超时
+     */
+    private long mTimeoutMillis = 0;
+    /**
+     * 是否复用常驻shell执行命令
+     */
+    private boolean mSessionMode = false;
+    private ShellSession mSuSession;
+    private ShellSession mShSession;
+    private CommandCache mCommandCache;
 
     private ProcessExecUtil() {
 
@@ -46,37 +74,144 @@ public class ProcessExecUtil {
         return mInstance;
     }
 
-    private String getProcessErrorInfo(Process process) {
-        try {
-            String data = "";
-            BufferedReader ie = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            String error;
-            while ((error = ie.readLine()) != null
-                    && !error.equals("null")) {
-                data += error + "\n";
+    /**
+     * 逐行接收命令输出, 设置后输出不再保存到 {@link #getInputInfo()}/{@link #getErrorInfo()} 中,
+     * 适合 logcat -d 等大量输出. 在读取线程中调用, 输出行和错误行可能并发回调.
+     */
+    public interface OutputListener {
+        void onOutputLine(String line);
+
+        void onErrorLine(String line);
+    }
+
+    static class DaemonThreadFactory implements ThreadFactory {
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        DaemonThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, mName + "_" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * 读取子进程的一个输出流直到结束, 按行保存或交给listener
+     */
+    private static class StreamDrainer implements Runnable {
+        private final InputStream mStream;
+        private final OutputListener mListener;
+        private final boolean mIsError;
+        private final StringBuilder mData = new StringBuilder();
+        private IOException mFailure;
+
+        StreamDrainer(InputStream stream, OutputListener listener, boolean isError) {
+            mStream = stream;
+            mListener = listener;
+            mIsError = isError;
+        }
+
+        @Override
+        public void run() {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(mStream));
+                String line;
+                boolean collecting = true;
+                while ((line = reader.readLine()) != null) {
+                    if (line.equals("null")) {
+                        // 之后的内容不再保存, 但继续读取, 避免子进程阻塞
+                        collecting = false;
+                    }
+                    if (!collecting) {
+                        continue;
+                    }
+                    if (mListener == null) {
+                        mData.append(line).append('\n');
+                    } else if (mIsError) {
+                        mListener.onErrorLine(line);
+                    } else {
+                        mListener.onOutputLine(line);
+                    }
+                }
+            } catch (IOException e) {
+                mFailure = e;
+            } finally {
+                try {
+                    mStream.close();
+                } catch (IOException ignored) {
+                }
             }
-            Log.d(TAG, data);
-            return data;
-        }catch (Exception e) {
-            Log.e(TAG, e.getMessage());
         }
-        return "";
+
+        String getData() {
+            return mData.toString();
+        }
     }
 
-    private String getProcessInputInfo(Process process) {
-        try {
-            String data = "";
-            BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line;
-            while ((line = in.readLine()) != null && !line.equals("null")) {
-                data += line + "\n";
+    /**
+     * 转发给调用方的listener, 同时记录是否有错误输出
+     */
+    private static class ErrorLineTracker implements OutputListener {
+        private final OutputListener mListener;
+        private volatile boolean mHasErrorLine = false;
+
+        ErrorLineTracker(OutputListener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public void onOutputLine(String line) {
+            mListener.onOutputLine(line);
+        }
+
+        @Override
+        public void onErrorLine(String line) {
+            mHasErrorLine = true;
+            mListener.onErrorLine(line);
+        }
+    }
+
+    /**
+     * 超时后结束子进程并关闭其输出流, 使读取线程返回
+     */
+    private static class ProcessKiller implements Runnable {
+        private final Process mProcess;
+        private volatile boolean mKilled = false;
+
+        ProcessKiller(Process process) {
+            mProcess = process;
+        }
+
+        @Override
+        public void run() {
+            mKilled = true;
+            destroy();
+        }
+
+        /**
+         * 结束子进程, 不记为超时
+         */
+        void destroy() {
+            mProcess.destroy();
+            closeQuietly(mProcess.getInputStream());
+            closeQuietly(mProcess.getErrorStream());
+        }
+
+        boolean isKilled() {
+            return mKilled;
+        }
+
+        private static void closeQuietly(InputStream stream) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
             }
-            Log.d(TAG, data);
-            return data;
-        } catch (Exception e) {
-            Log.e(TAG, e.getMessage());
         }
-        return "";
     }
 
     /**
@@ -95,6 +230,80 @@ public class ProcessExecUtil {
         return mErrorInfo;
     }
 
+    /**
+     * 设置 {@link #processExec(String, boolean)} 的超时, 超时后结束子进程并返回false
+     * @param millis 超时时间, 0表示不超时
+     */
+    public synchronized void setTimeout(long millis) {
+        mTimeoutMillis = millis;
+        if (mCommandCache != null) {
+            mCommandCache.setTimeout(millis);
+        }
+    }
+
+    /**
+     * 获取 {@link #executeCached(String, boolean, long)} 使用的缓存, 用于查看命中率或移除结果
+     */
+    public synchronized CommandCache getCommandCache() {
+        if (mCommandCache == null) {
+            mCommandCache = new CommandCache(CommandCache.DEFAULT_MAX_ENTRIES);
+            mCommandCache.setTimeout(mTimeoutMillis);
+        }
+        return mCommandCache;
+    }
+
+    /**
+     * 执行只读查询命令, 在ttl内重复调用直接返回上次成功的结果, 同一命令同时只启动一个进程.
+     * 不修改 {@link #getInputInfo()}/{@link #getErrorInfo()}.
+     * @param ttlMillis 结果的有效期, 小于等于0表示不缓存
+     */
+    public CommandResult executeCached(String cmd, boolean isNeedSu, long ttlMillis) {
+        return getCommandCache().execute(cmd, isNeedSu, ttlMillis);
+    }
+
+    /**
+     * 开启后 {@link #processExec(String, boolean)} 在常驻的 su/sh 进程中执行命令, 不再每次启动新进程.
+     * 命令在同一个shell中顺序执行, cd/export 等会影响之后的命令.
+     * @param enabled 关闭时结束常驻进程
+     */
+    public synchronized void setSessionMode(boolean enabled) {
+        mSessionMode = enabled;
+        if (!enabled) {
+            closeSessions();
+        }
+    }
+
+    /**
+     * 获取常驻shell, 不存在时创建
+     * @param isNeedSu true为su, false为sh
+     */
+    public synchronized ShellSession getSession(boolean isNeedSu) {
+        if (isNeedSu) {
+            if (mSuSession == null) {
+                mSuSession = new ShellSession("su");
+            }
+            return mSuSession;
+        }
+        if (mShSession == null) {
+            mShSession = new ShellSession("sh");
+        }
+        return mShSession;
+    }
+
+    /**
+     * 结束常驻shell
+     */
+    public synchronized void closeSessions() {
+        if (mSuSession != null) {
+            mSuSession.close();
+            mSuSession = null;
+        }
+        if (mShSession != null) {
+            mShSession.close();
+            mShSession = null;
+        }
+    }
+
     /**
      * process exec cmd in app, eg:
      * single cmd:"setenforce 0"
@@ -104,31 +313,123 @@ public class ProcessExecUtil {
      * @return true:process success;false:process fail.
      */
     public boolean processExec(String cmd, boolean isNeedSu) {
+        ShellSession session = null;
+        synchronized (this) {
+            if (mSessionMode) {
+                session = getSession(isNeedSu);
+            }
+        }
+        if (session == null) {
+            return processExec(cmd, isNeedSu, mTimeoutMillis, null);
+        }
+        Log.d(TAG, "ProcessExec cmd:" + cmd + ", isNeedSu:" + isNeedSu + ", session");
+        CommandResult result = session.exec(cmd, mTimeoutMillis);
+        if (result.getError().isEmpty() && !result.isTimedOut()) {
+            mErrorInfo = "";
+            mInputInfo = result.getOutput();
+            return true;
+        }
+        mErrorInfo = result.isTimedOut()
+                ? result.getError() + "process timeout after " + mTimeoutMillis + "ms\n" : result.getError();
+        mInputInfo = "";
+        return false;
+    }
+
+    /**
+     * 执行命令, 同时读取输出流和错误流
+     * @param cmd exec cmd.
+     * @param isNeedSu whether need su cmd.
+     * @param timeoutMillis 超时时间, 0表示不超时
+     * @param listener 逐行接收输出, 为null时输出保存到 {@link #getInputInfo()}/{@link #getErrorInfo()}
+     * @return true:没有错误输出且未超时;false:process fail.
+     */
+    public boolean processExec(String cmd, boolean isNeedSu, long timeoutMillis, OutputListener listener) {
+        ErrorLineTracker tracker = listener == null ? null : new ErrorLineTracker(listener);
+        CommandResult result = execute(cmd, isNeedSu, timeoutMillis, tracker);
+        if (result.isTimedOut()) {
+            mErrorInfo = result.getError() + "process timeout after " + timeoutMillis + "ms\n";
+            mInputInfo = result.getOutput();
+            return false;
+        }
+        // 进程启动失败或等待时被中断, 同样算失败
+        boolean hasError = result.getExitCode() == CommandResult.EXIT_CODE_UNKNOWN
+                || (tracker == null ? !result.getError().isEmpty() : tracker.mHasErrorLine);
+        if(!hasError) {
+            mErrorInfo = "";
+            mInputInfo = result.getOutput();
+            Log.d(TAG, mInputInfo);
+            return true;
+        } else {
+            mErrorInfo = result.getError();
+            mInputInfo = "";
+        }
+        return false;
+    }
+
+    /**
+     * 执行命令, 结果只通过返回值给出, 不修改 {@link #getInputInfo()}/{@link #getErrorInfo()}, 可以在多个线程中同时调用.
+     * @param cmd exec cmd.
+     * @param isNeedSu whether need su cmd.
+     * @param timeoutMillis 超时时间, 0表示不超时
+     * @param listener 逐行接收输出, 为null时输出保存在结果中
+     * @return 执行结果, 进程启动失败时退出码为 {@link CommandResult#EXIT_CODE_UNKNOWN}
+     */
+    public CommandResult execute(String cmd, boolean isNeedSu, long timeoutMillis, OutputListener listener) {
+        long start = System.nanoTime();
+        Process proc;
         try {
             Log.d(TAG, "ProcessExec cmd:" + cmd + ", isNeedSu:" + isNeedSu);
-            Process proc;
             if(isNeedSu) {
                 proc = Runtime.getRuntime().exec("su");
                 DataOutputStream os = new DataOutputStream(proc.getOutputStream());
-                if(os != null) {
-                    os.writeBytes(cmd + "\nexit\n");
-                    os.flush();
-                }
+                os.writeBytes(cmd + "\nexit\n");
+                os.flush();
             } else {
                 proc = Runtime.getRuntime().exec(cmd);
             }
-            String processErrorInfo = getProcessErrorInfo(proc);
-            if(TextUtils.isEmpty(processErrorInfo)) {
-                mErrorInfo = "";
-                mInputInfo = getProcessInputInfo(proc);
-                return true;
-            } else {
-                mErrorInfo = processErrorInfo;
-                mInputInfo = "";
-            }
         } catch (IOException e) {
             e.printStackTrace();
+            return new CommandResult(cmd, "", "start process failed: " + e.getMessage() + "\n",
+                    CommandResult.EXIT_CODE_UNKNOWN, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), false);
         }
-        return false;
+
+        ProcessKiller killer = new ProcessKiller(proc);
+        Future<?> watchdog = null;
+        if (timeoutMillis > 0) {
+            watchdog = sWatchdog.schedule(killer, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        StreamDrainer error = new StreamDrainer(proc.getErrorStream(), listener, true);
+        StreamDrainer input = new StreamDrainer(proc.getInputStream(), listener, false);
+        Future<?> errorFuture = sDrainExecutor.submit(error);
+        input.run();
+        int exitCode = CommandResult.EXIT_CODE_UNKNOWN;
+        boolean interrupted = false;
+        try {
+            errorFuture.get();
+            // 输出流都已结束, 等待进程退出; 仍在运行时由watchdog结束
+            exitCode = proc.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // watchdog已经结束进程时仍按超时处理
+            interrupted = !killer.isKilled();
+            killer.destroy();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "drain error stream failed", e.getCause());
+        }
+        if (watchdog != null) {
+            watchdog.cancel(false);
+        }
+        if (input.mFailure != null || error.mFailure != null) {
+            Log.e(TAG, "read process output failed");
+        }
+        String errorData = error.getData();
+        if (interrupted) {
+            errorData += "process interrupted\n";
+        }
+        Log.d(TAG, errorData);
+        boolean timedOut = !interrupted && killer.isKilled();
+        return new CommandResult(cmd, input.getData(), errorData,
+                timedOut || interrupted ? CommandResult.EXIT_CODE_UNKNOWN : exitCode,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), timedOut);
     }
 }
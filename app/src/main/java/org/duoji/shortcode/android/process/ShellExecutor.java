@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.process;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步执行命令, 每次调用得到独立的 {@link CommandResult}, 不共享 {@link ProcessExecUtil} 的结果字段.
+ * 固定数量的工作线程加有界队列, 队列满时 submit 抛出 {@link RejectedExecutionException}, 由调用方决定重试或放弃.
+ */
+public class ShellExecutor {
+    public static final int DEFAULT_THREADS = 2;
+    public static final int DEFAULT_QUEUE_LIMIT = 64;
+
+    private final ThreadPoolExecutor mExecutor;
+    private volatile long mTimeoutMillis = 0;
+
+    public ShellExecutor() {
+        this(DEFAULT_THREADS, DEFAULT_QUEUE_LIMIT);
+    }
+
+    /**
+     * @param threads 同时执行的命令数
+     * @param queueLimit 等待执行的命令数上限
+     */
+    public ShellExecutor(int threads, int queueLimit) {
+        if (threads <= 0 || queueLimit <= 0) {
+            throw new IllegalArgumentException("threads:" + threads + ", queueLimit:" + queueLimit);
+        }
+        mExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueLimit),
+                new ProcessExecUtil.DaemonThreadFactory("shell_exec"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 设置 submit 未指定超时时使用的超时
+     * @param millis 超时时间, 0表示不超时
+     */
+    public void setTimeout(long millis) {
+        mTimeoutMillis = millis;
+    }
+
+    /**
+     * @return 等待执行的命令数
+     */
+    public int getQueuedCount() {
+        return mExecutor.getQueue().size();
+    }
+
+    public Future<CommandResult> submit(String cmd, boolean isNeedSu) {
+        return submit(cmd, isNeedSu, mTimeoutMillis);
+    }
+
+    /**
+     * 在新进程中执行一条命令
+     * @throws RejectedExecutionException 队列已满或已shutdown
+     */
+    public Future<CommandResult> submit(final String cmd, final boolean isNeedSu, final long timeoutMillis) {
+        return mExecutor.submit(new Callable<CommandResult>() {
+            @Override
+            public CommandResult call() {
+                return ProcessExecUtil.getInstance().execute(cmd, isNeedSu, timeoutMillis, null);
+            }
+        });
+    }
+
+    public Future<List<CommandResult>> submitBatch(List<String> cmds, boolean isNeedSu) {
+        return submitBatch(cmds, isNeedSu, mTimeoutMillis);
+    }
+
+    /**
+     * 把多条命令一次写入同一个shell顺序执行, 只启动一个进程, 再拆分出各自的结果.
+     * 命令共享shell环境, 前一条命令的 cd/export 会影响之后的命令.
+     * @param timeoutMillis 整批命令的超时时间, 0表示不超时
+     * @throws RejectedExecutionException 队列已满或已shutdown
+     */
+    public Future<List<CommandResult>> submitBatch(final List<String> cmds, final boolean isNeedSu,
+                                                   final long timeoutMillis) {
+        return mExecutor.submit(new Callable<List<CommandResult>>() {
+            @Override
+            public List<CommandResult> call() {
+                ShellSession session = new ShellSession(isNeedSu ? "su" : "sh");
+                try {
+                    return session.execBatch(cmds, timeoutMillis);
+                } finally {
+                    session.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * 在工作线程中执行任务, 与命令共用队列上限
+     * @throws RejectedExecutionException 队列已满或已shutdown
+     */
+    void execute(Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    /**
+     * 不再接收新命令, 已提交的命令继续执行
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+}
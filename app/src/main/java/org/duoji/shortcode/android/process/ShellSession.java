@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.process;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 常驻的 su/sh 进程, 多条命令复用同一个shell, 省去每次 fork 和 su 授权的开销.
+ * 每条命令后输出带序号的结束标记, 据此拆分出该命令的标准输出、错误输出和退出码.
+ * shell退出或命令超时后, 下一次 {@link #exec} 自动重新启动shell. 并发调用按顺序执行.
+ * 标准输出和错误输出都由后台线程读取, 调用方按截止时间等待, 命令启动的子进程占用管道时超时仍然有效.
+ * 注意命令不能读取标准输入, 也不应改变shell的输出重定向.
+ */
+public class ShellSession {
+    private static final String TAG = "ShellSession";
+    private static final String MARKER_PREFIX = "__DJ_SHELL_END_";
+    /** 输出流读到结尾的标记, 按引用比较 */
+    private static final String EOF = new String("EOF");
+    /** 不超过该长度的脚本直接写入, 一定小于管道buffer */
+    private static final int INLINE_WRITE_LIMIT = 4096;
+
+    private final String mShell;
+    private final String mToken = Long.toHexString(new Random().nextLong() & Long.MAX_VALUE);
+
+    private Process mProcess;
+    private Writer mStdin;
+    private LinkedBlockingQueue<String> mStdoutLines;
+    private LinkedBlockingQueue<String> mStderrLines;
+    private long mSequence = 0;
+    private int mStartCount = 0;
+
+    /**
+     * @param shell shell命令, 如 "su" 或 "sh"
+     */
+    public ShellSession(String shell) {
+        mShell = shell;
+    }
+
+    /**
+     * @return shell被启动的次数, 大于1说明发生过重启
+     */
+    public synchronized int getStartCount() {
+        return mStartCount;
+    }
+
+    public synchronized boolean isRunning() {
+        return mProcess != null;
+    }
+
+    /**
+     * 在shell中执行一条命令
+     * @param cmd 命令, 可以包含多行
+     * @param timeoutMillis 超时时间, 0表示不超时. 超时后结束shell, 下次调用时重启
+     */
+    public CommandResult exec(String cmd, long timeoutMillis) {
+        return execBatch(Collections.singletonList(cmd), timeoutMillis).get(0);
+    }
+
+    /**
+     * 把多条命令一次写入shell, 再按结束标记拆分出各自的结果
+     * @param timeoutMillis 整批命令的超时时间, 0表示不超时. 超时或shell退出后, 未完成的命令退出码为 EXIT_CODE_UNKNOWN
+     * @return 与cmds顺序对应的结果
+     */
+    public synchronized List<CommandResult> execBatch(List<String> cmds, long timeoutMillis) {
+        long start = System.nanoTime();
+        String[] markers = new String[cmds.size()];
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < markers.length; i++) {
+            markers[i] = MARKER_PREFIX + mToken + "_" + (++mSequence) + "__";
+            builder.append(cmds.get(i)).append("\n__dj_rc=$?\necho \"").append(markers[i])
+                    .append(" $__dj_rc\"\necho \"").append(markers[i]).append("\" >&2\n");
+        }
+        final String script = builder.toString();
+        List<CommandResult> results = new ArrayList<CommandResult>(markers.length);
+        try {
+            write(script);
+        } catch (IOException e) {
+            // shell已经退出, 命令还没有执行, 重启后重试一次
+            Log.w(TAG, "shell died, restart: " + e.getMessage());
+            destroy();
+            try {
+                write(script);
+            } catch (IOException retry) {
+                destroy();
+                for (String cmd : cmds) {
+                    results.add(new CommandResult(cmd, "", "start shell failed: " + retry.getMessage() + "\n",
+                            CommandResult.EXIT_CODE_UNKNOWN, elapsedMillis(start), false));
+                }
+                return results;
+            }
+        }
+
+        // 0表示不超时
+        long deadline = timeoutMillis > 0 ? start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+        boolean alive = true;
+        boolean timedOut = false;
+        long commandStart = start;
+        for (int i = 0; i < markers.length; i++) {
+            StringBuilder output = new StringBuilder();
+            StringBuilder error = new StringBuilder();
+            int exitCode = CommandResult.EXIT_CODE_UNKNOWN;
+            if (alive) {
+                try {
+                    exitCode = readOutput(markers[i], output, deadline);
+                    alive = exitCode != CommandResult.EXIT_CODE_UNKNOWN && readError(markers[i], error, deadline);
+                } catch (TimeoutException e) {
+                    timedOut = true;
+                    alive = false;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    alive = false;
+                }
+                if (!alive && !timedOut) {
+                    error.append("shell exited unexpectedly\n");
+                }
+            }
+            if (!alive) {
+                exitCode = CommandResult.EXIT_CODE_UNKNOWN;
+            }
+            long now = System.nanoTime();
+            results.add(new CommandResult(cmds.get(i), output.toString(), error.toString(), exitCode,
+                    TimeUnit.NANOSECONDS.toMillis(now - commandStart), timedOut));
+            commandStart = now;
+        }
+        if (!alive) {
+            // 输出不完整, shell状态未知, 结束后下次重启
+            destroy();
+        }
+        return results;
+    }
+
+    /**
+     * 结束shell
+     */
+    public synchronized void close() {
+        if (mStdin != null) {
+            try {
+                mStdin.write("exit\n");
+                mStdin.flush();
+            } catch (IOException ignored) {
+            }
+        }
+        destroy();
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private void write(final String script) throws IOException {
+        if (mProcess == null) {
+            start();
+        }
+        if (script.length() <= INLINE_WRITE_LIMIT) {
+            mStdin.write(script);
+            mStdin.flush();
+            return;
+        }
+        // 较大的批量脚本在其它线程写入, 否则shell的输出写满管道后双方互相等待
+        final Writer stdin = mStdin;
+        ProcessExecUtil.sDrainExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    stdin.write(script);
+                    stdin.flush();
+                } catch (IOException e) {
+                    Log.w(TAG, "write shell script failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void start() throws IOException {
+        mProcess = Runtime.getRuntime().exec(mShell);
+        mStartCount++;
+        mStdin = new BufferedWriter(new OutputStreamWriter(mProcess.getOutputStream()));
+        mStdoutLines = startReader(mProcess.getInputStream(), "shell_stdout_" + mShell);
+        mStderrLines = startReader(mProcess.getErrorStream(), "shell_stderr_" + mShell);
+    }
+
+    /**
+     * 由独立线程持续按行读取输出流, 避免命令的输出写满管道, 读到结尾时放入 EOF.
+     * shell被结束后, 命令启动的子进程仍可能占用管道, 此时线程一直等到子进程退出
+     */
+    private static LinkedBlockingQueue<String> startReader(final InputStream stream, String name) {
+        final LinkedBlockingQueue<String> lines = new LinkedBlockingQueue<String>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(stream));
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        lines.add(line);
+                    }
+                } catch (IOException ignored) {
+                } finally {
+                    lines.add(EOF);
+                }
+            }
+        }, name);
+        reader.setDaemon(true);
+        reader.start();
+        return lines;
+    }
+
+    /**
+     * 取出下一行, 读到结尾时返回 EOF 并放回队列
+     * @param deadline System.nanoTime() 的截止时间, 0表示一直等待
+     * @throws TimeoutException 到达截止时间
+     */
+    private static String nextLine(LinkedBlockingQueue<String> lines, long deadline)
+            throws InterruptedException, TimeoutException {
+        String line;
+        if (deadline == 0) {
+            line = lines.take();
+        } else {
+            // 已超时时不再取数据, 否则持续输出的命令永远不会超时
+            long remaining = deadline - System.nanoTime();
+            line = remaining > 0 ? lines.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (line == null) {
+                throw new TimeoutException();
+            }
+        }
+        if (line == EOF) {
+            lines.add(EOF);
+        }
+        return line;
+    }
+
+    /**
+     * 读取标准输出直到结束标记
+     * @return 退出码, 没有读到标记时返回 EXIT_CODE_UNKNOWN
+     */
+    private int readOutput(String marker, StringBuilder output, long deadline)
+            throws InterruptedException, TimeoutException {
+        String line;
+        while ((line = nextLine(mStdoutLines, deadline)) != EOF) {
+            int index = line.indexOf(marker);
+            if (index < 0) {
+                output.append(line).append('\n');
+                continue;
+            }
+            // 命令输出末尾没有换行时, 标记接在同一行
+            output.append(line, 0, index);
+            try {
+                return Integer.parseInt(line.substring(index + marker.length()).trim());
+            } catch (NumberFormatException e) {
+                return CommandResult.EXIT_CODE_UNKNOWN;
+            }
+        }
+        return CommandResult.EXIT_CODE_UNKNOWN;
+    }
+
+    /**
+     * 读取错误输出直到结束标记
+     * @return 是否读到标记
+     */
+    private boolean readError(String marker, StringBuilder error, long deadline)
+            throws InterruptedException, TimeoutException {
+        while (true) {
+            String line = nextLine(mStderrLines, deadline);
+            if (line == EOF) {
+                return false;
+            }
+            int index = line.indexOf(marker);
+            if (index < 0) {
+                error.append(line).append('\n');
+                continue;
+            }
+            error.append(line, 0, index);
+            return true;
+        }
+    }
+
+    private static void kill(Process process) {
+        process.destroy();
+        try {
+            process.getInputStream().close();
+        } catch (IOException ignored) {
+        }
+        try {
+            process.getErrorStream().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void destroy() {
+        if (mProcess != null) {
+            try {
+                mStdin.close();
+            } catch (IOException ignored) {
+            }
+            kill(mProcess);
+            mProcess = null;
+            mStdin = null;
+            mStdoutLines = null;
+            mStderrLines = null;
+        }
+    }
+}
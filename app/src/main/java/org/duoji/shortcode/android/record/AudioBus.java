@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record;
+
+import org.duoji.shortcode.android.record.dsp.VoiceActivityDetector;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 录音数据的发布/订阅总线, 作为 {@link VoiceRecord} 的 listener 使用.
+ * 每帧数据只拷贝一次到共享的 {@link AudioFrame}, 再分发给所有订阅者;
+ * 每个订阅者有自己的有界队列、线程和满队列策略, 慢速订阅者不会影响其他订阅者.
+ * eg:
+ * AudioBus bus = new AudioBus();
+ * VoiceRecord record = new VoiceRecord(bus);
+ * AudioBus.Subscription meter = bus.subscribe(levelMeter, 4, AudioBus.POLICY_COALESCE);
+ */
+public class AudioBus implements VoiceRecord.RecordListener {
+    // 订阅者队列满时的处理策略
+    /**
+     * 阻塞发布线程直到有空间
+     */
+    public static final int POLICY_BLOCK = 0;
+    /**
+     * 丢弃队列中最旧的一帧
+     */
+    public static final int POLICY_DROP_OLDEST = 1;
+    /**
+     * 丢弃新到的一帧
+     */
+    public static final int POLICY_DROP_NEWEST = 2;
+    /**
+     * 用新到的一帧替换队列中最新的一帧, 适合只关心最新数据的订阅者
+     */
+    public static final int POLICY_COALESCE = 3;
+
+    private static final AtomicInteger sThreadIndex = new AtomicInteger();
+
+    private final CopyOnWriteArrayList<Subscription> mSubscriptions = new CopyOnWriteArrayList<Subscription>();
+    private final ConcurrentLinkedQueue<AudioFrame> mFramePool = new ConcurrentLinkedQueue<AudioFrame>();
+    private volatile VoiceRecord.RecordListener mRecordListener;
+    private volatile VoiceActivityDetector mDetector;
+    private long mSequence = 0;
+
+    public interface Subscriber {
+        /**
+         * 在订阅者自己的线程中调用, frame只在本次调用期间有效.
+         * @param frame 只读的共享录音数据
+         */
+        void onFrame(AudioFrame frame);
+    }
+
+    /**
+     * 设置透传的listener, 录音开始/结束/出错以及原始数据回调会原样转发给它.
+     * onRecording 在分发线程中同步调用, 不要做耗时操作.
+     */
+    public void setRecordListener(VoiceRecord.RecordListener listener) {
+        mRecordListener = listener;
+    }
+
+    /**
+     * 设置语音检测, 在分发线程中对每帧做检测, 结果见 {@link AudioFrame#isSpeech()},
+     * 只订阅语音的订阅者不会收到静音帧. 设为null取消检测.
+     */
+    public void setVoiceActivityDetector(VoiceActivityDetector detector) {
+        mDetector = detector;
+    }
+
+    /**
+     * 添加订阅者, 可在录音过程中调用.
+     * @see #subscribe(Subscriber, int, int, boolean)
+     */
+    public Subscription subscribe(Subscriber subscriber, int queueCapacity, int policy) {
+        return subscribe(subscriber, queueCapacity, policy, false);
+    }
+
+    /**
+     * 添加订阅者, 可在录音过程中调用.
+     * @param subscriber 订阅者
+     * @param queueCapacity 队列容量
+     * @param policy 队列满时的策略, {@link #POLICY_BLOCK} 等
+     * @param speechOnly 是否只接收语音帧, 需要设置 {@link #setVoiceActivityDetector(VoiceActivityDetector)}
+     * @return 订阅句柄, 用于取消订阅和查询统计
+     */
+    public Subscription subscribe(Subscriber subscriber, int queueCapacity, int policy, boolean speechOnly) {
+        if (subscriber == null || queueCapacity <= 0 || policy < POLICY_BLOCK || policy > POLICY_COALESCE) {
+            throw new IllegalArgumentException("queueCapacity:" + queueCapacity + ", policy:" + policy);
+        }
+        Subscription subscription = new Subscription(this, subscriber, queueCapacity, policy, speechOnly);
+        mSubscriptions.add(subscription);
+        subscription.start();
+        return subscription;
+    }
+
+    /**
+     * 取消订阅, 队列中尚未处理的帧会被丢弃.
+     */
+    public void unsubscribe(Subscription subscription) {
+        if (subscription != null && mSubscriptions.remove(subscription)) {
+            subscription.detach();
+        }
+    }
+
+    /**
+     * 取消所有订阅
+     */
+    public void close() {
+        for (Subscription subscription : mSubscriptions) {
+            unsubscribe(subscription);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return mSubscriptions.size();
+    }
+
+    private AudioFrame obtainFrame(int size) {
+        AudioFrame frame;
+        while ((frame = mFramePool.poll()) != null) {
+            if (frame.capacity() >= size) {
+                return frame;
+            }
+            // 录音buffer变大后旧的帧不再复用
+        }
+        return new AudioFrame(this, size);
+    }
+
+    void recycle(AudioFrame frame) {
+        mFramePool.offer(frame);
+    }
+
+    private boolean hasAllFramesSubscriber() {
+        for (Subscription subscription : mSubscriptions) {
+            if (!subscription.mSpeechOnly) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void onRecordingStart() {
+        VoiceActivityDetector detector = mDetector;
+        if (detector != null) {
+            detector.reset();
+        }
+        VoiceRecord.RecordListener listener = mRecordListener;
+        if (listener != null) {
+            listener.onRecordingStart();
+        }
+    }
+
+    @Override
+    public void onRecording(byte[] data, int sizeInBytes) {
+        VoiceRecord.RecordListener listener = mRecordListener;
+        if (listener != null) {
+            listener.onRecording(data, sizeInBytes);
+        }
+        if (sizeInBytes <= 0) {
+            return;
+        }
+        VoiceActivityDetector detector = mDetector;
+        boolean speech = detector == null || detector.process(data, 0, sizeInBytes);
+        long sequence = mSequence++;
+        if (mSubscriptions.isEmpty() || (!speech && !hasAllFramesSubscriber())) {
+            return;
+        }
+        AudioFrame frame = obtainFrame(sizeInBytes);
+        frame.fill(data, sizeInBytes, sequence, speech);
+        for (Subscription subscription : mSubscriptions) {
+            if (!speech && subscription.mSpeechOnly) {
+                continue;
+            }
+            frame.retain();
+            if (!subscription.offer(frame)) {
+                frame.release();
+            }
+        }
+        frame.release();
+    }
+
+    @Override
+    public void onRecordCreateError() {
+        VoiceRecord.RecordListener listener = mRecordListener;
+        if (listener != null) {
+            listener.onRecordCreateError();
+        }
+    }
+
+    @Override
+    public void onRecordingFailed() {
+        VoiceRecord.RecordListener listener = mRecordListener;
+        if (listener != null) {
+            listener.onRecordingFailed();
+        }
+    }
+
+    @Override
+    public void onRecordingEnd() {
+        VoiceRecord.RecordListener listener = mRecordListener;
+        if (listener != null) {
+            listener.onRecordingEnd();
+        }
+    }
+
+    /**
+     * 一个订阅者的队列和分发线程
+     */
+    public static class Subscription implements Runnable {
+        private final AudioBus mBus;
+        private final Subscriber mSubscriber;
+        private final int mPolicy;
+        final boolean mSpeechOnly;
+        private final AudioFrame[] mQueue;
+        private int mHead = 0;
+        private int mCount = 0;
+        private boolean mDetached = false;
+        private final ReentrantLock mLock = new ReentrantLock();
+        private final Condition mNotEmpty = mLock.newCondition();
+        private final Condition mNotFull = mLock.newCondition();
+        private final AtomicLong mDeliveredCount = new AtomicLong();
+        private final AtomicLong mDroppedCount = new AtomicLong();
+        private volatile RuntimeException mFailure;
+        private Thread mThread;
+
+        Subscription(AudioBus bus, Subscriber subscriber, int queueCapacity, int policy, boolean speechOnly) {
+            mBus = bus;
+            mSubscriber = subscriber;
+            mPolicy = policy;
+            mSpeechOnly = speechOnly;
+            mQueue = new AudioFrame[queueCapacity];
+        }
+
+        void start() {
+            mThread = new Thread(this, "audio_bus_" + sThreadIndex.getAndIncrement());
+            mThread.start();
+        }
+
+        /**
+         * 由发布线程调用, frame已为本订阅者retain.
+         * @return false表示frame未入队, 调用者负责release
+         */
+        boolean offer(AudioFrame frame) {
+            AudioFrame dropped = null;
+            mLock.lock();
+            try {
+                if (mDetached) {
+                    return false;
+                }
+                if (mCount == mQueue.length) {
+                    switch (mPolicy) {
+                        case POLICY_BLOCK:
+                            while (mCount == mQueue.length && !mDetached) {
+                                mNotFull.awaitUninterruptibly();
+                            }
+                            if (mDetached) {
+                                return false;
+                            }
+                            break;
+                        case POLICY_DROP_OLDEST:
+                            dropped = mQueue[mHead];
+                            mQueue[mHead] = null;
+                            mHead = (mHead + 1) % mQueue.length;
+                            mCount--;
+                            break;
+                        case POLICY_DROP_NEWEST:
+                            mDroppedCount.incrementAndGet();
+                            return false;
+                        case POLICY_COALESCE:
+                            int tail = (mHead + mCount - 1) % mQueue.length;
+                            dropped = mQueue[tail];
+                            mQueue[tail] = frame;
+                            mDroppedCount.incrementAndGet();
+                            return true;
+                    }
+                    if (dropped != null) {
+                        mDroppedCount.incrementAndGet();
+                    }
+                }
+                mQueue[(mHead + mCount) % mQueue.length] = frame;
+                mCount++;
+                mNotEmpty.signal();
+                return true;
+            } finally {
+                mLock.unlock();
+                if (dropped != null) {
+                    dropped.release();
+                }
+            }
+        }
+
+        void detach() {
+            mLock.lock();
+            try {
+                mDetached = true;
+                mNotEmpty.signalAll();
+                mNotFull.signalAll();
+            } finally {
+                mLock.unlock();
+            }
+        }
+
+        public boolean isDetached() {
+            mLock.lock();
+            try {
+                return mDetached;
+            } finally {
+                mLock.unlock();
+            }
+        }
+
+        /**
+         * @return 订阅者抛出的异常, 出现异常后该订阅自动失效; 没有则返回null
+         */
+        public RuntimeException getFailure() {
+            return mFailure;
+        }
+
+        /**
+         * @return 已交给订阅者处理的帧数
+         */
+        public long getDeliveredCount() {
+            return mDeliveredCount.get();
+        }
+
+        /**
+         * @return 因队列满被丢弃或合并掉的帧数
+         */
+        public long getDroppedCount() {
+            return mDroppedCount.get();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                AudioFrame frame;
+                mLock.lock();
+                try {
+                    while (mCount == 0 && !mDetached) {
+                        mNotEmpty.awaitUninterruptibly();
+                    }
+                    if (mDetached) {
+                        while (mCount > 0) {
+                            mQueue[mHead].release();
+                            mQueue[mHead] = null;
+                            mHead = (mHead + 1) % mQueue.length;
+                            mCount--;
+                        }
+                        return;
+                    }
+                    frame = mQueue[mHead];
+                    mQueue[mHead] = null;
+                    mHead = (mHead + 1) % mQueue.length;
+                    mCount--;
+                    mNotFull.signal();
+                } finally {
+                    mLock.unlock();
+                }
+                try {
+                    mSubscriber.onFrame(frame);
+                    mDeliveredCount.incrementAndGet();
+                } catch (RuntimeException e) {
+                    mFailure = e;
+                    // 失效的订阅从总线移除, 不再参与每帧的分发
+                    mBus.unsubscribe(this);
+                } finally {
+                    frame.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record;
+
+import org.duoji.shortcode.android.record.dsp.VoiceActivityDetector;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link AudioBus} 中一帧录音数据的只读视图. 每次发布时录音数据拷贝一次到帧中, 之后所有订阅者共享同一个实例, 不再拷贝.
+ * 只在 {@link AudioBus.Subscriber#onFrame(AudioFrame)} 调用期间有效, 需要保留数据时请调用 {@link #copyTo}.
+ */
+public final class AudioFrame {
+    private final byte[] mData;
+    private final AtomicInteger mRefCount = new AtomicInteger();
+    private final AudioBus mOwner;
+    private int mSize;
+    private long mSequence;
+    private boolean mSpeech = true;
+
+    AudioFrame(AudioBus owner, int capacity) {
+        mOwner = owner;
+        mData = new byte[capacity];
+    }
+
+    /**
+     * 由发布线程在分发前调用, 拷贝一次录音数据.
+     */
+    void fill(byte[] data, int size, long sequence, boolean speech) {
+        System.arraycopy(data, 0, mData, 0, size);
+        mSize = size;
+        mSequence = sequence;
+        mSpeech = speech;
+        mRefCount.set(1);
+    }
+
+    int capacity() {
+        return mData.length;
+    }
+
+    void retain() {
+        mRefCount.incrementAndGet();
+    }
+
+    void release() {
+        if (mRefCount.decrementAndGet() == 0) {
+            mOwner.recycle(this);
+        }
+    }
+
+    /**
+     * @return 有效数据字节数
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return 帧序号, 从0开始递增, 订阅者可据此发现被丢弃的帧
+     */
+    public long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * @return 总线设置了语音检测时为该帧是否处于语音状态, 否则总为true
+     * @see AudioBus#setVoiceActivityDetector(VoiceActivityDetector)
+     */
+    public boolean isSpeech() {
+        return mSpeech;
+    }
+
+    public byte get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index:" + index + ", size:" + mSize);
+        }
+        return mData[index];
+    }
+
+    /**
+     * 按16位小端PCM读取一个采样
+     * @param sampleIndex 采样序号
+     */
+    public short getShort(int sampleIndex) {
+        int index = sampleIndex << 1;
+        if (sampleIndex < 0 || index + 1 >= mSize) {
+            throw new IndexOutOfBoundsException("sampleIndex:" + sampleIndex + ", size:" + mSize);
+        }
+        return (short) ((mData[index] & 0xff) | (mData[index + 1] << 8));
+    }
+
+    public void copyTo(int srcOffset, byte[] dst, int dstOffset, int length) {
+        if (srcOffset < 0 || length < 0 || srcOffset + length > mSize) {
+            throw new IndexOutOfBoundsException("srcOffset:" + srcOffset + ", length:" + length + ", size:" + mSize);
+        }
+        System.arraycopy(mData, srcOffset, dst, dstOffset, length);
+    }
+
+    /**
+     * @return 共享底层数组的只读ByteBuffer
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        return ByteBuffer.wrap(mData, 0, mSize).asReadOnlyBuffer();
+    }
+}
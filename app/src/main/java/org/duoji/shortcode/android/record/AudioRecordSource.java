@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * 实时录音数据源, {@link VoiceRecord} 默认使用
+ */
+public class AudioRecordSource implements AudioSource {
+    private static final String TAG = "AudioRecordSource";
+
+    private final int mAudioSource;
+    private final int mSampleRate;
+    private final int mChannels;
+    private final int mAudioEncodingBits;
+    private final int mBufferSize;
+    private AudioRecord mAudioRecord;
+
+    /**
+     * @param audioSource 声源, eg: MediaRecorder.AudioSource.MIC
+     * @param sampleRate 采样率
+     * @param channels 通道设置, eg: AudioFormat.CHANNEL_IN_MONO
+     * @param audioEncodingBits 编码, eg: AudioFormat.ENCODING_PCM_16BIT
+     * @param bufferSize AudioRecord的buffer大小, 不应小于 {@link #getMinBufferSize}
+     */
+    public AudioRecordSource(int audioSource, int sampleRate, int channels, int audioEncodingBits, int bufferSize) {
+        mAudioSource = audioSource;
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mAudioEncodingBits = audioEncodingBits;
+        mBufferSize = bufferSize;
+    }
+
+    /**
+     * @return 底层要求的最小buffer, 参数不支持时返回负数
+     */
+    public static int getMinBufferSize(int sampleRate, int channels, int audioEncodingBits) {
+        return AudioRecord.getMinBufferSize(sampleRate, channels, audioEncodingBits);
+    }
+
+    @Override
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    /**
+     * @param channels 通道设置, eg: AudioFormat.CHANNEL_IN_MONO
+     * @return 通道数
+     */
+    public static int channelCountOf(int channels) {
+        return Math.max(1, Integer.bitCount(channels));
+    }
+
+    /**
+     * @param audioEncodingBits 编码, eg: AudioFormat.ENCODING_PCM_16BIT
+     * @return 每个采样的位数, 32表示浮点
+     */
+    public static int bitsPerSampleOf(int audioEncodingBits) {
+        switch (audioEncodingBits) {
+            case AudioFormat.ENCODING_PCM_8BIT:
+                return 8;
+            case AudioFormat.ENCODING_PCM_FLOAT:
+                return 32;
+        }
+        return 16;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return channelCountOf(mChannels);
+    }
+
+    @Override
+    public int getBitsPerSample() {
+        return bitsPerSampleOf(mAudioEncodingBits);
+    }
+
+    /**
+     * 创建AudioRecord并开始录音
+     */
+    @Override
+    public void open() throws IOException {
+        try {
+            mAudioRecord = new AudioRecord(mAudioSource, mSampleRate, mChannels, mAudioEncodingBits, mBufferSize);
+            Log.d(TAG, "mAudioSource:" + mAudioSource + ", mSampleRate:" + mSampleRate + ", mChannels:" + mChannels + ", mAudioEncodingBits:" + mAudioEncodingBits + ", mRecordBufferSize:" + mBufferSize);
+            if (mAudioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+                throw new IOException("AudioRecord not initialized");
+            }
+            Log.d(TAG, "start Recording");
+            mAudioRecord.startRecording();
+        } catch (IllegalStateException e) {
+            close();
+            throw new IOException("start Recording failed: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            close();
+            throw new IOException("create AudioRecord failed: " + e.getMessage());
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * 阻塞读取. AudioRecord返回错误码时抛出异常, 实时录音没有结尾, 不会返回-1
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int size) throws IOException {
+        int result = mAudioRecord.read(buffer, offset, size);
+        if (result == AudioRecord.ERROR_INVALID_OPERATION) {
+            throw new IOException("read() return AudioRecord.ERROR_INVALID_OPERATION");
+        } else if (result == AudioRecord.ERROR_BAD_VALUE) {
+            throw new IOException("read() return AudioRecord.ERROR_BAD_VALUE");
+        } else if (result < 0) {
+            throw new IOException("read() return " + result);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        if (mAudioRecord == null) {
+            return;
+        }
+        try {
+            if (AudioRecord.STATE_INITIALIZED == mAudioRecord.getState()) {
+                mAudioRecord.stop();
+            }
+        } catch (IllegalStateException e) {
+            Log.e(TAG, e.getMessage());
+        }
+        mAudioRecord.release();
+        mAudioRecord = null;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record;
+
+/**
+ * 用 {@link AudioSource} 驱动 {@link VoiceRecord} 回放, 回调、前导音、电平和统计与
+ * {@link VoiceRecord#setReplaySource(AudioSource)} 完全相同, 另外提供在当前线程中执行和等待结束.
+ * 以消费者能跟上的最快速度回放, 不依赖Android音频, 可以在普通JVM上批量处理. eg:
+ * new AudioReplayer(PcmFileSource.create(file), new VadGate(vad, listener)).run();
+ */
+public class AudioReplayer implements Runnable {
+    private static final int DEFAULT_BUFFER_MILLIS = 100;
+
+    private final VoiceRecord mRecord;
+    private Thread mThread;
+
+    public AudioReplayer(AudioSource source, VoiceRecord.RecordListener listener) {
+        mRecord = new VoiceRecord(listener);
+        mRecord.setReplaySource(source);
+        int frameSize = Math.max(1, source.getChannelCount() * source.getBitsPerSample() / 8);
+        setBufferSize((int) ((long) source.getSampleRate() * DEFAULT_BUFFER_MILLIS / 1000) * frameSize);
+    }
+
+    /**
+     * @return 执行回放的VoiceRecord, 可用于设置前导音、电平和读取统计
+     */
+    public VoiceRecord getVoiceRecord() {
+        return mRecord;
+    }
+
+    /**
+     * @param bytes 每次回调的数据大小, 按帧对齐, 默认100ms
+     */
+    public void setBufferSize(int bytes) {
+        mRecord.setParam(VoiceRecord.PARAM_KEY_SET_RECORD_BUFFER_SIZE, bytes);
+    }
+
+    /**
+     * @param slots 读取线程与分发线程之间环形缓冲的槽位数, 默认16
+     */
+    public void setSlots(int slots) {
+        mRecord.setParam(VoiceRecord.PARAM_KEY_SET_DISPATCH_SLOTS, slots);
+    }
+
+    /**
+     * 在新线程中回放
+     * @param name 读取线程名
+     */
+    public synchronized void start(String name) {
+        if (mThread != null) {
+            throw new IllegalStateException("replayer already started");
+        }
+        mThread = new Thread(this, name);
+        mThread.start();
+    }
+
+    /**
+     * 停止回放, 已读取的数据仍会分发完
+     */
+    public void stop() {
+        mRecord.stopRecord();
+    }
+
+    /**
+     * 等待 {@link #start(String)} 启动的回放结束
+     */
+    public void join() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = mThread;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    /**
+     * @return 读取或listener处理中出现的异常, 没有则返回null
+     */
+    public Throwable getFailure() {
+        return mRecord.getFailure();
+    }
+
+    /**
+     * 在当前线程中回放, 返回时所有回调都已完成
+     */
+    @Override
+    public void run() {
+        mRecord.runRecord();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record;
+
+import java.io.IOException;
+
+/**
+ * 录音数据源. 实时录音由 {@link AudioRecordSource} 提供, 离线处理可以用 {@link PcmFileSource} 或 {@link PcmStreamSource}
+ * 回放保存的录音: 通过 {@link VoiceRecord#setReplaySource(AudioSource)} 走完整的录音流程,
+ * 需要在当前线程中同步回放时用 {@link AudioReplayer}.
+ * 除 {@link AudioRecordSource} 外实现不应依赖Android类, 以便在普通JVM上批量处理.
+ */
+public interface AudioSource {
+    int getSampleRate();
+
+    int getChannelCount();
+
+    /**
+     * @return 采样位数, 32表示浮点
+     */
+    int getBitsPerSample();
+
+    /**
+     * 打开数据源, 失败时listener收到 onRecordCreateError
+     */
+    void open() throws IOException;
+
+    /**
+     * 读取数据, 文件类数据源尽量填满 size 字节, 只有到达结尾时才返回更少的数据; 实时数据源可以返回已有的数据
+     * @return 读取的字节数, 没有更多数据时返回-1
+     */
+    int read(byte[] buffer, int offset, int size) throws IOException;
+
+    void close();
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 录音线程的运行统计: AudioRecord.read 和 onRecording 的耗时直方图, 短读/错误计数,
+ * 以及音频时间相对墙钟时间的漂移和据此估计的 AudioRecord 溢出次数.
+ * 每个计数只有一个写线程(录音线程或分发线程), 写入为单次 lazySet, 热路径上没有锁和CAS.
+ * {@link #reset()} 只记录基线, 不修改计数, 可以在任意线程调用.
+ */
+public class CaptureStats {
+    /** 直方图桶数, 第i个桶的上界为 64us << i, 最后一个桶不设上界 */
+    public static final int BUCKET_COUNT = 20;
+    private static final int MIN_BUCKET_SHIFT = 6;
+
+    // 计数下标
+    private static final int READS = 0;
+    private static final int SHORT_READS = 1;
+    private static final int ERRORS = 2;
+    private static final int OVERRUNS = 3;
+    private static final int LOST_NANOS = 4;
+    private static final int READ_BYTES = 5;
+    private static final int CALLBACKS = 6;
+    private static final int COUNTER_COUNT = 7;
+
+    private final AtomicLongArray mCounters = new AtomicLongArray(COUNTER_COUNT);
+    private final AtomicLongArray mReadHistogram = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLongArray mCallbackHistogram = new AtomicLongArray(BUCKET_COUNT);
+
+    // 基线, reset()时复制, 快照时减去
+    private final long[] mCounterBase = new long[COUNTER_COUNT];
+    private final long[] mReadBase = new long[BUCKET_COUNT];
+    private final long[] mCallbackBase = new long[BUCKET_COUNT];
+
+    // 以下只由录音线程写入
+    private int mFrameSize = 2;
+    private int mSampleRate = 16000;
+    private long mBufferNanos;
+    private boolean mStarted;
+    private long mStartNanos;
+    private long mFrames;
+    private long mDriftBase;
+    private volatile long mDriftNanos;
+
+    /**
+     * 统计快照, 由调用方持有并重复使用
+     */
+    public static class Snapshot {
+        public long reads;
+        public long shortReads;
+        public long errors;
+        /** 根据漂移估计的 AudioRecord 内部buffer溢出次数 */
+        public long estimatedOverruns;
+        /** 估计丢失的音频时长, 纳秒 */
+        public long estimatedLostNanos;
+        public long readBytes;
+        public long callbacks;
+        /** 当前录音中墙钟时间领先音频时间的量, 纳秒, 持续增长说明跟不上实时 */
+        public long driftNanos;
+        public final long[] readHistogram = new long[BUCKET_COUNT];
+        public final long[] callbackHistogram = new long[BUCKET_COUNT];
+
+        /**
+         * @return read耗时的百分位估计(所在桶的上界), 微秒
+         */
+        public long getReadPercentileMicros(double percentile) {
+            return percentile(readHistogram, percentile);
+        }
+
+        /**
+         * @return onRecording耗时的百分位估计(所在桶的上界), 微秒
+         */
+        public long getCallbackPercentileMicros(double percentile) {
+            return percentile(callbackHistogram, percentile);
+        }
+
+        private static long percentile(long[] histogram, double percentile) {
+            long total = 0;
+            for (long count : histogram) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= target) {
+                    return getBucketUpperMicros(i);
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * @return 第i个桶的上界, 微秒, 最后一个桶返回 Long.MAX_VALUE
+     */
+    public static long getBucketUpperMicros(int bucket) {
+        return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << (bucket + MIN_BUCKET_SHIFT);
+    }
+
+    private static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros >> MIN_BUCKET_SHIFT);
+        return bucket < BUCKET_COUNT ? bucket : BUCKET_COUNT - 1;
+    }
+
+    private static void increment(AtomicLongArray array, int index, long delta) {
+        array.lazySet(index, array.get(index) + delta);
+    }
+
+    /**
+     * 录音线程在开始读取前调用
+     * @param bufferSize AudioRecord内部buffer大小, 字节
+     */
+    void onStart(int sampleRate, int frameSize, int bufferSize) {
+        mSampleRate = sampleRate;
+        mFrameSize = frameSize;
+        mBufferNanos = (long) bufferSize / frameSize * 1000000000L / sampleRate;
+        mStarted = false;
+        mFrames = 0;
+        mDriftBase = Long.MAX_VALUE;
+        mDriftNanos = 0;
+    }
+
+    /**
+     * 录音线程在每次 AudioRecord.read 返回后调用
+     * @param requested 请求的字节数
+     * @param result read的返回值
+     * @param startNanos 调用read前的 System.nanoTime()
+     * @param endNanos read返回后的 System.nanoTime()
+     */
+    void onRead(int requested, int result, long startNanos, long endNanos) {
+        increment(mCounters, READS, 1);
+        increment(mReadHistogram, bucketOf(endNanos - startNanos), 1);
+        if (result < 0) {
+            increment(mCounters, ERRORS, 1);
+            return;
+        }
+        if (result < requested) {
+            increment(mCounters, SHORT_READS, 1);
+        }
+        increment(mCounters, READ_BYTES, result);
+        if (!mStarted) {
+            // 以第一次read开始的时刻为音频时间零点
+            mStarted = true;
+            mStartNanos = startNanos;
+        }
+        mFrames += result / mFrameSize;
+        long audioNanos = mFrames * 1000000000L / mSampleRate;
+        long drift = endNanos - mStartNanos - audioNanos;
+        mDriftNanos = drift;
+        if (drift < mDriftBase) {
+            mDriftBase = drift;
+        } else if (mBufferNanos > 0 && drift - mDriftBase > mBufferNanos) {
+            // 墙钟比音频多走了超过一个buffer的时长, 这段数据已被AudioRecord覆盖
+            increment(mCounters, OVERRUNS, 1);
+            increment(mCounters, LOST_NANOS, drift - mDriftBase);
+            mDriftBase = drift;
+        }
+    }
+
+    /**
+     * 分发线程在每次 onRecording 返回后调用
+     */
+    void onCallback(long nanos) {
+        increment(mCounters, CALLBACKS, 1);
+        increment(mCallbackHistogram, bucketOf(nanos), 1);
+    }
+
+    /**
+     * 读取自上次 {@link #reset()} 以来的统计
+     */
+    public synchronized void snapshot(Snapshot out) {
+        out.reads = mCounters.get(READS) - mCounterBase[READS];
+        out.shortReads = mCounters.get(SHORT_READS) - mCounterBase[SHORT_READS];
+        out.errors = mCounters.get(ERRORS) - mCounterBase[ERRORS];
+        out.estimatedOverruns = mCounters.get(OVERRUNS) - mCounterBase[OVERRUNS];
+        out.estimatedLostNanos = mCounters.get(LOST_NANOS) - mCounterBase[LOST_NANOS];
+        out.readBytes = mCounters.get(READ_BYTES) - mCounterBase[READ_BYTES];
+        out.callbacks = mCounters.get(CALLBACKS) - mCounterBase[CALLBACKS];
+        out.driftNanos = mDriftNanos;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            out.readHistogram[i] = mReadHistogram.get(i) - mReadBase[i];
+            out.callbackHistogram[i] = mCallbackHistogram.get(i) - mCallbackBase[i];
+        }
+    }
+
+    /**
+     * 清零统计(漂移除外, 漂移始终相对当前录音的开始)
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            mCounterBase[i] = mCounters.get(i);
+        }
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mReadBase[i] = mReadHistogram.get(i);
+            mCallbackBase[i] = mCallbackHistogram.get(i);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record;
+
+import org.duoji.shortcode.android.record.dsp.PolyphaseResampler;
+import org.duoji.shortcode.android.record.dsp.SampleConverter;
+
+/**
+ * 录音格式转换的listener: 把设备原生的采样率/通道/位数转换为下游需要的格式再转发,
+ * 例如以48kHz双声道录音, 输出16kHz单声道16位PCM给识别引擎.
+ * 工作buffer在构造时按最大输入大小预分配, 更大的输入会分块处理, 转发过程不分配内存.
+ * 输入不是整帧时, 末尾不完整的帧保留到下一次调用再拼接.
+ * 下游收到的data在返回后会被复用. eg:
+ * FormatConverter converter = new FormatConverter(48000, 2, false, 16000, 1, false, 4096, recognizerListener);
+ * VoiceRecord record = new VoiceRecord(converter);
+ */
+public class FormatConverter implements VoiceRecord.RecordListener {
+    private final int mInChannels;
+    private final boolean mInFloat;
+    private final int mOutChannels;
+    private final boolean mOutFloat;
+    private final VoiceRecord.RecordListener mDelegate;
+    /** 采样率相同时为null */
+    private final PolyphaseResampler mResampler;
+
+    private final int mInFrameSize;
+    /** 每块最多处理的输入帧数 */
+    private final int mMaxInFrames;
+    private final float[] mInSamples;
+    private final float[] mOutSamples;
+    private final byte[] mOutBytes;
+    /** 上一次输入末尾不完整的帧 */
+    private final byte[] mPartialFrame;
+    private int mPartialBytes;
+
+    /**
+     * @param inRate 输入采样率
+     * @param inChannels 输入通道数
+     * @param inFloat 输入是否为32位浮点, 否则为16位
+     * @param outRate 输出采样率
+     * @param outChannels 输出通道数, 只能为1或与输入相同
+     * @param outFloat 输出是否为32位浮点, 否则为16位
+     * @param maxInputBytes 预分配的最大输入大小, 一般为录音线程buffer大小
+     * @param delegate 接收转换后数据的listener
+     */
+    public FormatConverter(int inRate, int inChannels, boolean inFloat,
+                           int outRate, int outChannels, boolean outFloat,
+                           int maxInputBytes, VoiceRecord.RecordListener delegate) {
+        if (outChannels != 1 && outChannels != inChannels) {
+            throw new IllegalArgumentException("inChannels:" + inChannels + ", outChannels:" + outChannels);
+        }
+        mInChannels = inChannels;
+        mInFloat = inFloat;
+        mOutChannels = outChannels;
+        mOutFloat = outFloat;
+        mDelegate = delegate;
+        mResampler = inRate == outRate ? null : new PolyphaseResampler(inRate, outRate, outChannels);
+
+        mInFrameSize = inChannels * (inFloat ? 4 : 2);
+        mMaxInFrames = Math.max(1, maxInputBytes / mInFrameSize);
+        mInSamples = new float[mMaxInFrames * inChannels];
+        int maxOutFrames = mResampler == null ? mMaxInFrames : mResampler.getMaxOutputFrames(mMaxInFrames);
+        mOutSamples = mResampler == null ? mInSamples : new float[maxOutFrames * outChannels];
+        mOutBytes = new byte[maxOutFrames * outChannels * (outFloat ? 4 : 2)];
+        mPartialFrame = new byte[mInFrameSize];
+    }
+
+    /**
+     * 按 {@link VoiceRecord} 当前的录音参数构造
+     */
+    public FormatConverter(VoiceRecord record, int outRate, int outChannels, boolean outFloat,
+                           VoiceRecord.RecordListener delegate) {
+        this(record.getParamValue(VoiceRecord.PARAM_KEY_SET_SAMPLE_RATE), record.getChannelCount(),
+                record.isFloatEncoding(), outRate, outChannels, outFloat,
+                record.getParamValue(VoiceRecord.PARAM_KEY_SET_RECORD_BUFFER_SIZE), delegate);
+    }
+
+    @Override
+    public void onRecordingStart() {
+        if (mResampler != null) {
+            mResampler.reset();
+        }
+        mPartialBytes = 0;
+        mDelegate.onRecordingStart();
+    }
+
+    @Override
+    public void onRecording(byte[] data, int sizeInBytes) {
+        if (sizeInBytes <= 0) {
+            mDelegate.onRecording(data, sizeInBytes);
+            return;
+        }
+        int offset = 0;
+        if (mPartialBytes > 0) {
+            int count = Math.min(mInFrameSize - mPartialBytes, sizeInBytes);
+            System.arraycopy(data, 0, mPartialFrame, mPartialBytes, count);
+            mPartialBytes += count;
+            offset = count;
+            if (mPartialBytes < mInFrameSize) {
+                return;
+            }
+            convert(mPartialFrame, 0, 1);
+            mPartialBytes = 0;
+        }
+        int frames = (sizeInBytes - offset) / mInFrameSize;
+        while (frames > 0) {
+            int count = Math.min(frames, mMaxInFrames);
+            convert(data, offset, count);
+            offset += count * mInFrameSize;
+            frames -= count;
+        }
+        mPartialBytes = sizeInBytes - offset;
+        System.arraycopy(data, offset, mPartialFrame, 0, mPartialBytes);
+    }
+
+    private void convert(byte[] data, int offset, int inFrames) {
+        int samples = inFrames * mInChannels;
+        if (mInFloat) {
+            SampleConverter.pcmFloatToFloat(data, offset, mInSamples, 0, samples);
+        } else {
+            SampleConverter.pcm16ToFloat(data, offset, mInSamples, 0, samples);
+        }
+        if (mOutChannels != mInChannels) {
+            SampleConverter.downmix(mInSamples, 0, mInChannels, mInSamples, 0, inFrames);
+        }
+        int outFrames = inFrames;
+        if (mResampler != null) {
+            outFrames = mResampler.process(mInSamples, 0, inFrames, mOutSamples, 0);
+        }
+        if (outFrames == 0) {
+            return;
+        }
+        int outSamples = outFrames * mOutChannels;
+        if (mOutFloat) {
+            SampleConverter.floatToPcmFloat(mOutSamples, 0, mOutBytes, 0, outSamples);
+            mDelegate.onRecording(mOutBytes, outSamples << 2);
+        } else {
+            SampleConverter.floatToPcm16(mOutSamples, 0, mOutBytes, 0, outSamples);
+            mDelegate.onRecording(mOutBytes, outSamples << 1);
+        }
+    }
+
+    @Override
+    public void onRecordCreateError() {
+        mDelegate.onRecordCreateError();
+    }
+
+    @Override
+    public void onRecordingFailed() {
+        mDelegate.onRecordingFailed();
+    }
+
+    @Override
+    public void onRecordingEnd() {
+        mDelegate.onRecordingEnd();
+    }
+}
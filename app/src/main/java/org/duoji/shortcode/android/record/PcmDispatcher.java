@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 分发线程: 从 {@link PcmRingBuffer} 取出录音数据交给 {@link VoiceRecord.RecordListener#onRecording(byte[], int)},
+ * 使慢速的listener不会阻塞录音线程的 AudioRecord.read().
+ * 不依赖Android类, 可以直接在JVM上测试.
+ */
+public class PcmDispatcher implements Runnable {
+    /** 空闲时最长park时间, 兜底生产者唤醒丢失的情况 */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final PcmRingBuffer mRing;
+    private final VoiceRecord.RecordListener mListener;
+    private Thread mThread;
+    private CaptureStats mStats;
+
+    private volatile boolean mWaiting = false;
+    private volatile boolean mFinishing = false;
+    private volatile Throwable mFailure;
+
+    public PcmDispatcher(PcmRingBuffer ring, VoiceRecord.RecordListener listener) {
+        mRing = ring;
+        mListener = listener;
+    }
+
+    /**
+     * 设置统计onRecording耗时的对象, 需要在 {@link #start(String)} 之前调用
+     */
+    public void setCaptureStats(CaptureStats stats) {
+        mStats = stats;
+    }
+
+    /**
+     * 启动分发线程
+     * @param name 线程名
+     */
+    public synchronized void start(String name) {
+        if (mThread != null) {
+            throw new IllegalStateException("dispatcher already started");
+        }
+        mThread = new Thread(this, name);
+        mThread.start();
+    }
+
+    /**
+     * 生产者发布数据后调用, 唤醒等待中的分发线程.
+     */
+    public void signal() {
+        if (mWaiting) {
+            LockSupport.unpark(mThread);
+        }
+    }
+
+    /**
+     * 通知分发线程把环中剩余数据分发完后退出, 并等待其结束.
+     */
+    public void finish() throws InterruptedException {
+        mFinishing = true;
+        Thread thread;
+        synchronized (this) {
+            thread = mThread;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            thread.join();
+        }
+    }
+
+    /**
+     * @return listener抛出的异常, 没有则返回null. 出现异常后分发线程停止分发.
+     */
+    public Throwable getFailure() {
+        return mFailure;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            byte[] slot = mRing.peek();
+            if (slot != null) {
+                try {
+                    if (mFailure == null && mListener != null) {
+                        if (mStats != null) {
+                            long start = System.nanoTime();
+                            mListener.onRecording(slot, mRing.peekSize());
+                            mStats.onCallback(System.nanoTime() - start);
+                        } else {
+                            mListener.onRecording(slot, mRing.peekSize());
+                        }
+                    }
+                } catch (Throwable t) {
+                    mFailure = t;
+                } finally {
+                    mRing.release();
+                }
+                continue;
+            }
+            if (mFinishing) {
+                // finish()之前发布的数据一定在这次检查中可见
+                if (mRing.isEmpty()) {
+                    break;
+                }
+                continue;
+            }
+            mWaiting = true;
+            if (mRing.isEmpty() && !mFinishing) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            mWaiting = false;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * 回放保存的录音文件: WAV文件按文件头的格式读取data块, 其它文件按裸PCM读取.
+ */
+public class PcmFileSource extends PcmStreamSource {
+    private static final int DEFAULT_SAMPLE_RATE = 16000;
+    private final File mFile;
+    private final long mDataOffset;
+    private final long mDataLength;
+
+    /**
+     * 裸PCM文件
+     */
+    public PcmFileSource(File file, int sampleRate, int channelCount, int bitsPerSample) {
+        super(sampleRate, channelCount, bitsPerSample);
+        mFile = file;
+        mDataOffset = 0;
+        mDataLength = -1;
+    }
+
+    private PcmFileSource(File file, int sampleRate, int channelCount, int bitsPerSample,
+                          long dataOffset, long dataLength) {
+        super(sampleRate, channelCount, bitsPerSample);
+        mFile = file;
+        mDataOffset = dataOffset;
+        mDataLength = dataLength;
+    }
+
+    /**
+     * 根据文件内容创建数据源: WAV文件读取文件头中的格式, 其它文件按16kHz单声道16位的裸PCM处理
+     */
+    public static PcmFileSource create(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() < 12 || raf.readInt() != 0x52494646 /* RIFF */) {
+                return new PcmFileSource(file, DEFAULT_SAMPLE_RATE, 1, 16);
+            }
+            raf.skipBytes(4);
+            if (raf.readInt() != 0x57415645 /* WAVE */) {
+                throw new IOException("not a wave file: " + file);
+            }
+            int sampleRate = 0;
+            int channelCount = 0;
+            int bitsPerSample = 0;
+            while (raf.getFilePointer() + 8 <= raf.length()) {
+                int id = raf.readInt();
+                long size = Integer.reverseBytes(raf.readInt()) & 0xffffffffL;
+                long body = raf.getFilePointer();
+                if (id == 0x666d7420 /* fmt  */) {
+                    raf.skipBytes(2);
+                    channelCount = Short.reverseBytes(raf.readShort());
+                    sampleRate = Integer.reverseBytes(raf.readInt());
+                    raf.skipBytes(6);
+                    bitsPerSample = Short.reverseBytes(raf.readShort());
+                } else if (id == 0x64617461 /* data */) {
+                    if (sampleRate <= 0 || channelCount <= 0) {
+                        throw new IOException("missing fmt chunk: " + file);
+                    }
+                    // 录音中未更新长度的文件以实际文件大小为准
+                    long length = size == 0 ? raf.length() - body : Math.min(size, raf.length() - body);
+                    return new PcmFileSource(file, sampleRate, channelCount, bitsPerSample, body, length);
+                }
+                raf.seek(body + size + (size & 1));
+            }
+            throw new IOException("missing data chunk: " + file);
+        } finally {
+            raf.close();
+        }
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * @return 音频数据在文件中的偏移, 裸PCM文件为0
+     */
+    public long getDataOffset() {
+        return mDataOffset;
+    }
+
+    /**
+     * @return 音频数据的字节数, 裸PCM文件为文件大小
+     */
+    public long getDataLength() {
+        return mDataLength >= 0 ? mDataLength : mFile.length();
+    }
+
+    @Override
+    public void open() throws IOException {
+        InputStream input = new FileInputStream(mFile);
+        if (mDataOffset > 0) {
+            long skipped = 0;
+            while (skipped < mDataOffset) {
+                long count = input.skip(mDataOffset - skipped);
+                if (count <= 0) {
+                    input.close();
+                    throw new IOException("truncated file: " + mFile);
+                }
+                skipped += count;
+            }
+        }
+        if (mDataLength >= 0) {
+            input = new LimitedInputStream(input, mDataLength);
+        }
+        setInput(input);
+        super.open();
+    }
+
+    /**
+     * 只读取data块, 忽略其后的其它块
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private long mRemaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            mRemaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int value = super.read();
+            if (value >= 0) {
+                mRemaining--;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int count = super.read(b, off, (int) Math.min(len, mRemaining));
+            if (count > 0) {
+                mRemaining -= count;
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record;
+
+/**
+ * 固定大小的录音历史环, 始终保存最近写入的 capacity 字节, 构造时一次分配.
+ * 非线程安全, 由分发线程独占使用.
+ */
+public class PcmHistoryBuffer {
+    private final byte[] mBuffer;
+    private int mWritePos = 0;
+    private long mTotalWritten = 0;
+
+    public PcmHistoryBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity:" + capacity);
+        }
+        mBuffer = new byte[capacity];
+    }
+
+    public int capacity() {
+        return mBuffer.length;
+    }
+
+    /**
+     * @return 当前保存的字节数
+     */
+    public int size() {
+        return (int) Math.min(mTotalWritten, mBuffer.length);
+    }
+
+    public void clear() {
+        mWritePos = 0;
+        mTotalWritten = 0;
+    }
+
+    /**
+     * 写入数据, 超出容量时覆盖最旧的数据
+     */
+    public void write(byte[] data, int offset, int length) {
+        if (length >= mBuffer.length) {
+            System.arraycopy(data, offset + length - mBuffer.length, mBuffer, 0, mBuffer.length);
+            mWritePos = 0;
+        } else {
+            int first = Math.min(length, mBuffer.length - mWritePos);
+            System.arraycopy(data, offset, mBuffer, mWritePos, first);
+            System.arraycopy(data, offset + first, mBuffer, 0, length - first);
+            mWritePos = (mWritePos + length) % mBuffer.length;
+        }
+        mTotalWritten += length;
+    }
+
+    /**
+     * 从最旧到最新把保存的数据分块交给listener
+     * @param listener 接收数据, 每块调用一次 onRecording
+     * @param scratch 分块用的buffer, listener返回后复用
+     */
+    public void replay(VoiceRecord.RecordListener listener, byte[] scratch) {
+        int remaining = size();
+        int readPos = (mWritePos - remaining + mBuffer.length) % mBuffer.length;
+        while (remaining > 0) {
+            int count = Math.min(remaining, scratch.length);
+            int first = Math.min(count, mBuffer.length - readPos);
+            System.arraycopy(mBuffer, readPos, scratch, 0, first);
+            System.arraycopy(mBuffer, 0, scratch, first, count - first);
+            readPos = (readPos + count) % mBuffer.length;
+            remaining -= count;
+            listener.onRecording(scratch, count);
+        }
+    }
+}
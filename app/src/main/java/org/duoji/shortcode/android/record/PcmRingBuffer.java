@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单生产者/单消费者无锁环形缓冲区, 所有PCM槽位在构造时预分配.
+ * 生产者(录音线程)调用 {@link #claim()} 拿到空槽, 填充后调用 {@link #publish(int)};
+ * 消费者(分发线程)调用 {@link #peek()} 读取, 处理完调用 {@link #release()} 归还.
+ * 环满时 claim() 返回null, 该帧计为丢帧, 连续丢帧的一段计为一次overrun.
+ */
+public class PcmRingBuffer {
+    private final byte[][] mSlots;
+    private final int[] mSizes;
+    private final int mMask;
+    private final int mSlotSize;
+
+    /** 下一个可读槽位序号, 只由消费者推进 */
+    private final AtomicLong mHead = new AtomicLong();
+    /** 下一个可写槽位序号, 只由生产者推进 */
+    private final AtomicLong mTail = new AtomicLong();
+
+    private final AtomicLong mOverrunCount = new AtomicLong();
+    private final AtomicLong mDroppedFrameCount = new AtomicLong();
+    /** 生产者私有: 当前是否处于overrun中 */
+    private boolean mInOverrun = false;
+
+    /**
+     * @param slotCount 槽位个数, 向上取整为2的幂
+     * @param slotSize 每个槽位的字节数
+     */
+    public PcmRingBuffer(int slotCount, int slotSize) {
+        if (slotCount <= 0 || slotSize <= 0) {
+            throw new IllegalArgumentException("slotCount:" + slotCount + ", slotSize:" + slotSize);
+        }
+        int capacity = Integer.highestOneBit(slotCount);
+        if (capacity < slotCount) {
+            capacity <<= 1;
+        }
+        mMask = capacity - 1;
+        mSlotSize = slotSize;
+        mSlots = new byte[capacity][slotSize];
+        mSizes = new int[capacity];
+    }
+
+    public int getCapacity() {
+        return mSlots.length;
+    }
+
+    public int getSlotSize() {
+        return mSlotSize;
+    }
+
+    /**
+     * 生产者调用, 获取下一个可写槽位.
+     * @return 可写槽位; 环满时返回null, 并计一次丢帧.
+     */
+    public byte[] claim() {
+        long tail = mTail.get();
+        if (tail - mHead.get() > mMask) {
+            mDroppedFrameCount.incrementAndGet();
+            if (!mInOverrun) {
+                mInOverrun = true;
+                mOverrunCount.incrementAndGet();
+            }
+            return null;
+        }
+        mInOverrun = false;
+        return mSlots[(int) tail & mMask];
+    }
+
+    /**
+     * 生产者调用, 判断环是否已满. 与 {@link #claim()} 不同, 不计丢帧, 用于需要等待消费者的场景.
+     */
+    public boolean isFull() {
+        return mTail.get() - mHead.get() > mMask;
+    }
+
+    /**
+     * 生产者调用, 发布最近一次 {@link #claim()} 得到的槽位.
+     * @param size 槽位中有效数据大小, 也可以是负的错误码, 原样交给消费者.
+     */
+    public void publish(int size) {
+        long tail = mTail.get();
+        mSizes[(int) tail & mMask] = size;
+        mTail.lazySet(tail + 1);
+    }
+
+    /**
+     * 消费者调用, 查看最早一个已发布的槽位.
+     * @return 槽位数据, 环空时返回null.
+     */
+    public byte[] peek() {
+        long head = mHead.get();
+        if (head == mTail.get()) {
+            return null;
+        }
+        return mSlots[(int) head & mMask];
+    }
+
+    /**
+     * 消费者调用, 返回 {@link #peek()} 槽位中的有效数据大小.
+     */
+    public int peekSize() {
+        return mSizes[(int) mHead.get() & mMask];
+    }
+
+    /**
+     * 消费者调用, 归还 {@link #peek()} 得到的槽位.
+     */
+    public void release() {
+        mHead.lazySet(mHead.get() + 1);
+    }
+
+    public boolean isEmpty() {
+        return mHead.get() == mTail.get();
+    }
+
+    public int size() {
+        return (int) (mTail.get() - mHead.get());
+    }
+
+    /**
+     * @return 环满的次数, 连续丢帧只计一次.
+     */
+    public long getOverrunCount() {
+        return mOverrunCount.get();
+    }
+
+    /**
+     * @return 因环满被丢弃的帧数.
+     */
+    public long getDroppedFrameCount() {
+        return mDroppedFrameCount.get();
+    }
+}
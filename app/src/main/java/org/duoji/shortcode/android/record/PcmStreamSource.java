@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 从输入流读取裸PCM的数据源, 格式由调用方指定.
+ */
+public class PcmStreamSource implements AudioSource {
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final int mBitsPerSample;
+    private InputStream mInput;
+
+    public PcmStreamSource(InputStream input, int sampleRate, int channelCount, int bitsPerSample) {
+        mInput = input;
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mBitsPerSample = bitsPerSample;
+    }
+
+    /**
+     * 供子类在 {@link #open()} 中打开输入流
+     */
+    protected PcmStreamSource(int sampleRate, int channelCount, int bitsPerSample) {
+        this(null, sampleRate, channelCount, bitsPerSample);
+    }
+
+    protected void setInput(InputStream input) {
+        mInput = input;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    @Override
+    public int getBitsPerSample() {
+        return mBitsPerSample;
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (mInput == null) {
+            throw new IOException("no input stream");
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int size) throws IOException {
+        int total = 0;
+        while (total < size) {
+            int count = mInput.read(buffer, offset + total, size - total);
+            if (count < 0) {
+                break;
+            }
+            total += count;
+        }
+        return total == 0 && size > 0 ? -1 : total;
+    }
+
+    @Override
+    public void close() {
+        if (mInput != null) {
+            try {
+                mInput.close();
+            } catch (IOException ignored) {
+            }
+            mInput = null;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record;
+
+import java.util.ArrayList;
+
+/**
+ * 分发线程上的录音数据分接器: 把数据转发给 {@link VoiceRecord} 的listener,
+ * 同时保存最近一段历史, 供触发式录音先回放历史再无缝接上实时数据.
+ */
+class PreRollTap implements VoiceRecord.RecordListener {
+    private final VoiceRecord.RecordListener mDelegate;
+    private PcmHistoryBuffer mHistory;
+    private byte[] mScratch;
+
+    // 以下列表的修改都在this锁内, 遍历只在分发线程上
+    private final ArrayList<VoiceRecord.RecordListener> mTargets = new ArrayList<VoiceRecord.RecordListener>();
+    private final ArrayList<VoiceRecord.RecordListener> mPendingStarts = new ArrayList<VoiceRecord.RecordListener>();
+    private final ArrayList<VoiceRecord.RecordListener> mPendingStops = new ArrayList<VoiceRecord.RecordListener>();
+    private boolean mActive = false;
+
+    PreRollTap(VoiceRecord.RecordListener delegate) {
+        mDelegate = delegate;
+    }
+
+    /**
+     * 录音线程在每次录音开始前调用, 大小不变时复用已分配的buffer.
+     * @param historyBytes 历史长度, 0表示不保存历史
+     * @param chunkSize 回放时每块的大小
+     */
+    void prepare(int historyBytes, int chunkSize) {
+        if (historyBytes <= 0) {
+            mHistory = null;
+        } else if (mHistory == null || mHistory.capacity() != historyBytes) {
+            mHistory = new PcmHistoryBuffer(historyBytes);
+        } else {
+            mHistory.clear();
+        }
+        if (mScratch == null || mScratch.length != chunkSize) {
+            mScratch = new byte[chunkSize];
+        }
+    }
+
+    synchronized void startStream(VoiceRecord.RecordListener target) {
+        mPendingStops.remove(target);
+        if (!mTargets.contains(target) && !mPendingStarts.contains(target)) {
+            mPendingStarts.add(target);
+        }
+    }
+
+    synchronized void stopStream(VoiceRecord.RecordListener target) {
+        if (mPendingStarts.remove(target)) {
+            return;
+        }
+        if (mActive) {
+            mPendingStops.add(target);
+        } else if (mTargets.remove(target)) {
+            target.onRecordingEnd();
+        }
+    }
+
+    /**
+     * 录音线程在分发线程结束后调用, 结束所有触发的数据流
+     */
+    synchronized void endStreams() {
+        mActive = false;
+        for (VoiceRecord.RecordListener target : mTargets) {
+            target.onRecordingEnd();
+        }
+        mTargets.clear();
+        mPendingStops.clear();
+    }
+
+    @Override
+    public void onRecordingStart() {
+        if (mDelegate != null) {
+            mDelegate.onRecordingStart();
+        }
+    }
+
+    @Override
+    public void onRecording(byte[] data, int sizeInBytes) {
+        synchronized (this) {
+            mActive = true;
+            for (VoiceRecord.RecordListener target : mPendingStops) {
+                if (mTargets.remove(target)) {
+                    target.onRecordingEnd();
+                }
+            }
+            mPendingStops.clear();
+            for (VoiceRecord.RecordListener target : mPendingStarts) {
+                target.onRecordingStart();
+                if (mHistory != null) {
+                    // 先回放当前块之前的历史, 当前块随后作为实时数据送达
+                    mHistory.replay(target, mScratch);
+                }
+                mTargets.add(target);
+            }
+            mPendingStarts.clear();
+        }
+        if (mHistory != null && sizeInBytes > 0) {
+            mHistory.write(data, 0, sizeInBytes);
+        }
+        if (mDelegate != null) {
+            mDelegate.onRecording(data, sizeInBytes);
+        }
+        for (int i = 0; i < mTargets.size(); i++) {
+            mTargets.get(i).onRecording(data, sizeInBytes);
+        }
+    }
+
+    @Override
+    public void onRecordCreateError() {
+        if (mDelegate != null) {
+            mDelegate.onRecordCreateError();
+        }
+    }
+
+    @Override
+    public void onRecordingFailed() {
+        if (mDelegate != null) {
+            mDelegate.onRecordingFailed();
+        }
+    }
+
+    @Override
+    public void onRecordingEnd() {
+        if (mDelegate != null) {
+            mDelegate.onRecordingEnd();
+        }
+    }
+}
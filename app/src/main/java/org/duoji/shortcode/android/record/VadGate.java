@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record;
+
+import org.duoji.shortcode.android.record.dsp.VoiceActivityDetector;
+
+/**
+ * 用 {@link VoiceActivityDetector} 门控的listener: 只把处于语音状态的录音数据转发给下游,
+ * 录音开始/结束等回调原样转发. 静音数据保存在回溯缓冲中, 判为语音开始时先转发回溯的数据,
+ * 下游不会丢掉检测器确认语音之前的开头部分. eg: 只保存有人说话的部分
+ * VoiceRecord record = new VoiceRecord(new VadGate(vad, saveListener));
+ */
+public class VadGate implements VoiceRecord.RecordListener {
+    private final VoiceActivityDetector mDetector;
+    private final VoiceRecord.RecordListener mDelegate;
+    private final int mLookbackBytes;
+    /** 最近被门控的数据, 在 onRecordingStart 时按检测器当前参数分配 */
+    private PcmHistoryBuffer mHistory;
+    private byte[] mScratch;
+    private volatile long mPassedBytes;
+    private volatile long mGatedBytes;
+
+    public VadGate(VoiceActivityDetector detector, VoiceRecord.RecordListener delegate) {
+        this(detector, delegate, 0);
+    }
+
+    /**
+     * @param lookbackBytes 语音开始时回溯转发的字节数, 小于 {@link VoiceActivityDetector#getOnsetBytes()} 时按后者
+     */
+    public VadGate(VoiceActivityDetector detector, VoiceRecord.RecordListener delegate, int lookbackBytes) {
+        mDetector = detector;
+        mDelegate = delegate;
+        mLookbackBytes = lookbackBytes;
+    }
+
+    /**
+     * @return 转发给下游的字节数
+     */
+    public long getPassedBytes() {
+        return mPassedBytes;
+    }
+
+    /**
+     * @return 判为静音被丢弃的字节数
+     */
+    public long getGatedBytes() {
+        return mGatedBytes;
+    }
+
+    @Override
+    public void onRecordingStart() {
+        mDetector.reset();
+        int capacity = Math.max(mLookbackBytes, mDetector.getOnsetBytes());
+        if (mHistory == null || mHistory.capacity() != capacity) {
+            mHistory = new PcmHistoryBuffer(capacity);
+            mScratch = new byte[capacity];
+        } else {
+            mHistory.clear();
+        }
+        mDelegate.onRecordingStart();
+    }
+
+    @Override
+    public void onRecording(byte[] data, int sizeInBytes) {
+        if (sizeInBytes <= 0) {
+            mDelegate.onRecording(data, sizeInBytes);
+            return;
+        }
+        boolean wasSpeech = mDetector.isSpeech();
+        if (mDetector.process(data, 0, sizeInBytes)) {
+            if (!wasSpeech && mHistory != null && mHistory.size() > 0) {
+                // 语音开始, 先补上检测器确认之前的开头
+                int lookback = mHistory.size();
+                mHistory.replay(mDelegate, mScratch);
+                mHistory.clear();
+                mGatedBytes -= lookback;
+                mPassedBytes += lookback;
+            }
+            mPassedBytes += sizeInBytes;
+            mDelegate.onRecording(data, sizeInBytes);
+        } else {
+            if (mHistory != null) {
+                mHistory.write(data, 0, sizeInBytes);
+            }
+            mGatedBytes += sizeInBytes;
+        }
+    }
+
+    @Override
+    public void onRecordCreateError() {
+        mDelegate.onRecordCreateError();
+    }
+
+    @Override
+    public void onRecordingFailed() {
+        mDelegate.onRecordingFailed();
+    }
+
+    @Override
+    public void onRecordingEnd() {
+        mDelegate.onRecordingEnd();
+    }
+}
@@ -22,9 +22,18 @@ import android.media.MediaRecorder;
 import android.os.Process;
 import android.util.Log;
 
+import org.duoji.shortcode.android.record.dsp.LevelMeter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
 public class VoiceRecord {
     private static final String TAG = "VoiceRecord";
-    private AudioRecord mAudioRecord = null;
+    /** 数据源读取失败时计入统计的返回值 */
+    private static final int READ_ERROR = -1;
+    /** 回放时环满等待分发线程的时间 */
+    private static final long REPLAY_FULL_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
     private RecordingRunnable mRecordThread;
 
     // 录音相关参数设置
@@ -33,6 +42,9 @@ public class VoiceRecord {
     public static final int PARAM_KEY_SET_RECORD_BUFFER_SIZE = 2;
     public static final int PARAM_KEY_SET_SAMPLE_RATE = 3;
     public static final int PARAM_KEY_SET_ENCODING_BITS = 4;
+    public static final int PARAM_KEY_SET_DISPATCH_SLOTS = 5;
+    public static final int PARAM_KEY_SET_PRE_ROLL_MILLIS = 6;
+    public static final int PARAM_KEY_SET_LEVEL_METER = 7;
     // 录音相关参数默认设置
     /**
      * 通道数
@@ -54,14 +66,52 @@ public class VoiceRecord {
      * 采样位数
      */
     private int mAudioEncodingBits = AudioFormat.ENCODING_PCM_16BIT;
+    /**
+     * 录音线程与分发线程之间环形缓冲的槽位数, 每个槽位大小为录音线程buffer
+     */
+    private int mDispatchSlots = 16;
+    /**
+     * 为触发式录音保存的前导音时长(毫秒), 0表示不保存
+     */
+    private int mPreRollMillis = 0;
+    /**
+     * 是否在录音线程上测量电平, 1开启 0关闭
+     */
+    private int mLevelMeterEnabled = 0;
     /**
      * 读取音频数据的同步对象
      */
     protected Object syncObj = new Object();
     private RecordListener mListener;
+    /**
+     * 最近一次录音使用的环形缓冲, 用于查询overrun和丢帧统计
+     */
+    private volatile PcmRingBuffer mRingBuffer;
+    /**
+     * 最近一次录音使用的电平表, 未开启时为null
+     */
+    private volatile LevelMeter mLevelMeter;
+    /**
+     * 录音线程和分发线程的耗时/溢出统计, 跨多次录音累计
+     */
+    private final CaptureStats mCaptureStats = new CaptureStats();
+    /**
+     * 替代AudioRecord的数据源, 为null时实时录音
+     */
+    private volatile AudioSource mReplaySource;
+    /**
+     * 最近一次录音中的异常, 没有则为null
+     */
+    private volatile Throwable mFailure;
+
+    /**
+     * 分发线程上的分接器, 保存前导音并转发给触发的数据流
+     */
+    private final PreRollTap mPreRollTap;
 
     public VoiceRecord(RecordListener listener) {
         mListener = listener;
+        mPreRollTap = new PreRollTap(listener);
     }
 
     /**
@@ -86,6 +136,15 @@ public class VoiceRecord {
             case PARAM_KEY_SET_ENCODING_BITS:
                 mAudioEncodingBits = value;
                 break;
+            case PARAM_KEY_SET_DISPATCH_SLOTS:
+                mDispatchSlots = value;
+                break;
+            case PARAM_KEY_SET_PRE_ROLL_MILLIS:
+                mPreRollMillis = value;
+                break;
+            case PARAM_KEY_SET_LEVEL_METER:
+                mLevelMeterEnabled = value;
+                break;
         }
     }
 
@@ -106,10 +165,119 @@ public class VoiceRecord {
                 return mSampleRate;
             case PARAM_KEY_SET_ENCODING_BITS:
                 return mAudioEncodingBits;
+            case PARAM_KEY_SET_DISPATCH_SLOTS:
+                return mDispatchSlots;
+            case PARAM_KEY_SET_PRE_ROLL_MILLIS:
+                return mPreRollMillis;
+            case PARAM_KEY_SET_LEVEL_METER:
+                return mLevelMeterEnabled;
         }
         return -1;
     }
 
+    /**
+     * 获取通道数
+     * @return 当前通道设置对应的通道数, 设置了回放数据源时为数据源的通道数
+     */
+    public int getChannelCount() {
+        AudioSource replay = mReplaySource;
+        return replay != null ? replay.getChannelCount() : AudioRecordSource.channelCountOf(mChannels);
+    }
+
+    /**
+     * 获取采样位数
+     * @return 当前编码设置对应的每个采样的位数, 设置了回放数据源时为数据源的采样位数
+     */
+    public int getBitsPerSample() {
+        AudioSource replay = mReplaySource;
+        return replay != null ? replay.getBitsPerSample() : AudioRecordSource.bitsPerSampleOf(mAudioEncodingBits);
+    }
+
+    /**
+     * 是否为32位浮点采样
+     */
+    public boolean isFloatEncoding() {
+        return getBitsPerSample() == 32;
+    }
+
+    /**
+     * 获取最近一次录音中分发环被写满的次数, 连续丢帧只计一次
+     * @return overrun次数
+     */
+    public long getOverrunCount() {
+        PcmRingBuffer ring = mRingBuffer;
+        return ring == null ? 0 : ring.getOverrunCount();
+    }
+
+    /**
+     * 获取最近一次录音中因listener处理不及时而丢弃的帧数
+     * @return 丢帧数
+     */
+    public long getDroppedFrameCount() {
+        PcmRingBuffer ring = mRingBuffer;
+        return ring == null ? 0 : ring.getDroppedFrameCount();
+    }
+
+    /**
+     * 获取录音统计, 通过 {@link CaptureStats#snapshot} 读取, {@link CaptureStats#reset()} 清零
+     */
+    public CaptureStats getCaptureStats() {
+        return mCaptureStats;
+    }
+
+    /**
+     * 读取当前录音电平, 需要先开启 {@link #PARAM_KEY_SET_LEVEL_METER}. 可在任意线程调用, 不复制音频数据.
+     * @param out 保存结果的快照, 由调用方复用
+     * @return 未开启电平测量时返回false
+     */
+    public boolean readLevel(LevelMeter.Level out) {
+        LevelMeter meter = mLevelMeter;
+        if (meter == null) {
+            return false;
+        }
+        meter.read(out);
+        return true;
+    }
+
+    /**
+     * 触发一路数据流: target先收到 onRecordingStart 和最近 {@link #PARAM_KEY_SET_PRE_ROLL_MILLIS} 的前导音,
+     * 随后无缝接收实时数据, 直到 {@link #stopPreRollStream} 或录音结束时收到 onRecordingEnd.
+     * target的回调都在分发线程中, 录音未开始时会在下一次录音开始后生效.
+     * eg: record.startPreRollStream(new SaveSessionListener(SaveVoiceUtil.getInstance().createFile("keywords")));
+     * @param target 接收数据的listener
+     */
+    public void startPreRollStream(RecordListener target) {
+        mPreRollTap.startStream(target);
+    }
+
+    /**
+     * 结束 {@link #startPreRollStream} 触发的数据流
+     * @param target 接收数据的listener
+     */
+    public void stopPreRollStream(RecordListener target) {
+        mPreRollTap.stopStream(target);
+    }
+
+    /**
+     * 前导音时长对应的字节数, 按帧对齐
+     */
+    private int getPreRollBytes(int sampleRate, int frameSize) {
+        if (mPreRollMillis <= 0) {
+            return 0;
+        }
+        return (int) ((long) sampleRate * mPreRollMillis / 1000) * frameSize;
+    }
+
+    /**
+     * 设置数据源, 之后 {@link #startRecord()} 从该数据源回放而不是打开AudioRecord.
+     * 回放与实时录音走同样的录音线程和分发线程, 前导音、电平和统计都照常工作, 采样参数取自数据源;
+     * 区别只在于分发环满时等待分发线程而不是丢帧, 数据源读完后自动结束.
+     * @param source 数据源, null恢复实时录音
+     */
+    public void setReplaySource(AudioSource source) {
+        mReplaySource = source;
+    }
+
     /**
      * 开始录音
      */
@@ -130,6 +298,23 @@ public class VoiceRecord {
         }
     }
 
+    /**
+     * 在当前线程中录音, 返回时所有回调都已完成, 供 {@link AudioReplayer} 同步回放
+     */
+    void runRecord() {
+        if (mRecordThread == null) {
+            mRecordThread = new RecordingRunnable();
+        }
+        mRecordThread.run();
+    }
+
+    /**
+     * @return 最近一次录音中读取或listener处理出现的异常, 没有则返回null
+     */
+    Throwable getFailure() {
+        return mFailure;
+    }
+
     /**
      * 停止录音
      */
@@ -144,7 +329,7 @@ public class VoiceRecord {
 
         void onRecordingStart();
         /**
-         * 录音过程中调用，可能会调用多次
+         * 录音过程中调用，可能会调用多次. 在独立的分发线程中调用, data在返回后会被录音线程复用.
          * @param data 录音数据
          * @param sizeInBytes 成功返回数据大小，失败返回错误码。
          * @see {@link AudioRecord#read(byte[], int, int)}.
@@ -169,63 +354,52 @@ public class VoiceRecord {
      */
     private class RecordingRunnable implements Runnable {
         /** 是否结束识别 */
-        private boolean isEnd = false;
+        private volatile boolean isEnd = false;
         /** 是否退出录音线程 */
         private boolean isExit = false;
+        /** 本次录音是否从回放数据源读取, 由 init() 和数据源一起确定 */
+        private boolean isReplay = false;
 
-        private boolean init() {
-            try {
-                int mixRecordBufferSize = AudioRecord.getMinBufferSize(mSampleRate, mChannels, mAudioEncodingBits);
-                if (mixRecordBufferSize < 0) {
-                    if(mListener != null) {
-                        mListener.onRecordCreateError();
-                    }
-                    return false;
-                } else if (mAudioRecord == null) {
-                    if(mRecordBufferSize < mixRecordBufferSize) { // 当外部设置的录音buffer小于底层最小反馈buffer, 强制修改为底层最小反馈buffer
-                        mRecordBufferSize = mixRecordBufferSize;
-                    }
-                    mAudioRecord = new AudioRecord(mAudioSource, mSampleRate, mChannels, mAudioEncodingBits, mRecordBufferSize);
-                    Log.d(TAG, "mAudioSource:" + mAudioSource + ", mSampleRate:" + mSampleRate + ", mChannels:" + mChannels + ", mAudioEncodingBits:" + mAudioEncodingBits + ", mRecordBufferSize:" + mRecordBufferSize);
-                }
+        /**
+         * 创建实时录音的数据源, 录音buffer小于底层要求时按底层最小值修改
+         * @return 参数不支持时返回null
+         */
+        private AudioSource createRecordSource() {
+            int mixRecordBufferSize = AudioRecordSource.getMinBufferSize(mSampleRate, mChannels, mAudioEncodingBits);
+            if (mixRecordBufferSize < 0) {
+                return null;
+            }
+            if(mRecordBufferSize < mixRecordBufferSize) { // 当外部设置的录音buffer小于底层最小反馈buffer, 强制修改为底层最小反馈buffer
+                mRecordBufferSize = mixRecordBufferSize;
+            }
+            return new AudioRecordSource(mAudioSource, mSampleRate, mChannels, mAudioEncodingBits, mRecordBufferSize);
+        }
 
-                if (mAudioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
-                    if(mListener != null) {
-                        mListener.onRecordCreateError();
-                    }
-                    return false;
-                }
-            } catch (Exception e) {
+        private AudioSource init() {
+            mFailure = null;
+            AudioSource replay = mReplaySource;
+            AudioSource source = replay != null ? replay : createRecordSource();
+            if (source == null) {
                 if(mListener != null) {
                     mListener.onRecordCreateError();
                 }
-                return false;
+                return null;
             }
-            Log.d(TAG, "init Recording");
-            return true;
-        }
-
-        private boolean startup() {
-            isEnd = false;
-            isExit = false;
-            if (mAudioRecord.getState() == AudioRecord.STATE_INITIALIZED) {
-                try {
-                    Log.d(TAG, "start Recording");
-                    mAudioRecord.startRecording();
-                } catch (IllegalStateException e) {
-                    Log.d(TAG, "start Recording failed");
-                    if(mListener != null) {
-                        mListener.onRecordCreateError();
-                    }
-                    return false;
-                }
-            } else {
+            try {
+                source.open();
+            } catch (IOException e) {
+                Log.d(TAG, "open audio source failed: " + e.getMessage());
+                source.close();
                 if(mListener != null) {
                     mListener.onRecordCreateError();
                 }
-                return false;
+                return null;
             }
-            return true;
+            isEnd = false;
+            isExit = false;
+            isReplay = replay != null;
+            Log.d(TAG, "init Recording");
+            return source;
         }
 
         public void stop() {
@@ -236,57 +410,101 @@ public class VoiceRecord {
         }
 
         public void run() {
-            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
-            if (init() != true) {
+            AudioSource source = init();
+            if (source == null) {
                 return;
             }
+            boolean replay = isReplay;
+            if (!replay) {
+                // 回放可能在调用方线程中执行, 只提高实时录音线程的优先级
+                Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+            }
+            int sampleRate = source.getSampleRate();
+            int bitsPerSample = source.getBitsPerSample();
+            int frameSize = Math.max(1, source.getChannelCount() * bitsPerSample / 8);
+            // 回放时buffer按帧对齐, 每次回调都是完整的帧
+            int bufferSize = Math.max(frameSize, mRecordBufferSize - mRecordBufferSize % frameSize);
 
+            PcmRingBuffer ring = new PcmRingBuffer(mDispatchSlots, bufferSize);
+            mPreRollTap.prepare(getPreRollBytes(sampleRate, frameSize), bufferSize);
+            PcmDispatcher dispatcher = new PcmDispatcher(ring, mPreRollTap);
+            dispatcher.setCaptureStats(mCaptureStats);
+            mRingBuffer = ring;
+            LevelMeter meter = mLevelMeterEnabled != 0 ? new LevelMeter(bitsPerSample) : null;
+            mLevelMeter = meter;
+            boolean failed = false;
             try {
-                // 每次读取音频数据大小
-                byte[] pcmBuffer = new byte[mRecordBufferSize];
+                // 分发环写满时读入该buffer并丢弃, 保证AudioRecord不会溢出
+                byte[] dropBuffer = replay ? null : new byte[bufferSize];
                 // 实际读取音频数据大小
                 int pcmBufferSize;
-                if (startup()) {
-                    if(mListener != null) {
-                        mListener.onRecordingStart();
+                if(mListener != null) {
+                    mListener.onRecordingStart();
+                }
+                mCaptureStats.onStart(sampleRate, frameSize, bufferSize);
+                dispatcher.start("voice_dispatch");
+                while (!isExit) {
+                    if (replay) {
+                        // 回放的数据不会丢失, 等待分发线程而不是丢帧
+                        while (ring.isFull() && !isEnd && dispatcher.getFailure() == null) {
+                            LockSupport.parkNanos(REPLAY_FULL_WAIT_NANOS);
+                        }
                     }
-                    while (!isExit) {
-                        pcmBufferSize = mAudioRecord.read(pcmBuffer, 0, mRecordBufferSize);
-                        if (pcmBufferSize == AudioRecord.ERROR_INVALID_OPERATION) {
-                            throw new IllegalStateException("read() return AudioRecord.ERROR_INVALID_OPERATION");
-                        } else if (pcmBufferSize == AudioRecord.ERROR_BAD_VALUE) {
-                            throw new IllegalStateException("read() return AudioRecord.ERROR_BAD_VALUE");
+                    byte[] pcmBuffer = replay && ring.isFull() ? null : ring.claim();
+                    byte[] readBuffer = pcmBuffer != null ? pcmBuffer : dropBuffer;
+                    if (readBuffer != null) {
+                        long readStart = System.nanoTime();
+                        try {
+                            pcmBufferSize = source.read(readBuffer, 0, bufferSize);
+                        } catch (IOException e) {
+                            // 读取出错时计入错误统计, 然后结束录音
+                            mCaptureStats.onRead(bufferSize, READ_ERROR, readStart, System.nanoTime());
+                            throw e;
+                        }
+                        if (pcmBufferSize < 0) {
+                            // 回放的数据源已读完
+                            break;
+                        }
+                        mCaptureStats.onRead(bufferSize, pcmBufferSize, readStart, System.nanoTime());
+                        if (meter != null && pcmBufferSize > 0) {
+                            meter.measure(readBuffer, 0, pcmBufferSize);
                         }
-                        synchronized (syncObj) {
-                            if(mListener != null) {
-                                mListener.onRecording(pcmBuffer, pcmBufferSize);
-                            }
-
-                            if (isEnd == true) {
-                                isExit = true;
-                            }
+                        if (pcmBuffer != null) {
+                            ring.publish(pcmBufferSize);
+                            dispatcher.signal();
                         }
                     }
+                    if (dispatcher.getFailure() != null) {
+                        throw new IllegalStateException("onRecording() failed", dispatcher.getFailure());
+                    }
+
+                    if (isEnd == true) {
+                        isExit = true;
+                    }
                 }
             } catch (Exception e) {
                 Log.e(TAG, e.getMessage());
+                mFailure = e;
+                failed = true;
             }
 
+            try {
+                dispatcher.finish();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mPreRollTap.endStreams();
+            if (ring.getDroppedFrameCount() > 0) {
+                Log.w(TAG, "overrun:" + ring.getOverrunCount() + ", dropped frames:" + ring.getDroppedFrameCount());
+            }
             if(mListener != null) {
+                if (failed) {
+                    mListener.onRecordingFailed();
+                }
                 mListener.onRecordingEnd();
             }
-            if (mAudioRecord != null) {
-                synchronized (syncObj) {
-                    try {
-                        if (AudioRecord.STATE_INITIALIZED == mAudioRecord.getState()) {
-                            mAudioRecord.stop();
-                            mAudioRecord.release();
-                            mAudioRecord = null;
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, e.getMessage());
-                    }
-                }
+            synchronized (syncObj) {
+                source.close();
             }
             Log.d(TAG, "RecordingRunnable is exit");
         }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.batch;
+
+import org.duoji.shortcode.android.record.PcmFileSource;
+
+import java.io.File;
+
+/**
+ * 批处理中的一个录音文件及其格式
+ */
+public class BatchFile {
+    private final PcmFileSource mSource;
+
+    BatchFile(PcmFileSource source) {
+        mSource = source;
+    }
+
+    public File getFile() {
+        return mSource.getFile();
+    }
+
+    public int getSampleRate() {
+        return mSource.getSampleRate();
+    }
+
+    public int getChannelCount() {
+        return mSource.getChannelCount();
+    }
+
+    public int getBitsPerSample() {
+        return mSource.getBitsPerSample();
+    }
+
+    public int getFrameSize() {
+        return Math.max(1, getChannelCount() * getBitsPerSample() / 8);
+    }
+
+    /**
+     * @return 音频数据在文件中的偏移
+     */
+    public long getDataOffset() {
+        return mSource.getDataOffset();
+    }
+
+    /**
+     * @return 音频数据的字节数
+     */
+    public long getDataLength() {
+        return mSource.getDataLength();
+    }
+
+    /**
+     * @return 对应的回放数据源, 需要按顺序处理整个文件时使用
+     */
+    public PcmFileSource getSource() {
+        return mSource;
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.batch;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import org.duoji.shortcode.android.record.PcmFileSource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link BatchProcessor#submit} 返回的批处理任务, 用于查询进度、取消和等待结束.
+ * 目录在处理过程中遍历, 所以总文件数和总字节数会随遍历增长.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class BatchJob<R> {
+    private final BatchTask<R> mTask;
+    private final BlockBufferPool mBuffers;
+    private final BatchProcessor.ProgressListener mListener;
+    private ForkJoinTask<Void> mRoot;
+
+    private volatile boolean mCancelled = false;
+    private final AtomicInteger mDiscoveredFiles = new AtomicInteger();
+    private final AtomicInteger mFinishedFiles = new AtomicInteger();
+    private final AtomicLong mDiscoveredBytes = new AtomicLong();
+    private final AtomicLong mProcessedBytes = new AtomicLong();
+    private final Map<File, Throwable> mFailures = new ConcurrentHashMap<File, Throwable>();
+
+    BatchJob(BatchTask<R> task, BlockBufferPool buffers, BatchProcessor.ProgressListener listener) {
+        mTask = task;
+        mBuffers = buffers;
+        mListener = listener;
+    }
+
+    void start(ForkJoinPool pool, File dir) {
+        mRoot = pool.submit(new DirTask(dir));
+    }
+
+    /**
+     * 取消处理, 正在处理的数据块完成后各任务停止
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    public boolean isDone() {
+        return mRoot.isDone();
+    }
+
+    /**
+     * 等待所有任务结束(包括取消后的提前结束)
+     */
+    public void await() throws InterruptedException {
+        try {
+            mRoot.get();
+        } catch (ExecutionException e) {
+            // 单个文件的异常记录在失败列表中, 这里只有遍历目录本身的异常
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public int getDiscoveredFiles() {
+        return mDiscoveredFiles.get();
+    }
+
+    /**
+     * @return 已结束(成功或失败)的文件数
+     */
+    public int getFinishedFiles() {
+        return mFinishedFiles.get();
+    }
+
+    public long getDiscoveredBytes() {
+        return mDiscoveredBytes.get();
+    }
+
+    public long getProcessedBytes() {
+        return mProcessedBytes.get();
+    }
+
+    /**
+     * @return 处理失败的文件及其异常
+     */
+    public Map<File, Throwable> getFailures() {
+        return Collections.unmodifiableMap(mFailures);
+    }
+
+    private void notifyProgress() {
+        if (mListener != null) {
+            mListener.onProgress(this);
+        }
+    }
+
+    /**
+     * 遍历目录, 子目录和文件分别作为子任务
+     */
+    private class DirTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final File mDir;
+
+        DirTask(File dir) {
+            mDir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            File[] files = mDir.listFiles();
+            if (files == null || mCancelled) {
+                return;
+            }
+            List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    tasks.add(new DirTask(file));
+                } else if (mTask.accept(file)) {
+                    mDiscoveredFiles.incrementAndGet();
+                    mDiscoveredBytes.addAndGet(file.length());
+                    tasks.add(new FileTask(file));
+                }
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    private class FileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final File mFile;
+
+        FileTask(File file) {
+            mFile = file;
+        }
+
+        @Override
+        protected void compute() {
+            if (mCancelled) {
+                return;
+            }
+            FileInputStream input = null;
+            try {
+                BatchFile file = new BatchFile(PcmFileSource.create(mFile));
+                input = new FileInputStream(mFile);
+                FileChannel channel = input.getChannel();
+                // 块大小按采样帧对齐
+                int blockSize = mBuffers.getBlockSize() - mBuffers.getBlockSize() % file.getFrameSize();
+                if (blockSize == 0) {
+                    throw new IOException("frame size " + file.getFrameSize() + " exceeds block size " + mBuffers.getBlockSize());
+                }
+                RangeTask range = new RangeTask(file, channel, blockSize, 0, file.getDataLength());
+                R result = range.compute();
+                if (!mCancelled) {
+                    mTask.onFileDone(file, result);
+                }
+            } catch (Throwable t) {
+                mFailures.put(mFile, t instanceof BatchException && t.getCause() != null ? t.getCause() : t);
+            } finally {
+                if (input != null) {
+                    try {
+                        input.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                mFinishedFiles.incrementAndGet();
+                notifyProgress();
+            }
+        }
+    }
+
+    /**
+     * 处理文件中的一段数据: 可拆分时对半拆成子任务, 否则在当前线程按顺序处理各块
+     */
+    private class RangeTask extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+        private final BatchFile mFile;
+        private final FileChannel mChannel;
+        private final int mBlockSize;
+        private final long mOffset;
+        private final long mLength;
+
+        RangeTask(BatchFile file, FileChannel channel, int blockSize, long offset, long length) {
+            mFile = file;
+            mChannel = channel;
+            mBlockSize = blockSize;
+            mOffset = offset;
+            mLength = length;
+        }
+
+        @Override
+        protected R compute() {
+            try {
+                if (mTask.isSplittable() && mLength > 2L * mBlockSize) {
+                    long blocks = (mLength + mBlockSize - 1) / mBlockSize;
+                    long half = blocks / 2 * mBlockSize;
+                    RangeTask left = new RangeTask(mFile, mChannel, mBlockSize, mOffset, half);
+                    RangeTask right = new RangeTask(mFile, mChannel, mBlockSize, mOffset + half, mLength - half);
+                    left.fork();
+                    R rightResult = right.compute();
+                    return mTask.merge(left.join(), rightResult);
+                }
+                return processSequential();
+            } catch (IOException e) {
+                throw new BatchException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BatchException(e);
+            }
+        }
+
+        private R processSequential() throws IOException, InterruptedException {
+            R result = null;
+            boolean first = true;
+            long position = mOffset;
+            long end = mOffset + mLength;
+            while (position < end && !mCancelled) {
+                byte[] buffer = mBuffers.acquire();
+                try {
+                    int size = read(buffer, position, (int) Math.min(mBlockSize, end - position));
+                    if (size <= 0) {
+                        break;
+                    }
+                    R blockResult = mTask.processBlock(mFile, position, buffer, size);
+                    result = first ? blockResult : mTask.merge(result, blockResult);
+                    first = false;
+                    position += size;
+                    mProcessedBytes.addAndGet(size);
+                } finally {
+                    mBuffers.release(buffer);
+                }
+                notifyProgress();
+            }
+            return result;
+        }
+
+        private int read(byte[] buffer, long position, int length) throws IOException {
+            ByteBuffer target = ByteBuffer.wrap(buffer, 0, length);
+            long filePosition = mFile.getDataOffset() + position;
+            while (target.hasRemaining()) {
+                int count = mChannel.read(target, filePosition + target.position());
+                if (count < 0) {
+                    break;
+                }
+            }
+            return target.position();
+        }
+    }
+
+    /**
+     * 在fork/join任务之间传递受检异常
+     */
+    private static class BatchException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        BatchException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
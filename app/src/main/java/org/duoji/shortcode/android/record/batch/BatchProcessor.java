@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.batch;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import org.duoji.shortcode.android.record.util.SaveVoiceUtil;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 录音目录的并行批处理: 遍历目录, 每个文件一个fork/join任务, 可拆分的大文件再按块拆成子任务,
+ * 由work-stealing线程池执行. 同时处理中的数据块数量受 {@link #setMaxInFlightBytes(long)} 限制.
+ * 不依赖Android运行时, 也可以在普通JVM上运行. ForkJoinPool从API 21开始提供, 更低版本创建时抛出
+ * UnsupportedOperationException, 调用前用 {@link #isSupported()} 判断. eg:
+ * if (BatchProcessor.isSupported()) {
+ *     BatchJob<PcmStats> job = new BatchProcessor().submit(new PcmStatsTask());
+ *     job.await();
+ * }
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class BatchProcessor {
+    private static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+    /** 数据块最小值, 至少容纳一个常见格式的采样帧 */
+    private static final int MIN_BLOCK_SIZE = 256;
+    private static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 8L * 1024 * 1024;
+
+    public interface ProgressListener {
+        /**
+         * 每处理完一个数据块或文件时在工作线程中调用, 需要线程安全且快速返回
+         */
+        void onProgress(BatchJob<?> job);
+    }
+
+    private final ForkJoinPool mPool;
+    private int mBlockSize = DEFAULT_BLOCK_SIZE;
+    private long mMaxInFlightBytes = DEFAULT_MAX_IN_FLIGHT_BYTES;
+    private ProgressListener mProgressListener;
+
+    public BatchProcessor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism 工作线程数
+     */
+    public BatchProcessor(int parallelism) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("BatchProcessor requires API " + Build.VERSION_CODES.LOLLIPOP
+                    + ", current " + Build.VERSION.SDK_INT);
+        }
+        mPool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * 当前系统是否提供ForkJoinPool. 普通JVM上(单元测试的android.jar) SDK_INT为0, 视为支持
+     */
+    public static boolean isSupported() {
+        int sdk = Build.VERSION.SDK_INT;
+        return sdk == 0 || sdk >= Build.VERSION_CODES.LOLLIPOP;
+    }
+
+    /**
+     * @param bytes 每个数据块的大小, 默认256KB, 不小于256字节, 超过两块的文件在任务可拆分时并行处理
+     */
+    public void setBlockSize(int bytes) {
+        if (bytes < MIN_BLOCK_SIZE) {
+            throw new IllegalArgumentException("block size must be at least " + MIN_BLOCK_SIZE + ": " + bytes);
+        }
+        mBlockSize = bytes;
+    }
+
+    /**
+     * @param bytes 同时处理中的数据块总大小上限, 默认8MB
+     */
+    public void setMaxInFlightBytes(long bytes) {
+        mMaxInFlightBytes = bytes;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        mProgressListener = listener;
+    }
+
+    /**
+     * 处理 {@link SaveVoiceUtil} 的存储目录
+     */
+    public <R> BatchJob<R> submit(BatchTask<R> task) {
+        return submit(SaveVoiceUtil.getInstance().getSaveDir(), task);
+    }
+
+    /**
+     * 处理目录(含子目录)下所有被task接受的文件
+     */
+    public <R> BatchJob<R> submit(File dir, BatchTask<R> task) {
+        BlockBufferPool buffers = new BlockBufferPool(mBlockSize, (int) (mMaxInFlightBytes / mBlockSize));
+        BatchJob<R> job = new BatchJob<R>(task, buffers, mProgressListener);
+        job.start(mPool, dir);
+        return job;
+    }
+
+    /**
+     * 不再接受新任务, 已提交的任务继续执行
+     */
+    public void shutdown() {
+        mPool.shutdown();
+    }
+}
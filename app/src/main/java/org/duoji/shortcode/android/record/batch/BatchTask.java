@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.batch;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 批处理中对每个录音文件执行的任务. 所有方法都在 {@link BatchProcessor} 的工作线程中调用, 实现需要线程安全.
+ * @param <R> 每个数据块的处理结果, 同一文件的结果按文件顺序两两合并
+ */
+public interface BatchTask<R> {
+    /**
+     * @return 是否处理该文件
+     */
+    boolean accept(File file);
+
+    /**
+     * @return 大文件是否可以拆成块并行处理(如统计); 转码等需要按顺序处理的任务返回false,
+     * 此时同一文件的块在一个线程中按顺序处理
+     */
+    boolean isSplittable();
+
+    /**
+     * 处理一块音频数据, 块边界按采样帧对齐
+     * @param offset 块在音频数据中的偏移(不含文件头)
+     * @param data 数据, 只在调用期间有效
+     * @return 块结果, 可以为null
+     */
+    R processBlock(BatchFile file, long offset, byte[] data, int length) throws IOException;
+
+    /**
+     * 合并相邻两块的结果
+     * @param left 在前的结果
+     * @param right 在后的结果
+     */
+    R merge(R left, R right);
+
+    /**
+     * 文件处理完成
+     * @param result 整个文件合并后的结果
+     */
+    void onFileDone(BatchFile file, R result) throws IOException;
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.batch;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 限制同时在处理中的数据块数量, 从而限制批处理占用的内存.
+ * 等待时通过 {@link ForkJoinPool#managedBlock} 通知线程池, 以便补偿工作线程.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+class BlockBufferPool {
+    private final int mBlockSize;
+    private final Semaphore mPermits;
+    private final ConcurrentLinkedQueue<byte[]> mFree = new ConcurrentLinkedQueue<byte[]>();
+
+    BlockBufferPool(int blockSize, int maxBlocks) {
+        mBlockSize = blockSize;
+        mPermits = new Semaphore(Math.max(1, maxBlocks));
+    }
+
+    int getBlockSize() {
+        return mBlockSize;
+    }
+
+    byte[] acquire() throws InterruptedException {
+        if (!mPermits.tryAcquire()) {
+            ForkJoinPool.managedBlock(new PermitBlocker());
+        }
+        byte[] buffer = mFree.poll();
+        return buffer != null ? buffer : new byte[mBlockSize];
+    }
+
+    void release(byte[] buffer) {
+        mFree.offer(buffer);
+        mPermits.release();
+    }
+
+    private class PermitBlocker implements ForkJoinPool.ManagedBlocker {
+        private boolean mAcquired;
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if (!mAcquired) {
+                mPermits.acquire();
+                mAcquired = true;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return mAcquired || (mAcquired = mPermits.tryAcquire());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.batch;
+
+/**
+ * 一段16位PCM的统计结果, 可以按顺序合并
+ */
+public class PcmStats {
+    private long mSamples;
+    private double mSumSquares;
+    private int mPeak;
+    private long mClipped;
+
+    /**
+     * 统计一块16位小端PCM
+     */
+    public static PcmStats measure(byte[] data, int offset, int length) {
+        PcmStats stats = new PcmStats();
+        long sumSquares = 0;
+        int peak = 0;
+        long clipped = 0;
+        int end = offset + (length & ~1);
+        for (int i = offset; i < end; i += 2) {
+            int sample = (short) ((data[i] & 0xff) | (data[i + 1] << 8));
+            sumSquares += sample * sample;
+            int abs = sample < 0 ? -sample : sample;
+            if (abs > peak) {
+                peak = abs;
+            }
+            if (abs >= 32767) {
+                clipped++;
+            }
+        }
+        stats.mSamples = (end - offset) >> 1;
+        stats.mSumSquares = sumSquares;
+        stats.mPeak = peak;
+        stats.mClipped = clipped;
+        return stats;
+    }
+
+    /**
+     * @return 合并后的新结果, 参数可以为null
+     */
+    public static PcmStats merge(PcmStats left, PcmStats right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        PcmStats stats = new PcmStats();
+        stats.mSamples = left.mSamples + right.mSamples;
+        stats.mSumSquares = left.mSumSquares + right.mSumSquares;
+        stats.mPeak = Math.max(left.mPeak, right.mPeak);
+        stats.mClipped = left.mClipped + right.mClipped;
+        return stats;
+    }
+
+    /**
+     * @return 采样个数(所有通道)
+     */
+    public long getSamples() {
+        return mSamples;
+    }
+
+    /**
+     * @return 均方根, 相对满幅 0~1
+     */
+    public double getRms() {
+        return mSamples == 0 ? 0 : Math.sqrt(mSumSquares / mSamples) / 32768;
+    }
+
+    /**
+     * @return 峰值, 相对满幅 0~1
+     */
+    public double getPeak() {
+        return mPeak / 32768.0;
+    }
+
+    public long getClipped() {
+        return mClipped;
+    }
+}
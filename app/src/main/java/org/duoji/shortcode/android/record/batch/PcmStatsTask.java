@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 统计每个16位 .pcm/.wav 录音文件的电平, 大文件按块并行统计后合并
+ */
+public class PcmStatsTask implements BatchTask<PcmStats> {
+    private final Map<File, PcmStats> mResults = new ConcurrentHashMap<File, PcmStats>();
+
+    /**
+     * @return 已完成文件的统计结果
+     */
+    public Map<File, PcmStats> getResults() {
+        return mResults;
+    }
+
+    @Override
+    public boolean accept(File file) {
+        String name = file.getName();
+        return name.endsWith(".pcm") || name.endsWith(".wav");
+    }
+
+    @Override
+    public boolean isSplittable() {
+        return true;
+    }
+
+    @Override
+    public PcmStats processBlock(BatchFile file, long offset, byte[] data, int length) throws IOException {
+        if (file.getBitsPerSample() != 16) {
+            throw new IOException("unsupported bits per sample: " + file.getBitsPerSample());
+        }
+        return PcmStats.measure(data, 0, length);
+    }
+
+    @Override
+    public PcmStats merge(PcmStats left, PcmStats right) {
+        return PcmStats.merge(left, right);
+    }
+
+    @Override
+    public void onFileDone(BatchFile file, PcmStats result) {
+        mResults.put(file.getFile(), result != null ? result : new PcmStats());
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.codec;
+
+/**
+ * 16位小端交织PCM的分块编解码器. 每块独立编解码, 不保留块间状态,
+ * 所以同一个实例可以在多个线程中并行编码不同的块.
+ */
+public interface AudioCodec {
+
+    /**
+     * @return 写入文件头的编码器id
+     */
+    int getId();
+
+    /**
+     * @param pcmLength 一块PCM数据的字节数
+     * @param channelCount 通道数
+     * @return 编码结果的最大字节数
+     */
+    int maxEncodedSize(int pcmLength, int channelCount);
+
+    /**
+     * 编码一块PCM数据
+     * @param pcm PCM数据
+     * @param offset 起始位置
+     * @param length 字节数, 必须是采样帧的整数倍
+     * @param channelCount 通道数
+     * @param out 输出, 长度至少为 {@link #maxEncodedSize(int, int)}
+     * @return 编码后的字节数
+     */
+    int encode(byte[] pcm, int offset, int length, int channelCount, byte[] out);
+
+    /**
+     * 解码一块数据
+     * @param in 编码数据
+     * @param offset 起始位置
+     * @param length 编码数据字节数
+     * @param channelCount 通道数
+     * @param pcm 输出的PCM数据
+     * @param pcmLength 该块PCM数据的字节数
+     */
+    void decode(byte[] in, int offset, int length, int channelCount, byte[] pcm, int pcmLength);
+}
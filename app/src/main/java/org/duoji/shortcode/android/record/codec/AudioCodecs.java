@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.codec;
+
+/**
+ * 编码器id和实例
+ */
+public final class AudioCodecs {
+    /**
+     * 不编码, 直接保存PCM
+     */
+    public static final int CODEC_NONE = 0;
+    /**
+     * IMA-ADPCM, 有损, 压缩比约4:1
+     */
+    public static final int CODEC_IMA_ADPCM = 1;
+    /**
+     * 线性预测 + Rice编码, 无损
+     */
+    public static final int CODEC_RICE_LOSSLESS = 2;
+
+    private static final AudioCodec IMA_ADPCM = new ImaAdpcmCodec();
+    private static final AudioCodec RICE_LOSSLESS = new RiceLosslessCodec();
+
+    private AudioCodecs() {
+    }
+
+    /**
+     * @param id 编码器id
+     * @return 编码器实例, id为 {@link #CODEC_NONE} 或未知时返回null
+     */
+    public static AudioCodec get(int id) {
+        switch (id) {
+            case CODEC_IMA_ADPCM:
+                return IMA_ADPCM;
+            case CODEC_RICE_LOSSLESS:
+                return RICE_LOSSLESS;
+        }
+        return null;
+    }
+}
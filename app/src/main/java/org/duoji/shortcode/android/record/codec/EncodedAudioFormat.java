@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 编码录音文件的分帧格式, 所有整数为小端:
+ * 文件头: "DJAC" + 版本(1字节) + 编码器id(1字节) + 通道数(int16) + 采样率(int32), 共12字节;
+ * 之后为若干帧, 每帧: PCM字节数(int32) + 编码数据字节数(int32) + 编码数据.
+ * 每帧可以独立解码, 读取时不需要整个文件.
+ */
+public final class EncodedAudioFormat {
+    public static final int FILE_HEADER_SIZE = 12;
+    public static final int FRAME_HEADER_SIZE = 8;
+    public static final int VERSION = 1;
+    public static final String FILE_SUFFIX = ".djc";
+    private static final byte[] MAGIC = {'D', 'J', 'A', 'C'};
+
+    private EncodedAudioFormat() {
+    }
+
+    public static byte[] createFileHeader(int codecId, int channelCount, int sampleRate) {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC);
+        header.put((byte) VERSION);
+        header.put((byte) codecId);
+        header.putShort((short) channelCount);
+        header.putInt(sampleRate);
+        return header.array();
+    }
+
+    /**
+     * 校验文件头
+     * @return 文件头是否合法
+     */
+    public static boolean isValidFileHeader(byte[] header) {
+        if (header.length < FILE_HEADER_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return header[4] == VERSION;
+    }
+
+    public static int getCodecId(byte[] header) {
+        return header[5];
+    }
+
+    public static int getChannelCount(byte[] header) {
+        return ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getShort(6);
+    }
+
+    public static int getSampleRate(byte[] header) {
+        return ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getInt(8);
+    }
+
+    /**
+     * 在out的offset处写入帧头
+     */
+    public static void writeFrameHeader(byte[] out, int offset, int pcmLength, int encodedLength) {
+        writeInt(out, offset, pcmLength);
+        writeInt(out, offset + 4, encodedLength);
+    }
+
+    static int readInt(byte[] in, int offset) {
+        return (in[offset] & 0xff) | (in[offset + 1] & 0xff) << 8 | (in[offset + 2] & 0xff) << 16
+                | (in[offset + 3] & 0xff) << 24;
+    }
+
+    private static void writeInt(byte[] out, int offset, int value) {
+        out[offset] = (byte) value;
+        out[offset + 1] = (byte) (value >> 8);
+        out[offset + 2] = (byte) (value >> 16);
+        out[offset + 3] = (byte) (value >> 24);
+    }
+}
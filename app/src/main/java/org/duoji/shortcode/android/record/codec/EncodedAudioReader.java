@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.codec;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 流式读取 {@link EncodedAudioFormat} 格式的文件, 每次解码一帧, 内存占用只与帧大小有关.
+ * eg:
+ * EncodedAudioReader reader = new EncodedAudioReader(new FileInputStream(file));
+ * int length;
+ * while ((length = reader.readFrame()) >= 0) {
+ *     consume(reader.getPcm(), length);
+ * }
+ */
+public class EncodedAudioReader implements Closeable {
+    private final InputStream mInput;
+    private final AudioCodec mCodec;
+    private final int mChannelCount;
+    private final int mSampleRate;
+    private final byte[] mFrameHeader = new byte[EncodedAudioFormat.FRAME_HEADER_SIZE];
+    private byte[] mEncoded = new byte[0];
+    private byte[] mPcm = new byte[0];
+
+    public EncodedAudioReader(InputStream input) throws IOException {
+        mInput = input;
+        byte[] header = new byte[EncodedAudioFormat.FILE_HEADER_SIZE];
+        if (!readFully(header, EncodedAudioFormat.FILE_HEADER_SIZE) || !EncodedAudioFormat.isValidFileHeader(header)) {
+            throw new IOException("not an encoded audio file");
+        }
+        mCodec = AudioCodecs.get(EncodedAudioFormat.getCodecId(header));
+        if (mCodec == null) {
+            throw new IOException("unknown codec:" + EncodedAudioFormat.getCodecId(header));
+        }
+        mChannelCount = EncodedAudioFormat.getChannelCount(header);
+        mSampleRate = EncodedAudioFormat.getSampleRate(header);
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public AudioCodec getCodec() {
+        return mCodec;
+    }
+
+    /**
+     * 解码下一帧
+     * @return 解码后的PCM字节数, 数据在 {@link #getPcm()} 中; 文件结束时返回-1
+     */
+    public int readFrame() throws IOException {
+        if (!readFully(mFrameHeader, mFrameHeader.length)) {
+            return -1;
+        }
+        int pcmLength = EncodedAudioFormat.readInt(mFrameHeader, 0);
+        int encodedLength = EncodedAudioFormat.readInt(mFrameHeader, 4);
+        if (pcmLength < 0 || encodedLength < 0) {
+            throw new IOException("corrupt frame header");
+        }
+        if (mEncoded.length < encodedLength) {
+            mEncoded = new byte[encodedLength];
+        }
+        if (mPcm.length < pcmLength) {
+            mPcm = new byte[pcmLength];
+        }
+        if (!readFully(mEncoded, encodedLength)) {
+            throw new EOFException("truncated frame");
+        }
+        mCodec.decode(mEncoded, 0, encodedLength, mChannelCount, mPcm, pcmLength);
+        return pcmLength;
+    }
+
+    /**
+     * @return 最近一次 {@link #readFrame()} 解码出的PCM数据, 下次调用时会被覆盖
+     */
+    public byte[] getPcm() {
+        return mPcm;
+    }
+
+    private boolean readFully(byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int count = mInput.read(buffer, read, length - read);
+            if (count < 0) {
+                if (read == 0) {
+                    return false;
+                }
+                throw new EOFException("truncated data");
+            }
+            read += count;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInput.close();
+    }
+}
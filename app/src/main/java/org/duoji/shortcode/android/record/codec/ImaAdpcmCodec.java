@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.codec;
+
+/**
+ * IMA-ADPCM编解码, 每个采样4位.
+ * 每块每个通道的格式: 第一个采样(int16) + 初始步长下标(1字节) + 保留(1字节) + 其余采样的4位码, 低半字节在前.
+ */
+public class ImaAdpcmCodec implements AudioCodec {
+    private static final int[] STEP_TABLE = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17,
+            19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118,
+            130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+            337, 371, 408, 449, 494, 544, 598, 658, 724, 796,
+            876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+            2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358,
+            5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+            15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+    private static final int[] INDEX_TABLE = {
+            -1, -1, -1, -1, 2, 4, 6, 8
+    };
+    private static final int CHANNEL_HEADER_SIZE = 4;
+
+    @Override
+    public int getId() {
+        return AudioCodecs.CODEC_IMA_ADPCM;
+    }
+
+    @Override
+    public int maxEncodedSize(int pcmLength, int channelCount) {
+        int samples = pcmLength / 2 / channelCount;
+        return channelCount * (CHANNEL_HEADER_SIZE + samples / 2);
+    }
+
+    @Override
+    public int encode(byte[] pcm, int offset, int length, int channelCount, byte[] out) {
+        int samples = length / 2 / channelCount;
+        int pos = 0;
+        for (int c = 0; c < channelCount; c++) {
+            if (samples == 0) {
+                break;
+            }
+            int predictor = readSample(pcm, offset, 0, c, channelCount);
+            int index = 0;
+            if (samples > 1) {
+                int firstDiff = Math.abs(readSample(pcm, offset, 1, c, channelCount) - predictor);
+                while (index < 88 && STEP_TABLE[index] < firstDiff) {
+                    index++;
+                }
+            }
+            out[pos++] = (byte) predictor;
+            out[pos++] = (byte) (predictor >> 8);
+            out[pos++] = (byte) index;
+            out[pos++] = 0;
+            for (int i = 1; i < samples; i++) {
+                int diff = readSample(pcm, offset, i, c, channelCount) - predictor;
+                int nibble = 0;
+                if (diff < 0) {
+                    nibble = 8;
+                    diff = -diff;
+                }
+                int step = STEP_TABLE[index];
+                int delta = step >> 3;
+                if (diff >= step) {
+                    nibble |= 4;
+                    diff -= step;
+                    delta += step;
+                }
+                step >>= 1;
+                if (diff >= step) {
+                    nibble |= 2;
+                    diff -= step;
+                    delta += step;
+                }
+                step >>= 1;
+                if (diff >= step) {
+                    nibble |= 1;
+                    delta += step;
+                }
+                predictor = clamp(predictor + ((nibble & 8) != 0 ? -delta : delta));
+                index = clampIndex(index + INDEX_TABLE[nibble & 7]);
+                if ((i & 1) == 1) {
+                    out[pos] = (byte) nibble;
+                } else {
+                    out[pos++] |= (byte) (nibble << 4);
+                }
+            }
+            if ((samples & 1) == 0) {
+                // 采样数为偶数时, 码的个数为奇数, 最后一个字节只用了低半字节
+                pos++;
+            }
+        }
+        return pos;
+    }
+
+    @Override
+    public void decode(byte[] in, int offset, int length, int channelCount, byte[] pcm, int pcmLength) {
+        int samples = pcmLength / 2 / channelCount;
+        int pos = offset;
+        for (int c = 0; c < channelCount; c++) {
+            if (samples == 0) {
+                break;
+            }
+            int predictor = (short) ((in[pos] & 0xff) | (in[pos + 1] << 8));
+            int index = clampIndex(in[pos + 2]);
+            pos += CHANNEL_HEADER_SIZE;
+            writeSample(pcm, 0, c, channelCount, predictor);
+            for (int i = 1; i < samples; i++) {
+                int nibble;
+                if ((i & 1) == 1) {
+                    nibble = in[pos] & 0x0f;
+                } else {
+                    nibble = (in[pos++] >> 4) & 0x0f;
+                }
+                int step = STEP_TABLE[index];
+                int delta = step >> 3;
+                if ((nibble & 4) != 0) {
+                    delta += step;
+                }
+                if ((nibble & 2) != 0) {
+                    delta += step >> 1;
+                }
+                if ((nibble & 1) != 0) {
+                    delta += step >> 2;
+                }
+                predictor = clamp(predictor + ((nibble & 8) != 0 ? -delta : delta));
+                index = clampIndex(index + INDEX_TABLE[nibble & 7]);
+                writeSample(pcm, i, c, channelCount, predictor);
+            }
+            if ((samples & 1) == 0) {
+                pos++;
+            }
+        }
+    }
+
+    static int readSample(byte[] pcm, int offset, int sample, int channel, int channelCount) {
+        int index = offset + ((sample * channelCount + channel) << 1);
+        return (short) ((pcm[index] & 0xff) | (pcm[index + 1] << 8));
+    }
+
+    static void writeSample(byte[] pcm, int sample, int channel, int channelCount, int value) {
+        int index = (sample * channelCount + channel) << 1;
+        pcm[index] = (byte) value;
+        pcm[index + 1] = (byte) (value >> 8);
+    }
+
+    private static int clamp(int value) {
+        return value > Short.MAX_VALUE ? Short.MAX_VALUE : (value < Short.MIN_VALUE ? Short.MIN_VALUE : value);
+    }
+
+    private static int clampIndex(int index) {
+        return index < 0 ? 0 : (index > 88 ? 88 : index);
+    }
+}
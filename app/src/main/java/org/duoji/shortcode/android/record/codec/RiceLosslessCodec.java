@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.codec;
+
+/**
+ * 无损编码: 每块每个通道从0~2阶固定线性预测中选残差最小的一阶, 残差zigzag映射后做Rice编码.
+ * 每块每个通道的格式: 预测阶数(1字节) + Rice参数k(1字节) + 前order个原始采样(int16) + 残差位流(按字节对齐).
+ * 商不小于 {@link #ESCAPE_QUOTIENT} 时写入 {@link #ESCAPE_QUOTIENT} 个1后直接写 {@link #RAW_BITS} 位原值.
+ */
+public class RiceLosslessCodec implements AudioCodec {
+    private static final int MAX_ORDER = 2;
+    private static final int MAX_K = 16;
+    private static final int ESCAPE_QUOTIENT = 24;
+    /** 2阶预测残差绝对值不超过 4 * 32768, zigzag后19位可以表示 */
+    private static final int RAW_BITS = 20;
+
+    @Override
+    public int getId() {
+        return AudioCodecs.CODEC_RICE_LOSSLESS;
+    }
+
+    @Override
+    public int maxEncodedSize(int pcmLength, int channelCount) {
+        int samples = pcmLength / 2 / channelCount;
+        long bits = (long) samples * (ESCAPE_QUOTIENT + RAW_BITS);
+        return (int) (channelCount * (2 + 2 * MAX_ORDER + (bits + 7) / 8));
+    }
+
+    @Override
+    public int encode(byte[] pcm, int offset, int length, int channelCount, byte[] out) {
+        int samples = length / 2 / channelCount;
+        int pos = 0;
+        for (int c = 0; c < channelCount; c++) {
+            int order = chooseOrder(pcm, offset, samples, c, channelCount);
+            int k = chooseK(pcm, offset, samples, c, channelCount, order);
+            out[pos++] = (byte) order;
+            out[pos++] = (byte) k;
+            int warmup = Math.min(order, samples);
+            for (int i = 0; i < warmup; i++) {
+                int sample = ImaAdpcmCodec.readSample(pcm, offset, i, c, channelCount);
+                out[pos++] = (byte) sample;
+                out[pos++] = (byte) (sample >> 8);
+            }
+            long bitBuffer = 0;
+            int bitCount = 0;
+            for (int i = order; i < samples; i++) {
+                int value = zigzag(residual(pcm, offset, i, c, channelCount, order));
+                int quotient = value >>> k;
+                if (quotient < ESCAPE_QUOTIENT) {
+                    // quotient个1, 一个0, 再k位余数
+                    int prefixBits = quotient + 1;
+                    bitBuffer = (bitBuffer << prefixBits) | (((1L << quotient) - 1) << 1);
+                    bitCount += prefixBits;
+                    bitBuffer = (bitBuffer << k) | (value & ((1 << k) - 1));
+                    bitCount += k;
+                } else {
+                    bitBuffer = (bitBuffer << ESCAPE_QUOTIENT) | ((1L << ESCAPE_QUOTIENT) - 1);
+                    bitCount += ESCAPE_QUOTIENT;
+                    while (bitCount >= 8) {
+                        bitCount -= 8;
+                        out[pos++] = (byte) (bitBuffer >>> bitCount);
+                    }
+                    bitBuffer = (bitBuffer << RAW_BITS) | value;
+                    bitCount += RAW_BITS;
+                }
+                while (bitCount >= 8) {
+                    bitCount -= 8;
+                    out[pos++] = (byte) (bitBuffer >>> bitCount);
+                }
+            }
+            if (bitCount > 0) {
+                out[pos++] = (byte) (bitBuffer << (8 - bitCount));
+            }
+        }
+        return pos;
+    }
+
+    @Override
+    public void decode(byte[] in, int offset, int length, int channelCount, byte[] pcm, int pcmLength) {
+        int samples = pcmLength / 2 / channelCount;
+        int pos = offset;
+        for (int c = 0; c < channelCount; c++) {
+            int order = in[pos++];
+            int k = in[pos++];
+            int warmup = Math.min(order, samples);
+            for (int i = 0; i < warmup; i++) {
+                int sample = (short) ((in[pos] & 0xff) | (in[pos + 1] << 8));
+                pos += 2;
+                ImaAdpcmCodec.writeSample(pcm, i, c, channelCount, sample);
+            }
+            long bitBuffer = 0;
+            int bitCount = 0;
+            for (int i = order; i < samples; i++) {
+                int quotient = 0;
+                while (true) {
+                    if (bitCount == 0) {
+                        bitBuffer = in[pos++] & 0xff;
+                        bitCount = 8;
+                    }
+                    bitCount--;
+                    if (((bitBuffer >>> bitCount) & 1) == 0) {
+                        break;
+                    }
+                    if (++quotient == ESCAPE_QUOTIENT) {
+                        break;
+                    }
+                }
+                int bits = quotient == ESCAPE_QUOTIENT ? RAW_BITS : k;
+                while (bitCount < bits) {
+                    bitBuffer = (bitBuffer << 8) | (in[pos++] & 0xff);
+                    bitCount += 8;
+                }
+                bitCount -= bits;
+                int low = (int) ((bitBuffer >>> bitCount) & ((1L << bits) - 1));
+                int value = quotient == ESCAPE_QUOTIENT ? low : (quotient << k) | low;
+                int sample = unzigzag(value) + prediction(pcm, 0, i, c, channelCount, order);
+                ImaAdpcmCodec.writeSample(pcm, i, c, channelCount, sample);
+            }
+            // 位流按字节对齐, 剩余的填充位直接丢弃
+        }
+    }
+
+    private static int chooseOrder(byte[] pcm, int offset, int samples, int channel, int channelCount) {
+        long sum0 = 0;
+        long sum1 = 0;
+        long sum2 = 0;
+        for (int i = MAX_ORDER; i < samples; i++) {
+            int x0 = ImaAdpcmCodec.readSample(pcm, offset, i, channel, channelCount);
+            int x1 = ImaAdpcmCodec.readSample(pcm, offset, i - 1, channel, channelCount);
+            int x2 = ImaAdpcmCodec.readSample(pcm, offset, i - 2, channel, channelCount);
+            sum0 += Math.abs(x0);
+            sum1 += Math.abs(x0 - x1);
+            sum2 += Math.abs(x0 - 2 * x1 + x2);
+        }
+        if (sum0 <= sum1 && sum0 <= sum2) {
+            return 0;
+        }
+        return sum1 <= sum2 ? 1 : 2;
+    }
+
+    private static int chooseK(byte[] pcm, int offset, int samples, int channel, int channelCount, int order) {
+        long sum = 0;
+        int count = samples - order;
+        if (count <= 0) {
+            return 0;
+        }
+        for (int i = order; i < samples; i++) {
+            sum += zigzag(residual(pcm, offset, i, channel, channelCount, order));
+        }
+        int k = 0;
+        while (k < MAX_K && ((long) count << (k + 1)) <= sum) {
+            k++;
+        }
+        return k;
+    }
+
+    private static int residual(byte[] pcm, int offset, int i, int channel, int channelCount, int order) {
+        return ImaAdpcmCodec.readSample(pcm, offset, i, channel, channelCount)
+                - prediction(pcm, offset, i, channel, channelCount, order);
+    }
+
+    private static int prediction(byte[] pcm, int offset, int i, int channel, int channelCount, int order) {
+        switch (order) {
+            case 1:
+                return ImaAdpcmCodec.readSample(pcm, offset, i - 1, channel, channelCount);
+            case 2:
+                return 2 * ImaAdpcmCodec.readSample(pcm, offset, i - 1, channel, channelCount)
+                        - ImaAdpcmCodec.readSample(pcm, offset, i - 2, channel, channelCount);
+        }
+        return 0;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.dsp;
+
+/**
+ * 录音电平表: 在录音线程上对刚读到的PCM做一次遍历, 得到RMS、峰值、直流偏移和削波采样数.
+ * 结果以seqlock方式发布, 任意线程可以通过 {@link #read(Level)} 无锁读取一致的快照.
+ * {@link #measure} 只能由一个线程调用.
+ */
+public class LevelMeter {
+    private final int mBitsPerSample;
+    private final float mClipLevel;
+
+    // seqlock: 写入期间为奇数
+    private volatile int mSequence;
+    private volatile float mRms;
+    private volatile float mPeak;
+    private volatile float mDcOffset;
+    private volatile int mClippedSamples;
+    private volatile long mTotalClipped;
+    private volatile long mFrameCount;
+
+    /**
+     * @param bitsPerSample 采样位数: 8(无符号), 16, 或32(浮点)
+     */
+    public LevelMeter(int bitsPerSample) {
+        this(bitsPerSample, 0.999f);
+    }
+
+    /**
+     * @param clipLevel 幅度达到该值(相对满幅, 0~1)的采样计为削波
+     */
+    public LevelMeter(int bitsPerSample, float clipLevel) {
+        if (bitsPerSample != 8 && bitsPerSample != 16 && bitsPerSample != 32) {
+            throw new IllegalArgumentException("bitsPerSample:" + bitsPerSample);
+        }
+        mBitsPerSample = bitsPerSample;
+        mClipLevel = clipLevel;
+    }
+
+    /**
+     * 电平快照, 由调用方持有并重复使用
+     */
+    public static class Level {
+        /** 均方根, 相对满幅 0~1 */
+        public float rms;
+        /** 峰值, 相对满幅 0~1 */
+        public float peak;
+        /** 直流偏移, 相对满幅 -1~1 */
+        public float dcOffset;
+        /** 最近一帧的削波采样数 */
+        public int clippedSamples;
+        /** 累计削波采样数 */
+        public long totalClipped;
+        /** 已测量的帧数, 用于判断是否有新数据 */
+        public long frameCount;
+
+        public float getRmsDb() {
+            return toDb(rms);
+        }
+
+        public float getPeakDb() {
+            return toDb(peak);
+        }
+
+        private static float toDb(float value) {
+            return value <= 0 ? -120f : Math.max(-120f, (float) (20 * Math.log10(value)));
+        }
+    }
+
+    /**
+     * 测量一帧录音数据并发布结果
+     */
+    public void measure(byte[] pcm, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        double sum = 0;
+        double sumSquares = 0;
+        float peak = 0;
+        int clipped = 0;
+        int samples;
+        if (mBitsPerSample == 16) {
+            int clip = (int) (mClipLevel * 32768);
+            int maxAbs = 0;
+            long intSum = 0;
+            long intSquares = 0;
+            samples = length >> 1;
+            int end = offset + (samples << 1);
+            for (int i = offset; i < end; i += 2) {
+                int sample = (short) ((pcm[i] & 0xff) | (pcm[i + 1] << 8));
+                intSum += sample;
+                intSquares += sample * sample;
+                int abs = sample < 0 ? -sample : sample;
+                if (abs > maxAbs) {
+                    maxAbs = abs;
+                }
+                if (abs >= clip) {
+                    clipped++;
+                }
+            }
+            sum = intSum / 32768.0;
+            sumSquares = intSquares / (32768.0 * 32768.0);
+            peak = maxAbs / 32768f;
+        } else if (mBitsPerSample == 8) {
+            int clip = (int) (mClipLevel * 128);
+            int maxAbs = 0;
+            long intSum = 0;
+            long intSquares = 0;
+            samples = length;
+            for (int i = offset; i < offset + length; i++) {
+                int sample = (pcm[i] & 0xff) - 128;
+                intSum += sample;
+                intSquares += sample * sample;
+                int abs = sample < 0 ? -sample : sample;
+                if (abs > maxAbs) {
+                    maxAbs = abs;
+                }
+                if (abs >= clip) {
+                    clipped++;
+                }
+            }
+            sum = intSum / 128.0;
+            sumSquares = intSquares / (128.0 * 128.0);
+            peak = maxAbs / 128f;
+        } else {
+            samples = length >> 2;
+            int end = offset + (samples << 2);
+            for (int i = offset; i < end; i += 4) {
+                float sample = Float.intBitsToFloat((pcm[i] & 0xff) | (pcm[i + 1] & 0xff) << 8
+                        | (pcm[i + 2] & 0xff) << 16 | pcm[i + 3] << 24);
+                sum += sample;
+                sumSquares += sample * sample;
+                float abs = Math.abs(sample);
+                if (abs > peak) {
+                    peak = abs;
+                }
+                if (abs >= mClipLevel) {
+                    clipped++;
+                }
+            }
+        }
+        if (samples == 0) {
+            return;
+        }
+        int sequence = mSequence;
+        mSequence = sequence + 1;
+        mRms = (float) Math.sqrt(sumSquares / samples);
+        mPeak = peak;
+        mDcOffset = (float) (sum / samples);
+        mClippedSamples = clipped;
+        mTotalClipped += clipped;
+        mFrameCount++;
+        mSequence = sequence + 2;
+    }
+
+    /**
+     * 读取最近一次测量的结果
+     * @param out 保存结果的快照
+     */
+    public void read(Level out) {
+        while (true) {
+            int sequence = mSequence;
+            if ((sequence & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            out.rms = mRms;
+            out.peak = mPeak;
+            out.dcOffset = mDcOffset;
+            out.clippedSamples = mClippedSamples;
+            out.totalClipped = mTotalClipped;
+            out.frameCount = mFrameCount;
+            if (mSequence == sequence) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 清空累计值, 只能在测量线程上或录音停止时调用
+     */
+    public void reset() {
+        int sequence = mSequence;
+        mSequence = sequence + 1;
+        mRms = 0;
+        mPeak = 0;
+        mDcOffset = 0;
+        mClippedSamples = 0;
+        mTotalClipped = 0;
+        mFrameCount = 0;
+        mSequence = sequence + 2;
+    }
+}
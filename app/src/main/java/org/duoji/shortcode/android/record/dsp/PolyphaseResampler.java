@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.dsp;
+
+import java.util.Arrays;
+
+/**
+ * 有理数比例的多相滤波重采样器, 输入输出为交错的float采样.
+ * 构造时按 L/M = outRate/inRate (约分后) 预先计算 L 组加Blackman窗的sinc滤波系数,
+ * 降采样时截止频率随比例降低以抗混叠. 流式处理, 状态跨越多次 {@link #process} 调用, 不分配内存.
+ * 非线程安全.
+ */
+public class PolyphaseResampler {
+    /** 最大相位数, 避免互质的采样率产生过大的系数表 */
+    private static final int MAX_PHASES = 2048;
+    /** 通带边缘相对于输出奈奎斯特频率的比例 */
+    private static final double CUTOFF = 0.95;
+    private static final int DEFAULT_HALF_TAPS = 16;
+
+    private final int mInRate;
+    private final int mOutRate;
+    private final int mChannelCount;
+    private final int mUp;
+    private final int mDown;
+    private final int mTaps;
+    /** [phase][tap], tap 0 对应最新的输入采样 */
+    private final float[][] mFilters;
+    /** 每个通道的延迟线, 长度为两倍taps, 每个采样写两次以保证卷积时连续访问 */
+    private final float[][] mDelay;
+    private int mDelayPos;
+    private int mPhase;
+
+    public PolyphaseResampler(int inRate, int outRate, int channelCount) {
+        this(inRate, outRate, channelCount, DEFAULT_HALF_TAPS);
+    }
+
+    /**
+     * @param halfTaps 不降采样时每侧的滤波阶数, 越大过渡带越窄, 延迟和计算量越大
+     */
+    public PolyphaseResampler(int inRate, int outRate, int channelCount, int halfTaps) {
+        if (inRate <= 0 || outRate <= 0 || channelCount <= 0 || halfTaps <= 0) {
+            throw new IllegalArgumentException("inRate:" + inRate + ", outRate:" + outRate
+                    + ", channelCount:" + channelCount + ", halfTaps:" + halfTaps);
+        }
+        int gcd = gcd(inRate, outRate);
+        mUp = outRate / gcd;
+        mDown = inRate / gcd;
+        if (mUp > MAX_PHASES) {
+            throw new IllegalArgumentException("unsupported ratio " + inRate + " -> " + outRate);
+        }
+        mInRate = inRate;
+        mOutRate = outRate;
+        mChannelCount = channelCount;
+
+        // 截止频率, 以输入奈奎斯特频率为1
+        double cutoff = Math.min(1.0, (double) mUp / mDown) * CUTOFF;
+        int half = (int) Math.ceil(halfTaps / cutoff);
+        mTaps = half * 2;
+        mFilters = new float[mUp][mTaps];
+        for (int p = 0; p < mUp; p++) {
+            double sum = 0;
+            for (int k = 0; k < mTaps; k++) {
+                // 输出时刻相对于第k个输入采样的偏移
+                double x = half - k - (double) p / mUp;
+                double value = cutoff * sinc(cutoff * x) * blackman(x / half);
+                mFilters[p][k] = (float) value;
+                sum += value;
+            }
+            // 每个相位单独归一化, 保证直流增益为1
+            for (int k = 0; k < mTaps; k++) {
+                mFilters[p][k] = (float) (mFilters[p][k] / sum);
+            }
+        }
+        mDelay = new float[channelCount][mTaps * 2];
+        reset();
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static double sinc(double x) {
+        if (Math.abs(x) < 1e-9) {
+            return 1.0;
+        }
+        return Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+
+    private static double blackman(double u) {
+        if (u <= -1 || u >= 1) {
+            return 0;
+        }
+        return 0.42 + 0.5 * Math.cos(Math.PI * u) + 0.08 * Math.cos(2 * Math.PI * u);
+    }
+
+    public int getInRate() {
+        return mInRate;
+    }
+
+    public int getOutRate() {
+        return mOutRate;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    /**
+     * @return 滤波引入的延迟, 单位为输入采样帧
+     */
+    public int getDelayFrames() {
+        return mTaps / 2;
+    }
+
+    /**
+     * 清空延迟线, 开始新的数据流
+     */
+    public void reset() {
+        for (float[] delay : mDelay) {
+            Arrays.fill(delay, 0);
+        }
+        mDelayPos = 0;
+        mPhase = 0;
+    }
+
+    /**
+     * @return 输入 inFrames 帧时最多输出的帧数, 用于预分配输出buffer
+     */
+    public int getMaxOutputFrames(int inFrames) {
+        return (int) ((long) inFrames * mUp / mDown) + 1;
+    }
+
+    /**
+     * 处理交错的float采样
+     * @param inFrames 输入帧数
+     * @return 写入 out 的帧数, out 需要至少 {@link #getMaxOutputFrames(int)} 帧的空间
+     */
+    public int process(float[] in, int inOffset, int inFrames, float[] out, int outOffset) {
+        final int channels = mChannelCount;
+        final int taps = mTaps;
+        int outFrames = 0;
+        for (int n = 0; n < inFrames; n++) {
+            // 延迟线倒序存放, mDelayPos处为最新采样, 向后依次为更早的采样
+            mDelayPos = mDelayPos == 0 ? taps - 1 : mDelayPos - 1;
+            int inIndex = inOffset + n * channels;
+            for (int c = 0; c < channels; c++) {
+                float[] delay = mDelay[c];
+                float sample = in[inIndex + c];
+                delay[mDelayPos] = sample;
+                delay[mDelayPos + taps] = sample;
+            }
+            while (mPhase < mUp) {
+                float[] filter = mFilters[mPhase];
+                int outIndex = outOffset + outFrames * channels;
+                for (int c = 0; c < channels; c++) {
+                    float[] delay = mDelay[c];
+                    float acc = 0;
+                    for (int k = 0, d = mDelayPos; k < taps; k++, d++) {
+                        acc += filter[k] * delay[d];
+                    }
+                    out[outIndex + c] = acc;
+                }
+                outFrames++;
+                mPhase += mDown;
+            }
+            mPhase -= mUp;
+        }
+        return outFrames;
+    }
+}
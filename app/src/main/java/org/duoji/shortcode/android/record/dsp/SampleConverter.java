@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.dsp;
+
+/**
+ * 采样格式转换: 16位/32位浮点小端PCM与float之间的互转, 多通道下混为单通道.
+ * 全部在调用方提供的数组上进行, 不分配内存. float采样范围为 [-1, 1].
+ */
+public final class SampleConverter {
+    private static final float PCM16_SCALE = 1.0f / 32768;
+
+    private SampleConverter() {
+    }
+
+    /**
+     * 16位小端PCM转为float
+     * @param samples 采样个数(多通道时为帧数乘以通道数)
+     */
+    public static void pcm16ToFloat(byte[] src, int srcOffset, float[] dst, int dstOffset, int samples) {
+        for (int i = 0; i < samples; i++) {
+            int index = srcOffset + (i << 1);
+            dst[dstOffset + i] = (short) ((src[index] & 0xff) | (src[index + 1] << 8)) * PCM16_SCALE;
+        }
+    }
+
+    /**
+     * float转为16位小端PCM, 超出范围的采样被削波
+     */
+    public static void floatToPcm16(float[] src, int srcOffset, byte[] dst, int dstOffset, int samples) {
+        for (int i = 0; i < samples; i++) {
+            float value = src[srcOffset + i] * 32768;
+            int sample = value >= 32767 ? 32767 : value <= -32768 ? -32768 : Math.round(value);
+            int index = dstOffset + (i << 1);
+            dst[index] = (byte) sample;
+            dst[index + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    /**
+     * 32位浮点小端PCM转为float
+     */
+    public static void pcmFloatToFloat(byte[] src, int srcOffset, float[] dst, int dstOffset, int samples) {
+        for (int i = 0; i < samples; i++) {
+            int index = srcOffset + (i << 2);
+            int bits = (src[index] & 0xff) | (src[index + 1] & 0xff) << 8
+                    | (src[index + 2] & 0xff) << 16 | src[index + 3] << 24;
+            dst[dstOffset + i] = Float.intBitsToFloat(bits);
+        }
+    }
+
+    /**
+     * float转为32位浮点小端PCM
+     */
+    public static void floatToPcmFloat(float[] src, int srcOffset, byte[] dst, int dstOffset, int samples) {
+        for (int i = 0; i < samples; i++) {
+            int bits = Float.floatToRawIntBits(src[srcOffset + i]);
+            int index = dstOffset + (i << 2);
+            dst[index] = (byte) bits;
+            dst[index + 1] = (byte) (bits >> 8);
+            dst[index + 2] = (byte) (bits >> 16);
+            dst[index + 3] = (byte) (bits >> 24);
+        }
+    }
+
+    /**
+     * 交错的多通道float下混为单通道(各通道取平均).
+     * dst 可以与 src 为同一数组, 此时要求 dstOffset 不大于 srcOffset.
+     * @param frames 帧数
+     */
+    public static void downmix(float[] src, int srcOffset, int channelCount, float[] dst, int dstOffset, int frames) {
+        if (channelCount == 2) {
+            for (int i = 0; i < frames; i++) {
+                int index = srcOffset + (i << 1);
+                dst[dstOffset + i] = (src[index] + src[index + 1]) * 0.5f;
+            }
+            return;
+        }
+        float scale = 1.0f / channelCount;
+        for (int i = 0; i < frames; i++) {
+            int index = srcOffset + i * channelCount;
+            float sum = 0;
+            for (int c = 0; c < channelCount; c++) {
+                sum += src[index + c];
+            }
+            dst[dstOffset + i] = sum * scale;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.dsp;
+
+/**
+ * 基于短时能量和过零率的流式语音活动检测, 输入16位小端PCM.
+ * 按10ms分析帧计算能量和过零率, 与自适应噪声基底比较: 连续 attack 时长的帧超过起始阈值判为语音开始,
+ * 语音中低于结束阈值持续 hangover 时长后判为语音结束, 起始阈值高于结束阈值形成迟滞.
+ * 处理过程不分配内存, 分析帧可以跨越多次 {@link #process} 调用. 非线程安全.
+ */
+public class VoiceActivityDetector {
+    private static final int FRAME_MILLIS = 10;
+    /** 静音时噪声基底的跟踪速度 */
+    private static final float NOISE_RISE_SILENCE = 0.05f;
+    /** 语音中噪声基底的跟踪速度, 避免环境噪声变大后一直判为语音 */
+    private static final float NOISE_RISE_SPEECH = 0.002f;
+
+    public interface Listener {
+        /**
+         * @param sampleIndex 语音开始处的采样帧序号, 从 {@link #reset()} 起计
+         */
+        void onSpeechStart(long sampleIndex);
+
+        /**
+         * @param sampleIndex 语音结束处的采样帧序号
+         */
+        void onSpeechEnd(long sampleIndex);
+    }
+
+    private final int mChannelCount;
+    private final int mFrameSamples;
+    private Listener mListener;
+
+    private float mStartRatio = 4.0f;
+    private float mStopRatio = 2.0f;
+    private float mMinEnergy;
+    private float mMaxZeroCrossingRate = 0.45f;
+    private int mAttackFrames;
+    private int mHangoverFrames;
+
+    // 当前分析帧的累计值
+    private long mFrameEnergy;
+    private int mFrameZeroCrossings;
+    private int mFrameCount;
+    private int mLastSample;
+    private long mSampleIndex;
+
+    private float mNoiseEnergy = -1;
+    private boolean mSpeech;
+    private int mAttackCount;
+    private long mAttackStart;
+    private int mHangoverCount;
+    private float mLastEnergy;
+    private float mLastZeroCrossingRate;
+
+    /**
+     * @param sampleRate 采样率
+     * @param channelCount 通道数, 多通道时取各通道平均值
+     */
+    public VoiceActivityDetector(int sampleRate, int channelCount) {
+        if (sampleRate <= 0 || channelCount <= 0) {
+            throw new IllegalArgumentException("sampleRate:" + sampleRate + ", channelCount:" + channelCount);
+        }
+        mChannelCount = channelCount;
+        mFrameSamples = Math.max(1, sampleRate * FRAME_MILLIS / 1000);
+        setMinLevel(-50);
+        setAttack(30);
+        setHangover(300);
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 设置相对噪声基底的能量阈值
+     * @param startRatio 语音开始阈值, 默认4(约6dB)
+     * @param stopRatio 语音结束阈值, 默认2(约3dB), 不大于startRatio
+     */
+    public void setThresholds(float startRatio, float stopRatio) {
+        if (stopRatio <= 0 || startRatio < stopRatio) {
+            throw new IllegalArgumentException("startRatio:" + startRatio + ", stopRatio:" + stopRatio);
+        }
+        mStartRatio = startRatio;
+        mStopRatio = stopRatio;
+    }
+
+    /**
+     * 设置绝对能量下限, 低于该电平的帧不会判为语音
+     * @param dbfs 相对满幅的分贝数, 默认-50
+     */
+    public void setMinLevel(int dbfs) {
+        double amplitude = 32768.0 * Math.pow(10, dbfs / 20.0);
+        mMinEnergy = (float) (amplitude * amplitude);
+    }
+
+    /**
+     * 过零率高于该值且能量未达到两倍起始阈值的帧视为噪声, 默认0.45
+     */
+    public void setMaxZeroCrossingRate(float rate) {
+        mMaxZeroCrossingRate = rate;
+    }
+
+    /**
+     * @param millis 判为语音开始需要持续的时长, 默认30ms
+     */
+    public void setAttack(int millis) {
+        mAttackFrames = Math.max(1, millis / FRAME_MILLIS);
+    }
+
+    /**
+     * @return 判为语音开始前需要分析的16位PCM字节数, 即 attack 时长加一个分析帧.
+     * 门控时至少回溯这么多数据, 才不会丢掉语音开头
+     */
+    public int getOnsetBytes() {
+        return (mAttackFrames + 1) * mFrameSamples * mChannelCount * 2;
+    }
+
+    /**
+     * @param millis 语音结束前的拖尾时长, 默认300ms
+     */
+    public void setHangover(int millis) {
+        mHangoverFrames = Math.max(0, millis / FRAME_MILLIS);
+    }
+
+    /**
+     * 清空状态, 重新学习噪声基底
+     */
+    public void reset() {
+        mFrameEnergy = 0;
+        mFrameZeroCrossings = 0;
+        mFrameCount = 0;
+        mLastSample = 0;
+        mSampleIndex = 0;
+        mNoiseEnergy = -1;
+        mSpeech = false;
+        mAttackCount = 0;
+        mHangoverCount = 0;
+    }
+
+    /**
+     * 处理一段16位小端PCM
+     * @return 这段数据中是否有处于语音状态的部分, 用于门控
+     */
+    public boolean process(byte[] pcm, int offset, int length) {
+        boolean speech = mSpeech;
+        int step = mChannelCount << 1;
+        int end = offset + length - step + 1;
+        for (int i = offset; i < end; i += step) {
+            int sum = 0;
+            for (int c = 0; c < step; c += 2) {
+                sum += (short) ((pcm[i + c] & 0xff) | (pcm[i + c + 1] << 8));
+            }
+            speech |= addSample(sum / mChannelCount);
+        }
+        return speech;
+    }
+
+    /**
+     * 处理一段16位PCM
+     * @return 这段数据中是否有处于语音状态的部分, 用于门控
+     */
+    public boolean process(short[] pcm, int offset, int length) {
+        boolean speech = mSpeech;
+        int end = offset + length - mChannelCount + 1;
+        for (int i = offset; i < end; i += mChannelCount) {
+            int sum = 0;
+            for (int c = 0; c < mChannelCount; c++) {
+                sum += pcm[i + c];
+            }
+            speech |= addSample(sum / mChannelCount);
+        }
+        return speech;
+    }
+
+    private boolean addSample(int sample) {
+        mFrameEnergy += sample * sample;
+        if ((sample ^ mLastSample) < 0) {
+            mFrameZeroCrossings++;
+        }
+        mLastSample = sample;
+        mSampleIndex++;
+        if (++mFrameCount == mFrameSamples) {
+            endFrame();
+        }
+        return mSpeech;
+    }
+
+    private void endFrame() {
+        float energy = (float) mFrameEnergy / mFrameCount;
+        float zeroCrossingRate = (float) mFrameZeroCrossings / mFrameCount;
+        mLastEnergy = energy;
+        mLastZeroCrossingRate = zeroCrossingRate;
+        mFrameEnergy = 0;
+        mFrameZeroCrossings = 0;
+        mFrameCount = 0;
+
+        if (mNoiseEnergy < 0) {
+            mNoiseEnergy = energy;
+        }
+        float noise = Math.max(mNoiseEnergy, mMinEnergy);
+        boolean noisy = zeroCrossingRate > mMaxZeroCrossingRate && energy < noise * mStartRatio * 2;
+        if (!mSpeech) {
+            if (!noisy && energy > noise * mStartRatio) {
+                if (mAttackCount++ == 0) {
+                    mAttackStart = mSampleIndex - mFrameSamples;
+                }
+                if (mAttackCount >= mAttackFrames) {
+                    mSpeech = true;
+                    mHangoverCount = 0;
+                    if (mListener != null) {
+                        mListener.onSpeechStart(mAttackStart);
+                    }
+                }
+            } else {
+                mAttackCount = 0;
+                trackNoise(energy, NOISE_RISE_SILENCE);
+            }
+        } else {
+            if (!noisy && energy > noise * mStopRatio) {
+                mHangoverCount = 0;
+            } else if (++mHangoverCount > mHangoverFrames) {
+                mSpeech = false;
+                mAttackCount = 0;
+                if (mListener != null) {
+                    mListener.onSpeechEnd(mSampleIndex);
+                }
+            }
+            trackNoise(energy, NOISE_RISE_SPEECH);
+        }
+    }
+
+    private void trackNoise(float energy, float rise) {
+        if (energy < mNoiseEnergy) {
+            // 噪声基底下降时快速跟随
+            mNoiseEnergy = energy;
+        } else {
+            mNoiseEnergy += (energy - mNoiseEnergy) * rise;
+        }
+    }
+
+    /**
+     * @return 当前是否处于语音状态(含拖尾)
+     */
+    public boolean isSpeech() {
+        return mSpeech;
+    }
+
+    /**
+     * @return 当前噪声基底, 单位为采样值的均方
+     */
+    public float getNoiseEnergy() {
+        return mNoiseEnergy;
+    }
+
+    /**
+     * @return 最近一个分析帧的能量(均方)
+     */
+    public float getLastEnergy() {
+        return mLastEnergy;
+    }
+
+    /**
+     * @return 最近一个分析帧的过零率, 0~1
+     */
+    public float getLastZeroCrossingRate() {
+        return mLastZeroCrossingRate;
+    }
+}
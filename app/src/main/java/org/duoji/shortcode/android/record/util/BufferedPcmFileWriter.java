@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * 整段录音缓存在内存中, 关闭时一次写入文件. 内存占用随录音时长增长, 只适合短录音.
+ */
+public class BufferedPcmFileWriter implements PcmFileWriter {
+    private final ByteArrayOutputStream mByteBuffer = new ByteArrayOutputStream(5 * 1024);
+    private final FileOutputStream mOutputStream;
+
+    public BufferedPcmFileWriter(File file) throws IOException {
+        mOutputStream = new FileOutputStream(file);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        mByteBuffer.write(data, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        mByteBuffer.writeTo(mOutputStream);
+        mByteBuffer.reset();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        flush();
+        mOutputStream.getFD().sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            mByteBuffer.writeTo(mOutputStream);
+            mByteBuffer.reset();
+        } finally {
+            mOutputStream.close();
+        }
+    }
+}
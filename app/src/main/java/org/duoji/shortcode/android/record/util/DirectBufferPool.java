@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * direct buffer池, 供 {@link StreamingPcmFileWriter} 在多次录音间复用, 避免每个文件都分配和释放native内存.
+ * 只保留最近一次请求大小的buffer, 大小变化后旧的buffer交给GC. 池中最多保留 maxIdle 个空闲buffer.
+ */
+public class DirectBufferPool {
+    private final int mMaxIdle;
+    private final ArrayDeque<ByteBuffer> mFree = new ArrayDeque<ByteBuffer>();
+    private int mBufferSize = 0;
+
+    public DirectBufferPool(int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("maxIdle:" + maxIdle);
+        }
+        mMaxIdle = maxIdle;
+    }
+
+    /**
+     * @return 已clear的direct buffer, 容量为size
+     */
+    public ByteBuffer obtain(int size) {
+        synchronized (this) {
+            if (size != mBufferSize) {
+                mFree.clear();
+                mBufferSize = size;
+            }
+            ByteBuffer buffer = mFree.poll();
+            if (buffer != null) {
+                buffer.clear();
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    public synchronized void recycle(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != mBufferSize || mFree.size() >= mMaxIdle) {
+            return;
+        }
+        mFree.push(buffer);
+    }
+
+    public synchronized int getIdleCount() {
+        return mFree.size();
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.util;
+
+import org.duoji.shortcode.android.record.codec.AudioCodec;
+import org.duoji.shortcode.android.record.codec.EncodedAudioFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 编码后写文件: PCM按块切分, 各块在共享的编码线程池中并行编码, 再按原顺序以
+ * {@link EncodedAudioFormat} 分帧写入文件. 编码不在录音线程和存储线程上执行,
+ * 同时在编码中的块数有上限, 内存占用固定.
+ */
+public class EncodingPcmFileWriter implements PcmFileWriter {
+    /** 每块PCM数据的默认字节数, 16k单声道约256ms */
+    public static final int DEFAULT_BLOCK_SIZE = 8192;
+    private static final int MAX_IN_FLIGHT = 4;
+
+    private static ExecutorService sEncodeExecutor;
+
+    private final StreamingPcmFileWriter mOutput;
+    private final AudioCodec mCodec;
+    private final int mChannelCount;
+    private final int mBlockSize;
+    private final byte[] mFrameHeader = new byte[EncodedAudioFormat.FRAME_HEADER_SIZE];
+    private final ArrayDeque<Block> mFreeBlocks = new ArrayDeque<Block>();
+    private final ArrayDeque<Block> mPendingBlocks = new ArrayDeque<Block>();
+    private Block mCurrent;
+
+    public EncodingPcmFileWriter(File file, SaveConfig config, AudioCodec codec) throws IOException {
+        if (config.getBitsPerSample() != 16 || config.isFloatSamples()) {
+            throw new IOException("encoder only supports 16 bit pcm");
+        }
+        mCodec = codec;
+        mChannelCount = config.getChannelCount();
+        int frameSize = config.getFrameSize();
+        mBlockSize = Math.max(frameSize, DEFAULT_BLOCK_SIZE / frameSize * frameSize);
+        mOutput = new StreamingPcmFileWriter(file, config.getStreamingBufferSize(), config.getStreamingBufferCount(),
+                config.getStreamingFlushThreshold());
+        byte[] header = EncodedAudioFormat.createFileHeader(codec.getId(), mChannelCount, config.getSampleRate());
+        mOutput.write(header, 0, header.length);
+    }
+
+    /**
+     * 所有编码会话共享的线程池, 线程数为CPU核数
+     */
+    static synchronized ExecutorService getEncodeExecutor() {
+        if (sEncodeExecutor == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+            final AtomicInteger index = new AtomicInteger();
+            sEncodeExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "voice_encode_" + index.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            ((ThreadPoolExecutor) sEncodeExecutor).allowCoreThreadTimeOut(true);
+        }
+        return sEncodeExecutor;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (mCurrent == null) {
+                mCurrent = mFreeBlocks.isEmpty() ? new Block() : mFreeBlocks.poll();
+                mCurrent.mPcmLength = 0;
+            }
+            int count = Math.min(length, mBlockSize - mCurrent.mPcmLength);
+            System.arraycopy(data, offset, mCurrent.mPcm, mCurrent.mPcmLength, count);
+            mCurrent.mPcmLength += count;
+            offset += count;
+            length -= count;
+            if (mCurrent.mPcmLength == mBlockSize) {
+                submitCurrent();
+            }
+        }
+        drain(false);
+    }
+
+    private void submitCurrent() throws IOException {
+        Block block = mCurrent;
+        mCurrent = null;
+        // 限制同时编码的块数
+        while (mPendingBlocks.size() >= MAX_IN_FLIGHT) {
+            writeBlock(mPendingBlocks.poll());
+        }
+        block.mFuture = getEncodeExecutor().submit(block);
+        mPendingBlocks.add(block);
+    }
+
+    /**
+     * 按顺序写出已编码完成的块
+     * @param all 是否等待所有块编码完成
+     */
+    private void drain(boolean all) throws IOException {
+        while (!mPendingBlocks.isEmpty() && (all || mPendingBlocks.peek().mFuture.isDone())) {
+            writeBlock(mPendingBlocks.poll());
+        }
+    }
+
+    private void writeBlock(Block block) throws IOException {
+        try {
+            block.mFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while encoding");
+        } catch (ExecutionException e) {
+            throw new IOException("encode failed", e.getCause());
+        }
+        block.mFuture = null;
+        EncodedAudioFormat.writeFrameHeader(mFrameHeader, 0, block.mPcmLength, block.mEncodedLength);
+        mOutput.write(mFrameHeader, 0, mFrameHeader.length);
+        mOutput.write(block.mEncoded, 0, block.mEncodedLength);
+        mFreeBlocks.add(block);
+    }
+
+    /**
+     * 不足一块的数据也立即编码, 等所有块编码完成后写入文件
+     */
+    @Override
+    public void flush() throws IOException {
+        if (mCurrent != null && mCurrent.mPcmLength > 0) {
+            submitCurrent();
+        }
+        drain(true);
+        mOutput.flush();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        flush();
+        mOutput.sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (mCurrent != null && mCurrent.mPcmLength > 0) {
+                submitCurrent();
+            }
+            drain(true);
+        } finally {
+            mOutput.close();
+        }
+    }
+
+    /**
+     * 一块待编码的数据, 编码完成后复用
+     */
+    private class Block implements Runnable {
+        final byte[] mPcm = new byte[mBlockSize];
+        final byte[] mEncoded = new byte[mCodec.maxEncodedSize(mBlockSize, mChannelCount)];
+        int mPcmLength;
+        int mEncodedLength;
+        Future<?> mFuture;
+
+        @Override
+        public void run() {
+            mEncodedLength = mCodec.encode(mPcm, 0, mPcmLength, mChannelCount, mEncoded);
+        }
+    }
+}
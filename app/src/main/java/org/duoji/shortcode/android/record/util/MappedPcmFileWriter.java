@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 通过内存映射写WAV文件: 文件按窗口大小预分配并映射, 数据直接拷入page cache, 不需要每块一次系统调用.
+ * 每次写入后都更新映射的文件头中的data长度, 即已提交长度; 进程崩溃后已提交的数据仍在page cache中.
+ * 录音过程中写入 文件名+{@link #PART_SUFFIX}, 正常关闭时截断掉预分配的空间并改回原文件名;
+ * 崩溃后残留的 .part 文件可以用 {@link #recover(File)} 截断到已提交长度并改名.
+ * 注意: Java没有公开的unmap接口, 写满的窗口要等 {@link MappedByteBuffer} 被GC回收后才解除映射,
+ * 期间仍占用虚拟地址空间. 所以窗口不宜太小, 默认8MB(16kHz单声道16bit约4分钟)才换一次窗口.
+ */
+public class MappedPcmFileWriter implements PcmFileWriter {
+    public static final int DEFAULT_WINDOW_SIZE = 8 * 1024 * 1024;
+    public static final String PART_SUFFIX = ".part";
+
+    private final File mTarget;
+    private final File mPartFile;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final int mWindowSize;
+    private MappedByteBuffer mHeader;
+    private MappedByteBuffer mWindow;
+    private long mDataLength = 0;
+
+    public MappedPcmFileWriter(File file, SaveConfig config) throws IOException {
+        mWindowSize = config.getMappedWindowSize();
+        if (mWindowSize <= 0) {
+            throw new IllegalArgumentException("windowSize:" + mWindowSize);
+        }
+        mTarget = file;
+        mPartFile = new File(file.getPath() + PART_SUFFIX);
+        mFile = new RandomAccessFile(mPartFile, "rw");
+        try {
+            mChannel = mFile.getChannel();
+            mChannel.truncate(0);
+            mHeader = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, WavHeader.HEADER_SIZE);
+            mHeader.put(WavHeader.create(config.getSampleRate(), config.getChannelCount(), config.getBitsPerSample(),
+                    config.isFloatSamples(), 0));
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (mWindow == null || !mWindow.hasRemaining()) {
+                if (mWindow != null) {
+                    // 换窗口前把写满的窗口刷出, 之后它只等GC解除映射, 不会再有脏页
+                    mWindow.force();
+                }
+                // 映射超出文件长度时文件会自动扩展, 即按窗口预分配
+                mWindow = mChannel.map(FileChannel.MapMode.READ_WRITE, WavHeader.HEADER_SIZE + mDataLength, mWindowSize);
+            }
+            int count = Math.min(length, mWindow.remaining());
+            mWindow.put(data, offset, count);
+            offset += count;
+            length -= count;
+            mDataLength += count;
+        }
+        WavHeader.patchLength(mHeader, mDataLength);
+    }
+
+    /**
+     * @return 已提交的音频数据长度
+     */
+    public long getDataLength() {
+        return mDataLength;
+    }
+
+    /**
+     * 数据已经在page cache中, 不需要额外写出
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * 把映射的数据刷到存储设备. 之前的窗口在替换时已经刷出, 这里刷当前窗口和文件头,
+     * 最后再对整个文件做一次 force 以写出文件长度等元数据.
+     */
+    @Override
+    public void sync() throws IOException {
+        if (mWindow != null) {
+            mWindow.force();
+        }
+        mHeader.force();
+        mChannel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            WavHeader.patchLength(mHeader, mDataLength);
+            mWindow = null;
+            mHeader = null;
+            mChannel.truncate(WavHeader.HEADER_SIZE + mDataLength);
+        } finally {
+            mFile.close();
+        }
+        if (!mPartFile.renameTo(mTarget)) {
+            throw new IOException("rename failed:" + mPartFile);
+        }
+    }
+
+    /**
+     * 恢复未正常关闭的文件: 按文件头中的已提交长度截断掉预分配的空间, 再去掉 {@link #PART_SUFFIX} 后缀.
+     * @param partFile 残留的 .part 文件
+     * @return 恢复后的音频数据长度; 文件不是WAV时返回-1, 不做处理
+     */
+    public static long recover(File partFile) throws IOException {
+        long committed = truncateToCommitted(partFile);
+        if (committed >= 0 && partFile.getName().endsWith(PART_SUFFIX)) {
+            String path = partFile.getPath();
+            File target = new File(path.substring(0, path.length() - PART_SUFFIX.length()));
+            if (!partFile.renameTo(target)) {
+                throw new IOException("rename failed:" + partFile);
+            }
+        }
+        return committed;
+    }
+
+    private static long truncateToCommitted(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            long dataLength = WavHeader.readDataLength(channel);
+            if (dataLength < 0) {
+                return -1;
+            }
+            long committed = Math.min(dataLength, channel.size() - WavHeader.HEADER_SIZE);
+            if (channel.size() > WavHeader.HEADER_SIZE + committed) {
+                channel.truncate(WavHeader.HEADER_SIZE + committed);
+            }
+            if (committed != dataLength) {
+                WavHeader.patchLength(channel, committed);
+            }
+            return committed;
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.util;
+
+/**
+ * 可复用的录音数据块, 通过 {@link SaveVoiceUtil#obtainChunk()} 借出,
+ * 填充数据并 {@link #setLength(int)} 后用 {@link SaveSession#writeChunk(PcmChunk)} 提交,
+ * 提交后不能再访问, 存储线程写完后自动归还到池中.
+ */
+public final class PcmChunk {
+    private final byte[] mData;
+    private int mLength;
+    /** 提交到的会话, 只在链表头设置 */
+    SaveSession mSession;
+    /** 批量提交时串成链表 */
+    PcmChunk mNext;
+    /** 在池中空闲时串成链表 */
+    PcmChunk mPoolNext;
+
+    PcmChunk(int capacity) {
+        mData = new byte[capacity];
+    }
+
+    /**
+     * @return 可写入的数组, 长度为 {@link #capacity()}
+     */
+    public byte[] getData() {
+        return mData;
+    }
+
+    public int capacity() {
+        return mData.length;
+    }
+
+    public int getLength() {
+        return mLength;
+    }
+
+    /**
+     * 设置有效数据长度, 数据从下标0开始
+     */
+    public void setLength(int length) {
+        if (length < 0 || length > mData.length) {
+            throw new IllegalArgumentException("length:" + length + ", capacity:" + mData.length);
+        }
+        mLength = length;
+    }
+}
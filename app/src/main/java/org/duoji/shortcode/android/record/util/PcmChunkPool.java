@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.util;
+
+/**
+ * {@link PcmChunk} 对象池, 空闲块用侵入式链表保存, 借出和归还都不分配内存.
+ * 池中最多保留 maxIdle 个空闲块, 超出部分交给GC.
+ */
+public class PcmChunkPool {
+    private final int mChunkSize;
+    private final int mMaxIdle;
+    private PcmChunk mFree;
+    private int mIdleCount = 0;
+
+    public PcmChunkPool(int chunkSize, int maxIdle) {
+        if (chunkSize <= 0 || maxIdle < 0) {
+            throw new IllegalArgumentException("chunkSize:" + chunkSize + ", maxIdle:" + maxIdle);
+        }
+        mChunkSize = chunkSize;
+        mMaxIdle = maxIdle;
+    }
+
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    public PcmChunk obtain() {
+        synchronized (this) {
+            PcmChunk chunk = mFree;
+            if (chunk != null) {
+                mFree = chunk.mPoolNext;
+                chunk.mPoolNext = null;
+                mIdleCount--;
+                chunk.setLength(0);
+                return chunk;
+            }
+        }
+        return new PcmChunk(mChunkSize);
+    }
+
+    public void recycle(PcmChunk chunk) {
+        if (chunk == null || chunk.capacity() != mChunkSize) {
+            return;
+        }
+        chunk.mNext = null;
+        chunk.mSession = null;
+        synchronized (this) {
+            if (mIdleCount < mMaxIdle) {
+                chunk.mPoolNext = mFree;
+                mFree = chunk;
+                mIdleCount++;
+            }
+        }
+    }
+
+    public synchronized int getIdleCount() {
+        return mIdleCount;
+    }
+}
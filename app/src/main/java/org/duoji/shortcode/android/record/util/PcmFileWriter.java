@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.util;
+
+import java.io.IOException;
+
+/**
+ * 录音文件写入接口, 由 {@link SaveVoiceUtil} 的存储线程调用, 实现不需要线程安全.
+ */
+public interface PcmFileWriter {
+
+    /**
+     * 写入一段录音数据, 调用返回后data可以被复用.
+     */
+    void write(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * 把缓存的数据写入文件, 不保证落盘
+     */
+    void flush() throws IOException;
+
+    /**
+     * flush并把文件数据刷到存储设备, 返回后数据在掉电后也不会丢失
+     */
+    void sync() throws IOException;
+
+    /**
+     * 写完剩余数据并关闭文件
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.util;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 分段录音: 每段达到 {@link SaveConfig#getSegmentBytes()} 字节时切换到下一个文件.
+ * 切分点按采样帧对齐, 段与段之间数据连续, 不丢不重. 分段文件名为模板文件名加 "_序号",
+ * eg: 2018-7-6-11-27-53_keywords.wav -> 2018-7-6-11-27-53_keywords_0.wav, ..._1.wav
+ */
+public class RollingPcmFileWriter implements PcmFileWriter {
+    private final File mTemplate;
+    private final SaveConfig mConfig;
+    private final long mSegmentBytes;
+    private PcmFileWriter mSegment;
+    private long mSegmentWritten = 0;
+    private int mSegmentIndex = 0;
+
+    public RollingPcmFileWriter(File template, SaveConfig config) throws IOException {
+        mTemplate = template;
+        mConfig = config;
+        mSegmentBytes = config.getSegmentBytes();
+        if (mSegmentBytes <= 0) {
+            throw new IllegalArgumentException("segmentBytes:" + mSegmentBytes);
+        }
+        mSegment = config.openSegmentWriter(segmentFile(mSegmentIndex));
+    }
+
+    /**
+     * @return 第index段的文件
+     */
+    public File segmentFile(int index) {
+        String name = mTemplate.getName();
+        int dot = name.lastIndexOf('.');
+        String segmentName = dot < 0 ? name + "_" + index
+                : name.substring(0, dot) + "_" + index + name.substring(dot);
+        return new File(mTemplate.getParentFile(), segmentName);
+    }
+
+    /**
+     * @return 当前正在写入的段序号
+     */
+    public int getSegmentIndex() {
+        return mSegmentIndex;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (mSegmentWritten >= mSegmentBytes) {
+                rotate();
+            }
+            int count = (int) Math.min(length, mSegmentBytes - mSegmentWritten);
+            mSegment.write(data, offset, count);
+            mSegmentWritten += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void rotate() throws IOException {
+        // 先打开下一段, 失败时仍保留当前段, 下次写入时重试
+        PcmFileWriter next = mConfig.openSegmentWriter(segmentFile(mSegmentIndex + 1));
+        PcmFileWriter finished = mSegment;
+        mSegment = next;
+        mSegmentIndex++;
+        mSegmentWritten = 0;
+        // 之后的 sync() 只作用于新段, 结束的段在关闭前同步, 保证 sync 覆盖之前的所有段
+        finished.sync();
+        finished.close();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        mSegment.flush();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        mSegment.sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mSegment != null) {
+            mSegment.close();
+            mSegment = null;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.util;
+
+import org.duoji.shortcode.android.record.VoiceRecord;
+import org.duoji.shortcode.android.record.codec.AudioCodec;
+import org.duoji.shortcode.android.record.codec.AudioCodecs;
+import org.duoji.shortcode.android.record.codec.EncodedAudioFormat;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 录音文件的写入参数. {@link SaveVoiceUtil} 持有一份默认参数,
+ * 每个会话创建时复制一份, 之后修改参数不影响已创建的会话.
+ */
+public class SaveConfig {
+    /**
+     * 原始PCM, 文件后缀.pcm
+     */
+    public static final int FILE_FORMAT_PCM = 0;
+    /**
+     * WAV, 文件后缀.wav
+     */
+    public static final int FILE_FORMAT_WAV = 1;
+
+    private int mWriteMode = SaveVoiceUtil.WRITE_MODE_STREAMING;
+    private int mStreamingBufferSize = StreamingPcmFileWriter.DEFAULT_BUFFER_SIZE;
+    private int mStreamingBufferCount = StreamingPcmFileWriter.DEFAULT_BUFFER_COUNT;
+    private int mStreamingFlushThreshold = StreamingPcmFileWriter.DEFAULT_FLUSH_THRESHOLD;
+    private int mFileFormat = FILE_FORMAT_PCM;
+    private int mSampleRate = 16000;
+    private int mChannelCount = 1;
+    private int mBitsPerSample = 16;
+    private boolean mFloatSamples = false;
+    private long mSegmentSize = 0;
+    private long mSegmentMillis = 0;
+    private int mCodec = AudioCodecs.CODEC_NONE;
+    private int mMappedWindowSize = MappedPcmFileWriter.DEFAULT_WINDOW_SIZE;
+
+    public SaveConfig() {
+    }
+
+    public SaveConfig(SaveConfig other) {
+        mWriteMode = other.mWriteMode;
+        mStreamingBufferSize = other.mStreamingBufferSize;
+        mStreamingBufferCount = other.mStreamingBufferCount;
+        mStreamingFlushThreshold = other.mStreamingFlushThreshold;
+        mFileFormat = other.mFileFormat;
+        mSampleRate = other.mSampleRate;
+        mChannelCount = other.mChannelCount;
+        mBitsPerSample = other.mBitsPerSample;
+        mFloatSamples = other.mFloatSamples;
+        mSegmentSize = other.mSegmentSize;
+        mSegmentMillis = other.mSegmentMillis;
+        mCodec = other.mCodec;
+        mMappedWindowSize = other.mMappedWindowSize;
+    }
+
+    /**
+     * @param mode {@link SaveVoiceUtil#WRITE_MODE_BUFFERED}, {@link SaveVoiceUtil#WRITE_MODE_STREAMING}
+     *             或 {@link SaveVoiceUtil#WRITE_MODE_MAPPED}. 内存映射模式总是保存为WAV;
+     *             其他模式下WAV和分段文件总是边录边写.
+     */
+    public void setWriteMode(int mode) {
+        mWriteMode = mode;
+    }
+
+    public int getWriteMode() {
+        return mWriteMode;
+    }
+
+    /**
+     * 设置边录边写模式的缓存参数
+     * @param bufferSize 每个direct buffer的大小
+     * @param bufferCount direct buffer个数, 内存占用为 bufferSize * bufferCount
+     * @param flushThreshold 缓存数据达到该值时写入文件
+     */
+    public void setStreamingParams(int bufferSize, int bufferCount, int flushThreshold) {
+        mStreamingBufferSize = bufferSize;
+        mStreamingBufferCount = bufferCount;
+        mStreamingFlushThreshold = flushThreshold;
+    }
+
+    public int getStreamingBufferSize() {
+        return mStreamingBufferSize;
+    }
+
+    public int getStreamingBufferCount() {
+        return mStreamingBufferCount;
+    }
+
+    public int getStreamingFlushThreshold() {
+        return mStreamingFlushThreshold;
+    }
+
+    /**
+     * @param format {@link #FILE_FORMAT_PCM} 或 {@link #FILE_FORMAT_WAV}
+     */
+    public void setFileFormat(int format) {
+        mFileFormat = format;
+    }
+
+    public int getFileFormat() {
+        return mFileFormat;
+    }
+
+    /**
+     * @return 当前文件格式对应的后缀, eg: ".pcm"
+     */
+    public String getFileSuffix() {
+        if (AudioCodecs.get(mCodec) != null) {
+            return EncodedAudioFormat.FILE_SUFFIX;
+        }
+        if (mWriteMode == SaveVoiceUtil.WRITE_MODE_MAPPED) {
+            return ".wav";
+        }
+        return mFileFormat == FILE_FORMAT_WAV ? ".wav" : ".pcm";
+    }
+
+    /**
+     * 设置内存映射模式下每次映射的窗口大小, 文件也按该大小预分配.
+     * 默认 {@link MappedPcmFileWriter#DEFAULT_WINDOW_SIZE}; 旧窗口要等GC才解除映射, 不建议设得太小.
+     */
+    public void setMappedWindowSize(int windowSize) {
+        mMappedWindowSize = windowSize;
+    }
+
+    public int getMappedWindowSize() {
+        return mMappedWindowSize;
+    }
+
+    /**
+     * 设置编码器, 设置后文件按 {@link EncodedAudioFormat} 分帧保存, 文件格式设置不再生效.
+     * 只支持16位PCM.
+     * @param codec {@link AudioCodecs#CODEC_NONE} 等
+     */
+    public void setCodec(int codec) {
+        mCodec = codec;
+    }
+
+    public int getCodec() {
+        return mCodec;
+    }
+
+    /**
+     * 设置音频格式, 用于WAV文件头和按时长分段.
+     */
+    public void setAudioParams(int sampleRate, int channelCount, int bitsPerSample, boolean floatSamples) {
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mBitsPerSample = bitsPerSample;
+        mFloatSamples = floatSamples;
+    }
+
+    /**
+     * 使用录音参数设置音频格式
+     */
+    public void setAudioParams(VoiceRecord record) {
+        setAudioParams(record.getParamValue(VoiceRecord.PARAM_KEY_SET_SAMPLE_RATE), record.getChannelCount(),
+                record.getBitsPerSample(), record.isFloatEncoding());
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public int getBitsPerSample() {
+        return mBitsPerSample;
+    }
+
+    public boolean isFloatSamples() {
+        return mFloatSamples;
+    }
+
+    /**
+     * @return 一个采样帧(所有通道)的字节数
+     */
+    public int getFrameSize() {
+        return Math.max(1, mChannelCount * mBitsPerSample / 8);
+    }
+
+    /**
+     * 设置分段条件, 任一条件满足即切换到下一个文件; 都为0时不分段.
+     * @param segmentSize 每段最大字节数(不含文件头)
+     * @param segmentMillis 每段最大时长
+     */
+    public void setSegment(long segmentSize, long segmentMillis) {
+        mSegmentSize = segmentSize;
+        mSegmentMillis = segmentMillis;
+    }
+
+    /**
+     * @return 每段音频数据的字节数, 按采样帧对齐; 不分段时返回0
+     */
+    public long getSegmentBytes() {
+        long bytes = 0;
+        if (mSegmentSize > 0) {
+            bytes = mSegmentSize;
+        }
+        if (mSegmentMillis > 0) {
+            long durationBytes = mSegmentMillis * mSampleRate / 1000 * getFrameSize();
+            bytes = bytes > 0 ? Math.min(bytes, durationBytes) : durationBytes;
+        }
+        if (bytes <= 0) {
+            return 0;
+        }
+        int frameSize = getFrameSize();
+        return Math.max(frameSize, bytes / frameSize * frameSize);
+    }
+
+    /**
+     * 按当前参数打开文件
+     */
+    PcmFileWriter openWriter(File file) throws IOException {
+        if (getSegmentBytes() > 0) {
+            return new RollingPcmFileWriter(file, this);
+        }
+        return openSegmentWriter(file);
+    }
+
+    /**
+     * 打开单个文件, 不考虑分段
+     */
+    PcmFileWriter openSegmentWriter(File file) throws IOException {
+        AudioCodec codec = AudioCodecs.get(mCodec);
+        if (codec != null) {
+            return new EncodingPcmFileWriter(file, this, codec);
+        }
+        if (mWriteMode == SaveVoiceUtil.WRITE_MODE_MAPPED) {
+            return new MappedPcmFileWriter(file, this);
+        }
+        if (mFileFormat == FILE_FORMAT_WAV) {
+            return new WavFileWriter(file, this);
+        }
+        if (mWriteMode == SaveVoiceUtil.WRITE_MODE_BUFFERED) {
+            return new BufferedPcmFileWriter(file);
+        }
+        return new StreamingPcmFileWriter(file, mStreamingBufferSize, mStreamingBufferCount, mStreamingFlushThreshold);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.util;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link SaveSession} 的flush/sync/close结果, 由存储线程完成. 不支持取消.
+ */
+public class SaveFuture implements Future<Void> {
+    private final CountDownLatch mDone = new CountDownLatch(1);
+    private volatile IOException mFailure;
+    // 由会话在提交时设置
+    SaveSession mSession;
+    /** 请求时已提交的写入序号, 存储线程写完该序号后才能完成 */
+    long mTargetSeq;
+    /** true: 需要落盘; false: 只需写入文件 */
+    boolean mSync;
+
+    void complete() {
+        mDone.countDown();
+    }
+
+    void fail(IOException e) {
+        mFailure = e;
+        mDone.countDown();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return mDone.getCount() == 0;
+    }
+
+    /**
+     * @return 失败原因, 未完成或成功时返回null
+     */
+    public IOException getFailure() {
+        return mFailure;
+    }
+
+    @Override
+    public Void get() throws InterruptedException, ExecutionException {
+        mDone.await();
+        return result();
+    }
+
+    @Override
+    public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!mDone.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return result();
+    }
+
+    private Void result() throws ExecutionException {
+        if (mFailure != null) {
+            throw new ExecutionException(mFailure);
+        }
+        return null;
+    }
+
+    /**
+     * 同 {@link #get()}, 失败时直接抛出IOException
+     */
+    public void await() throws IOException, InterruptedException {
+        mDone.await();
+        if (mFailure != null) {
+            throw mFailure;
+        }
+    }
+}
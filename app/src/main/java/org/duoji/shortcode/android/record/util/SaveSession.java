@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.util;
+
+import android.os.Handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * 一个录音文件的写入会话, 由 {@link SaveVoiceUtil#createFile(String)} 创建.
+ * 每个会话有独立的文件和写入状态, 固定在一个存储线程上按提交顺序写入; 各方法可在任意线程调用.
+ * {@link #flush()} 和 {@link #sync()} 返回的future在之前提交的数据写入文件/落盘后完成,
+ * 存储线程处理时已满足条件的多个sync请求合并为一次fsync.
+ * 打开或写入文件失败后数据已不完整, 之后的flush/sync和close都以第一次的异常失败.
+ */
+public class SaveSession {
+    private final SaveVoiceUtil mOwner;
+    private final SaveVoiceUtil.WriterThread mWriterThread;
+    private final Handler mHandler;
+    private final File mFile;
+    private final SaveConfig mConfig;
+    private volatile boolean mClosed = false;
+    /** 只在存储线程访问 */
+    private PcmFileWriter mWriter;
+    /** 第一次打开或写入失败的异常, 只在存储线程访问 */
+    private IOException mFailure;
+    /** 已入队的写入消息序号, 递增和入队在同一把锁内完成, 保证与消息顺序一致 */
+    private long mSubmitSeq = 0;
+    /** 存储线程已处理的写入消息序号 */
+    private volatile long mWrittenSeq = 0;
+    /** 等待中的flush/sync请求 */
+    private final ArrayList<SaveFuture> mPendingBarriers = new ArrayList<SaveFuture>();
+
+    SaveSession(SaveVoiceUtil owner, SaveVoiceUtil.WriterThread writerThread, File file, SaveConfig config) {
+        mOwner = owner;
+        mWriterThread = writerThread;
+        mHandler = writerThread.mHandler;
+        mFile = file;
+        mConfig = config;
+    }
+
+    void open() {
+        mHandler.sendMessage(mHandler.obtainMessage(SaveVoiceUtil.MSG_OPEN, this));
+    }
+
+    /**
+     * @return 录音文件, 分段时为分段文件名的模板
+     */
+    public File getFile() {
+        return mFile;
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    public void writeFile(byte[] data) {
+        if(data == null || data.length <= 0) {
+            return;
+        }
+        writeFile(data, 0, data.length);
+    }
+
+    /**
+     * 写入data中的一段数据, 数据会拷贝到池中的数据块, 返回后data可以复用.
+     * @param data 录音数据
+     * @param offset 起始位置
+     * @param length 数据长度
+     */
+    public void writeFile(byte[] data, int offset, int length) {
+        if(data == null || length <= 0 || mClosed) {
+            return;
+        }
+        PcmChunk head = null;
+        PcmChunk tail = null;
+        while (length > 0) {
+            PcmChunk chunk = mOwner.obtainChunk();
+            int count = Math.min(length, chunk.capacity());
+            System.arraycopy(data, offset, chunk.getData(), 0, count);
+            chunk.setLength(count);
+            offset += count;
+            length -= count;
+            if (head == null) {
+                head = chunk;
+            } else {
+                tail.mNext = chunk;
+            }
+            tail = chunk;
+        }
+        submit(head);
+    }
+
+    /**
+     * 提交一个由 {@link SaveVoiceUtil#obtainChunk()} 借出的数据块, 提交后调用者不能再访问该数据块.
+     */
+    public void writeChunk(PcmChunk chunk) {
+        if(chunk == null) {
+            return;
+        }
+        chunk.mNext = null;
+        submit(chunk);
+    }
+
+    /**
+     * 批量提交数据块, 按数组顺序写入, 只占用一条消息.
+     * @param chunks 数据块数组, 返回后数组本身可以复用
+     * @param offset 第一个数据块下标
+     * @param count 数据块个数
+     */
+    public void writeChunks(PcmChunk[] chunks, int offset, int count) {
+        if(chunks == null || count <= 0) {
+            return;
+        }
+        for (int i = offset; i < offset + count - 1; i++) {
+            chunks[i].mNext = chunks[i + 1];
+        }
+        chunks[offset + count - 1].mNext = null;
+        submit(chunks[offset]);
+    }
+
+    private void submit(PcmChunk head) {
+        if (mClosed) {
+            recycle(head);
+            return;
+        }
+        head.mSession = this;
+        synchronized (this) {
+            mSubmitSeq++;
+            mHandler.sendMessage(mHandler.obtainMessage(SaveVoiceUtil.MSG_WRITE, head));
+        }
+    }
+
+    /**
+     * 把之前提交的数据写入文件, 不保证落盘
+     * @return 完成后数据对其他读取者可见
+     */
+    public SaveFuture flush() {
+        return barrier(false);
+    }
+
+    /**
+     * 把之前提交的数据写入文件并落盘
+     * @return 完成后数据在掉电后也不会丢失
+     */
+    public SaveFuture sync() {
+        return barrier(true);
+    }
+
+    private SaveFuture barrier(boolean sync) {
+        SaveFuture future = new SaveFuture();
+        future.mSession = this;
+        future.mSync = sync;
+        synchronized (this) {
+            future.mTargetSeq = mSubmitSeq;
+            mPendingBarriers.add(future);
+            mHandler.sendMessage(mHandler.obtainMessage(SaveVoiceUtil.MSG_SYNC, future));
+        }
+        return future;
+    }
+
+    /**
+     * 关闭会话, 之前提交的数据都会写入文件, 之后提交的数据被丢弃.
+     * @return 文件关闭后完成; 需要落盘时先调用 {@link #sync()}
+     */
+    public SaveFuture close() {
+        SaveFuture future = new SaveFuture();
+        future.mSession = this;
+        mHandler.sendMessage(mHandler.obtainMessage(SaveVoiceUtil.MSG_CLOSE, future));
+        return future;
+    }
+
+    private void recycle(PcmChunk chunk) {
+        while (chunk != null) {
+            PcmChunk next = chunk.mNext;
+            mOwner.recycleChunk(chunk);
+            chunk = next;
+        }
+    }
+
+    void handleOpen() {
+        try {
+            mWriter = mConfig.openWriter(mFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+            mFailure = e;
+        }
+    }
+
+    void handleWrite(PcmChunk chunk) {
+        PcmChunk current = chunk;
+        // 写入失败后不再写入, 避免文件中间缺少数据
+        while (current != null && mWriter != null && mFailure == null) {
+            try {
+                mWriter.write(current.getData(), 0, current.getLength());
+            } catch (IOException e) {
+                e.printStackTrace();
+                mFailure = e;
+            }
+            current = current.mNext;
+        }
+        recycle(chunk);
+        mWrittenSeq++;
+    }
+
+    /**
+     * 处理所有已满足写入条件的flush/sync请求, 只要其中有sync就只做一次fsync
+     */
+    void handleBarrier() {
+        ArrayList<SaveFuture> ready = new ArrayList<SaveFuture>();
+        boolean sync = false;
+        synchronized (this) {
+            Iterator<SaveFuture> iterator = mPendingBarriers.iterator();
+            while (iterator.hasNext()) {
+                SaveFuture future = iterator.next();
+                if (future.mTargetSeq <= mWrittenSeq) {
+                    iterator.remove();
+                    ready.add(future);
+                    sync |= future.mSync;
+                }
+            }
+        }
+        if (ready.isEmpty()) {
+            // 已经被之前的请求一并处理
+            return;
+        }
+        // 已有数据丢失时, 落盘也不能保证完整
+        IOException failure = mFailure;
+        if (failure == null && mWriter == null) {
+            failure = new IOException(mClosed ? "session closed" : "file not open");
+        } else if (failure == null) {
+            try {
+                if (sync) {
+                    mWriter.sync();
+                } else {
+                    mWriter.flush();
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        for (SaveFuture future : ready) {
+            if (failure == null) {
+                future.complete();
+            } else {
+                future.fail(failure);
+            }
+        }
+    }
+
+    void handleClose(SaveFuture future) {
+        if (mClosed) {
+            future.complete();
+            return;
+        }
+        mClosed = true;
+        IOException failure = null;
+        if(mWriter != null) {
+            try {
+                mWriter.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+                failure = e;
+            }
+            mWriter = null;
+        }
+        mOwner.releaseWriterThread(mWriterThread);
+        if (mFailure != null) {
+            failure = mFailure;
+        }
+        if (failure == null) {
+            future.complete();
+        } else {
+            future.fail(failure);
+        }
+    }
+}
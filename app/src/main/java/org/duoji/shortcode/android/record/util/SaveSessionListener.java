@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.util;
+
+import org.duoji.shortcode.android.record.VoiceRecord;
+
+/**
+ * 把录音数据写入一个 {@link SaveSession} 的listener, 录音结束时关闭会话.
+ * eg: 触发后保存包含前导音的关键词录音
+ * record.startPreRollStream(new SaveSessionListener(SaveVoiceUtil.getInstance().createFile("keywords")));
+ */
+public class SaveSessionListener implements VoiceRecord.RecordListener {
+    private final SaveSession mSession;
+
+    public SaveSessionListener(SaveSession session) {
+        mSession = session;
+    }
+
+    public SaveSession getSession() {
+        return mSession;
+    }
+
+    @Override
+    public void onRecordingStart() {
+    }
+
+    @Override
+    public void onRecording(byte[] data, int sizeInBytes) {
+        if (sizeInBytes > 0) {
+            mSession.writeFile(data, 0, sizeInBytes);
+        }
+    }
+
+    @Override
+    public void onRecordCreateError() {
+    }
+
+    @Override
+    public void onRecordingFailed() {
+    }
+
+    @Override
+    public void onRecordingEnd() {
+        mSession.close();
+    }
+}
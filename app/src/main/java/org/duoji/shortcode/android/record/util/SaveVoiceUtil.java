@@ -16,36 +16,82 @@
 
 package org.duoji.shortcode.android.record.util;
 
-import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
 import android.text.TextUtils;
 
-import java.io.ByteArrayOutputStream;
+import org.duoji.shortcode.android.record.VoiceRecord;
+
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 
 public class SaveVoiceUtil {
     private static final String TAG = "SaveVoiceUtil";
     private static SaveVoiceUtil mInstance;
 
-    private HandlerThread mSaveThread;
-    private Handler mSaveHandle;
+    /**
+     * 整段录音缓存在内存中, closeFile时一次写入
+     */
+    public static final int WRITE_MODE_BUFFERED = 0;
+    /**
+     * 边录边写, 内存占用固定
+     */
+    public static final int WRITE_MODE_STREAMING = 1;
+    /**
+     * 内存映射写WAV, 进程崩溃后可以恢复已提交的数据
+     * @see #recoverFiles()
+     */
+    public static final int WRITE_MODE_MAPPED = 2;
+
+    static final int MSG_OPEN = 0x01;
+    static final int MSG_WRITE = 0x02;
+    static final int MSG_CLOSE = 0x03;
+    static final int MSG_RECOVER = 0x04;
+    static final int MSG_SYNC = 0x05;
+
+    /**
+     * 存储线程池, 每个会话固定在其中一个线程上写文件
+     */
+    private final List<WriterThread> mWriterThreads = new ArrayList<WriterThread>();
 
     private static String mRecordDir = "duoji/record";
-    private ByteArrayOutputStream mByteBuffer;
-    private FileOutputStream mOutputStream;
+    private final PcmChunkPool mChunkPool = new PcmChunkPool(4096, 64);
+    /**
+     * 所有 {@link StreamingPcmFileWriter} 共用的direct buffer
+     */
+    private static final DirectBufferPool sDirectBufferPool = new DirectBufferPool(16);
+    /**
+     * 最近一次createFile创建的会话, 供不带会话句柄的旧接口使用
+     */
+    private volatile SaveSession mDefaultSession;
+
+    /**
+     * 默认写入参数, 由 {@link #createFile(String)} 复制给新会话
+     */
+    private final SaveConfig mConfig = new SaveConfig();
 
     private SaveVoiceUtil() {
-        mByteBuffer = new ByteArrayOutputStream(5 * 1024);
-        mSaveThread = new HandlerThread("save_voice");
-        mSaveThread.start();
-        mSaveHandle = new Handler(mSaveThread.getLooper(),new SaveVoiceCallback());
+        setWriterThreadCount(2);
+    }
+
+    /**
+     * 存储线程及其上的会话数
+     */
+    static class WriterThread {
+        final HandlerThread mThread;
+        final Handler mHandler;
+        int mSessionCount = 0;
+
+        WriterThread(String name, Handler.Callback callback) {
+            mThread = new HandlerThread(name);
+            mThread.start();
+            mHandler = new Handler(mThread.getLooper(), callback);
+        }
     }
 
     private boolean checkAndCreateDir(String strFolder) {
@@ -106,29 +152,234 @@ public class SaveVoiceUtil {
     }
 
     /**
-     * 设置文件名前缀, 文件默认保存路径为/sdcard/${RECORD_DIR}.
+     * 获取存储目录
+     * @return 外部存储下的录音目录, eg: /sdcard/duoji/record
+     */
+    public File getSaveDir() {
+        return new File(Environment.getExternalStorageDirectory(), mRecordDir);
+    }
+
+    /**
+     * 设置写文件模式, 对之后createFile创建的文件生效. 默认为 {@link #WRITE_MODE_STREAMING}.
+     * @param mode {@link #WRITE_MODE_BUFFERED}, {@link #WRITE_MODE_STREAMING} 或 {@link #WRITE_MODE_MAPPED}
+     */
+    public void setWriteMode(int mode) {
+        synchronized (mConfig) {
+            mConfig.setWriteMode(mode);
+        }
+    }
+
+    /**
+     * 设置边录边写模式的缓存参数, 对之后createFile创建的文件生效.
+     * @param bufferSize 每个direct buffer的大小
+     * @param bufferCount direct buffer个数, 内存占用为 bufferSize * bufferCount
+     * @param flushThreshold 缓存数据达到该值时写入文件
+     */
+    public void setStreamingParams(int bufferSize, int bufferCount, int flushThreshold) {
+        synchronized (mConfig) {
+            mConfig.setStreamingParams(bufferSize, bufferCount, flushThreshold);
+        }
+    }
+
+    /**
+     * 设置默认文件格式, 对之后createFile创建的文件生效. 默认为 {@link SaveConfig#FILE_FORMAT_PCM}.
+     * @param format {@link SaveConfig#FILE_FORMAT_PCM} 或 {@link SaveConfig#FILE_FORMAT_WAV}
+     */
+    public void setFileFormat(int format) {
+        synchronized (mConfig) {
+            mConfig.setFileFormat(format);
+        }
+    }
+
+    /**
+     * 设置默认编码器, 对之后createFile创建的文件生效. 默认不编码.
+     * @see SaveConfig#setCodec(int)
+     */
+    public void setCodec(int codec) {
+        synchronized (mConfig) {
+            mConfig.setCodec(codec);
+        }
+    }
+
+    /**
+     * 使用录音参数作为默认音频格式, 用于WAV文件头和按时长分段.
+     */
+    public void setAudioParams(VoiceRecord record) {
+        synchronized (mConfig) {
+            mConfig.setAudioParams(record);
+        }
+    }
+
+    /**
+     * 设置默认分段条件, 对之后createFile创建的文件生效.
+     * @see SaveConfig#setSegment(long, long)
+     */
+    public void setSegment(long segmentSize, long segmentMillis) {
+        synchronized (mConfig) {
+            mConfig.setSegment(segmentSize, segmentMillis);
+        }
+    }
+
+    /**
+     * 设置存储线程数, 只能增加. 会话按当前负载分配到各线程, 同一会话的数据始终由同一线程按序写入.
+     * 默认为2.
+     * @param count 线程数
+     */
+    public synchronized void setWriterThreadCount(int count) {
+        while (mWriterThreads.size() < count) {
+            mWriterThreads.add(new WriterThread("save_voice_" + mWriterThreads.size(), new SaveVoiceCallback()));
+        }
+    }
+
+    private synchronized WriterThread acquireWriterThread() {
+        WriterThread idlest = mWriterThreads.get(0);
+        for (WriterThread thread : mWriterThreads) {
+            if (thread.mSessionCount < idlest.mSessionCount) {
+                idlest = thread;
+            }
+        }
+        idlest.mSessionCount++;
+        return idlest;
+    }
+
+    synchronized void releaseWriterThread(WriterThread thread) {
+        thread.mSessionCount--;
+    }
+
+    void recycleChunk(PcmChunk chunk) {
+        mChunkPool.recycle(chunk);
+    }
+
+    /**
+     * 创建一个录音文件会话, 文件默认保存路径为/sdcard/${RECORD_DIR}.
+     * 多个会话可以同时写入, 互不影响. 返回的会话同时成为 {@link #writeFile(byte[])} 等旧接口的默认会话.
      * @param prefix 文件名前缀 eg: keywords -> 2018-7-6-11-27-53_keywords.pcm
+     *               分段时为 2018-7-6-11-27-53_keywords_0.pcm, 2018-7-6-11-27-53_keywords_1.pcm ...
+     * @return 会话句柄, 使用完必须调用 {@link SaveSession#close()} 或 {@link #closeFile()}
+     */
+    public SaveSession createFile(String prefix) {
+        SaveConfig config;
+        synchronized (mConfig) {
+            config = new SaveConfig(mConfig);
+        }
+        return createFile(prefix, config);
+    }
+
+    /**
+     * 使用指定参数创建录音文件会话
+     * @param prefix 文件名前缀
+     * @param config 写入参数, 会复制一份, 之后修改不影响该会话
+     * @return 会话句柄
+     * @see #createFile(String)
      */
-    public void createFile(String prefix) {
-        Message msg = mSaveHandle.obtainMessage(0x01);
-        msg.obj = prefix;
-        mSaveHandle.sendMessage(msg);
+    public SaveSession createFile(String prefix, SaveConfig config) {
+        config = new SaveConfig(config);
+        File file = new File(getSaveDir(), getCurrentTime() + "_" + prefix + config.getFileSuffix());
+        SaveSession session = new SaveSession(this, acquireWriterThread(), file, config);
+        session.open();
+        mDefaultSession = session;
+        return session;
     }
 
+    /**
+     * 写入默认会话
+     * @see SaveSession#writeFile(byte[])
+     */
     public void writeFile(byte[] data) {
-        if(data == null || data.length <= 0) {
-            return;
+        SaveSession session = mDefaultSession;
+        if(session != null) {
+            session.writeFile(data);
+        }
+    }
+
+    /**
+     * 写入默认会话
+     * @see SaveSession#writeFile(byte[], int, int)
+     */
+    public void writeFile(byte[] data, int offset, int length) {
+        SaveSession session = mDefaultSession;
+        if(session != null) {
+            session.writeFile(data, offset, length);
+        }
+    }
+
+    /**
+     * 从池中借出一个数据块, 填充后通过 {@link #writeChunk(PcmChunk)} 或 {@link SaveSession#writeChunk(PcmChunk)} 提交.
+     * @return 容量为 {@link #getChunkSize()} 的数据块
+     */
+    public PcmChunk obtainChunk() {
+        return mChunkPool.obtain();
+    }
+
+    static DirectBufferPool getDirectBufferPool() {
+        return sDirectBufferPool;
+    }
+
+    /**
+     * @return {@link #obtainChunk()} 返回的数据块容量
+     */
+    public int getChunkSize() {
+        return mChunkPool.getChunkSize();
+    }
+
+    /**
+     * 写入默认会话
+     * @see SaveSession#writeChunk(PcmChunk)
+     */
+    public void writeChunk(PcmChunk chunk) {
+        SaveSession session = mDefaultSession;
+        if(session != null) {
+            session.writeChunk(chunk);
+        } else {
+            mChunkPool.recycle(chunk);
         }
-        Message msg = mSaveHandle.obtainMessage(0x02);
-        Bundle bundle = new Bundle();
-        bundle.putByteArray("data", data);
-        msg.setData(bundle);
-        mSaveHandle.sendMessage(msg);
     }
 
-    public void closeFile() {
-        Message msg = mSaveHandle.obtainMessage(0x03);
-        mSaveHandle.sendMessageDelayed(msg, 500);
+    /**
+     * 写入默认会话
+     * @see SaveSession#writeChunks(PcmChunk[], int, int)
+     */
+    public void writeChunks(PcmChunk[] chunks, int offset, int count) {
+        SaveSession session = mDefaultSession;
+        if(session != null) {
+            session.writeChunks(chunks, offset, count);
+        } else {
+            for (int i = offset; i < offset + count; i++) {
+                mChunkPool.recycle(chunks[i]);
+            }
+        }
+    }
+
+    /**
+     * 把默认会话之前提交的数据落盘
+     * @return 落盘后完成, 没有默认会话时返回null
+     * @see SaveSession#sync()
+     */
+    public SaveFuture syncFile() {
+        SaveSession session = mDefaultSession;
+        return session != null ? session.sync() : null;
+    }
+
+    /**
+     * 关闭默认会话, 之前提交的数据都会写入文件
+     * @return 文件关闭后完成, 没有默认会话时返回null
+     * @see SaveSession#close()
+     */
+    public SaveFuture closeFile() {
+        SaveSession session = mDefaultSession;
+        return session != null ? session.close() : null;
+    }
+
+    /**
+     * 在存储线程中扫描存储目录, 把内存映射模式下未正常关闭的文件截断到已提交长度.
+     * 应在进程启动后、创建内存映射模式的会话之前调用.
+     */
+    public void recoverFiles() {
+        Handler handler;
+        synchronized (this) {
+            handler = mWriterThreads.get(0).mHandler;
+        }
+        handler.sendMessage(handler.obtainMessage(MSG_RECOVER, getSaveDir()));
     }
 
     class SaveVoiceCallback implements Handler.Callback {
@@ -136,36 +387,34 @@ public class SaveVoiceUtil {
         @Override
         public boolean handleMessage(Message msg) {
             switch (msg.what) {
-                case 0x01:
-                    String path = Environment.getExternalStorageDirectory().getAbsolutePath() + "/" + mRecordDir;
-                    if(checkAndCreateDir(path)) {
-                        try {
-                            mOutputStream = new FileOutputStream(path + "/" + getCurrentTime() + "_" + (String)msg.obj + ".pcm");
-                            mByteBuffer.reset();
-                        } catch (FileNotFoundException e) {
-                            e.printStackTrace();
-                        }
+                case MSG_OPEN:
+                    SaveSession session = (SaveSession) msg.obj;
+                    if(checkAndCreateDir(session.getFile().getParent())) {
+                        session.handleOpen();
                     }
                     break;
-                case 0x02:
-                    Bundle bundle = msg.getData();
-                    byte[] data = bundle.getByteArray("data");
-                    try {
-                        mByteBuffer.write(data);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
+                case MSG_WRITE:
+                    PcmChunk chunk = (PcmChunk) msg.obj;
+                    chunk.mSession.handleWrite(chunk);
+                    break;
+                case MSG_CLOSE:
+                    SaveFuture closeFuture = (SaveFuture) msg.obj;
+                    closeFuture.mSession.handleClose(closeFuture);
+                    break;
+                case MSG_SYNC:
+                    ((SaveFuture) msg.obj).mSession.handleBarrier();
                     break;
-                case 0x03:
-                    if(mOutputStream != null) {
-                        try {
-                            mOutputStream.write(mByteBuffer.toByteArray());
-                            mByteBuffer.reset();
-                            mOutputStream.close();
-                            mOutputStream = null;
-                        } catch (IOException e) {
-                            e.printStackTrace();
+                case MSG_RECOVER:
+                    File[] files = ((File) msg.obj).listFiles();
+                    if(files != null) {
+                        for (File file : files) {
+                            if(file.getName().endsWith(MappedPcmFileWriter.PART_SUFFIX)) {
+                                try {
+                                    MappedPcmFileWriter.recover(file);
+                                } catch (IOException e) {
+                                    e.printStackTrace();
+                                }
+                            }
                         }
                     }
                     break;
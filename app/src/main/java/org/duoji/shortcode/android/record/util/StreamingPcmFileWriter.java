@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 边录边写: 数据先拷入固定数量的direct buffer, 累积到flush阈值或buffer用完时,
+ * 通过 FileChannel 的 gathering write 一次写入文件. 内存占用固定为 bufferSize * bufferCount,
+ * 与录音时长无关, 关闭时最多只需写出一个阈值的数据. buffer从 {@link DirectBufferPool} 借出, 关闭时归还.
+ */
+public class StreamingPcmFileWriter implements PcmFileWriter {
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+    public static final int DEFAULT_BUFFER_COUNT = 4;
+    public static final int DEFAULT_FLUSH_THRESHOLD = 32 * 1024;
+
+    private final FileOutputStream mOutputStream;
+    private final FileChannel mChannel;
+    private final ByteBuffer[] mBuffers;
+    private final DirectBufferPool mPool;
+    private final int mFlushThreshold;
+    /** 当前正在填充的buffer下标, 之前的buffer都已写满 */
+    private int mCurrent = 0;
+    private int mPendingBytes = 0;
+    private long mLength = 0;
+    private boolean mClosed = false;
+
+    public StreamingPcmFileWriter(File file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT, DEFAULT_FLUSH_THRESHOLD);
+    }
+
+    /**
+     * @param file 目标文件
+     * @param bufferSize 每个direct buffer的大小
+     * @param bufferCount direct buffer个数
+     * @param flushThreshold 缓存数据达到该值时写入文件, 不超过 bufferSize * bufferCount
+     */
+    public StreamingPcmFileWriter(File file, int bufferSize, int bufferCount, int flushThreshold) throws IOException {
+        this(file, bufferSize, bufferCount, flushThreshold, SaveVoiceUtil.getDirectBufferPool());
+    }
+
+    /**
+     * @param pool direct buffer的来源, 为null时自行分配
+     */
+    public StreamingPcmFileWriter(File file, int bufferSize, int bufferCount, int flushThreshold,
+                                  DirectBufferPool pool) throws IOException {
+        if (bufferSize <= 0 || bufferCount <= 0 || flushThreshold <= 0) {
+            throw new IllegalArgumentException("bufferSize:" + bufferSize + ", bufferCount:" + bufferCount
+                    + ", flushThreshold:" + flushThreshold);
+        }
+        mFlushThreshold = (int) Math.min((long) flushThreshold, (long) bufferSize * bufferCount);
+        mOutputStream = new FileOutputStream(file);
+        mChannel = mOutputStream.getChannel();
+        mPool = pool;
+        mBuffers = new ByteBuffer[bufferCount];
+        for (int i = 0; i < bufferCount; i++) {
+            mBuffers[i] = pool != null ? pool.obtain(bufferSize) : ByteBuffer.allocateDirect(bufferSize);
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            ByteBuffer buffer = mBuffers[mCurrent];
+            int count = Math.min(buffer.remaining(), length);
+            buffer.put(data, offset, count);
+            offset += count;
+            length -= count;
+            mPendingBytes += count;
+            if (mPendingBytes >= mFlushThreshold) {
+                flush();
+            } else if (!buffer.hasRemaining()) {
+                mCurrent++;
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (mPendingBytes == 0) {
+            return;
+        }
+        int last = mBuffers[mCurrent].position() > 0 ? mCurrent : mCurrent - 1;
+        for (int i = 0; i <= last; i++) {
+            mBuffers[i].flip();
+        }
+        long remaining = mPendingBytes;
+        while (remaining > 0) {
+            remaining -= mChannel.write(mBuffers, 0, last + 1);
+        }
+        for (int i = 0; i <= last; i++) {
+            mBuffers[i].clear();
+        }
+        mLength += mPendingBytes;
+        mPendingBytes = 0;
+        mCurrent = 0;
+    }
+
+    @Override
+    public void sync() throws IOException {
+        flush();
+        mChannel.force(false);
+    }
+
+    /**
+     * @return 文件的channel, 用于在 {@link #flush()} 之后按位置修改已写入的数据
+     */
+    FileChannel getChannel() {
+        return mChannel;
+    }
+
+    /**
+     * @return 已写入(含缓存中)的总字节数
+     */
+    public long getLength() {
+        return mLength + mPendingBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        try {
+            flush();
+        } finally {
+            mOutputStream.close();
+            if (mPool != null) {
+                for (int i = 0; i < mBuffers.length; i++) {
+                    mPool.recycle(mBuffers[i]);
+                    mBuffers[i] = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.util;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 边录边写WAV文件: 先写入长度为0的文件头, 音频数据按 {@link StreamingPcmFileWriter} 方式写入,
+ * {@link #updateHeader()} 和关闭时原地修改文件头中的长度.
+ */
+public class WavFileWriter implements PcmFileWriter {
+    private final StreamingPcmFileWriter mWriter;
+
+    public WavFileWriter(File file, SaveConfig config) throws IOException {
+        mWriter = new StreamingPcmFileWriter(file, config.getStreamingBufferSize(), config.getStreamingBufferCount(),
+                config.getStreamingFlushThreshold());
+        byte[] header = WavHeader.create(config.getSampleRate(), config.getChannelCount(), config.getBitsPerSample(),
+                config.isFloatSamples(), 0);
+        mWriter.write(header, 0, header.length);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        mWriter.write(data, offset, length);
+    }
+
+    /**
+     * @return 已写入的音频数据长度, 不含文件头
+     */
+    public long getDataLength() {
+        return mWriter.getLength() - WavHeader.HEADER_SIZE;
+    }
+
+    /**
+     * 写出缓存数据并修改文件头, 之后文件即为完整可读的WAV.
+     */
+    public void updateHeader() throws IOException {
+        mWriter.flush();
+        WavHeader.patchLength(mWriter.getChannel(), getDataLength());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        updateHeader();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        updateHeader();
+        mWriter.sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            updateHeader();
+        } finally {
+            mWriter.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.record.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 标准44字节WAV文件头的生成和原地修改.
+ */
+public class WavHeader {
+    public static final int HEADER_SIZE = 44;
+    private static final int RIFF_SIZE_OFFSET = 4;
+    private static final int DATA_SIZE_OFFSET = 40;
+    private static final short FORMAT_PCM = 1;
+    private static final short FORMAT_IEEE_FLOAT = 3;
+
+    private WavHeader() {
+    }
+
+    /**
+     * 生成WAV文件头
+     * @param sampleRate 采样率
+     * @param channelCount 通道数
+     * @param bitsPerSample 采样位数
+     * @param floatSamples 是否为32位浮点采样
+     * @param dataLength 音频数据长度, 未知时可先填0, 之后用 {@link #patchLength} 修改
+     */
+    public static byte[] create(int sampleRate, int channelCount, int bitsPerSample, boolean floatSamples, long dataLength) {
+        int blockAlign = channelCount * bitsPerSample / 8;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        header.putInt(riffSize(dataLength));
+        header.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+        header.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        header.putInt(16);
+        header.putShort(floatSamples ? FORMAT_IEEE_FLOAT : FORMAT_PCM);
+        header.putShort((short) channelCount);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * blockAlign);
+        header.putShort((short) blockAlign);
+        header.putShort((short) bitsPerSample);
+        header.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        header.putInt(dataSize(dataLength));
+        return header.array();
+    }
+
+    /**
+     * 原地修改文件头中的RIFF长度和data长度, 不移动文件位置.
+     * @param channel WAV文件
+     * @param dataLength 音频数据长度
+     */
+    public static void patchLength(FileChannel channel, long dataLength) throws IOException {
+        ByteBuffer value = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        value.putInt(0, riffSize(dataLength));
+        writeFully(channel, value, RIFF_SIZE_OFFSET);
+        value.clear();
+        value.putInt(0, dataSize(dataLength));
+        writeFully(channel, value, DATA_SIZE_OFFSET);
+    }
+
+    /**
+     * 读取文件头中记录的data长度
+     * @param channel WAV文件
+     * @return data长度, 不是WAV文件时返回-1
+     */
+    public static long readDataLength(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return -1;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long position = 0;
+        while (header.hasRemaining()) {
+            int count = channel.read(header, position);
+            if (count < 0) {
+                return -1;
+            }
+            position += count;
+        }
+        if (header.get(0) != 'R' || header.get(1) != 'I' || header.get(2) != 'F' || header.get(3) != 'F'
+                || header.get(36) != 'd' || header.get(37) != 'a' || header.get(38) != 't' || header.get(39) != 'a') {
+            return -1;
+        }
+        return header.getInt(DATA_SIZE_OFFSET) & 0xffffffffL;
+    }
+
+    /**
+     * 直接修改已映射的文件头中的RIFF长度和data长度
+     * @param header 映射了文件前 {@link #HEADER_SIZE} 字节的buffer
+     * @param dataLength 音频数据长度
+     */
+    public static void patchLength(ByteBuffer header, long dataLength) {
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(DATA_SIZE_OFFSET, dataSize(dataLength));
+        header.putInt(RIFF_SIZE_OFFSET, riffSize(dataLength));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static int riffSize(long dataLength) {
+        return (int) Math.min(dataLength + HEADER_SIZE - 8, 0xffffffffL);
+    }
+
+    private static int dataSize(long dataLength) {
+        return (int) Math.min(dataLength, 0xffffffffL);
+    }
+}
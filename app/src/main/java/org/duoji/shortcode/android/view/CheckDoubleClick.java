@@ -16,35 +16,45 @@
 
 package org.duoji.shortcode.android.view;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class CheckDoubleClick {
-    private static Map<String, Long> mViewLastClickTimes = new HashMap<String, Long>();
-
     private static int mMinClickDelayTime = 1000;
 
+    private static final EventThrottle sThrottle = EventThrottle.debounce(mMinClickDelayTime);
+    /** 调用位置的key, 与调用方指定的key分开, 避免冲突 */
+    private static final EventThrottle sCallSiteThrottle = EventThrottle.debounce(mMinClickDelayTime);
+
     public static void setmMinClickDelayTime(int time) {
         mMinClickDelayTime = time;
+        sThrottle.setInterval(time);
+        sCallSiteThrottle.setInterval(time);
     }
 
     /**
      * check if the double click,support multi view. each view's key is this func be transfer in which class and which line.
+     * 需要生成调用栈, 热点路径上请使用 {@link #isFastDoubleClick(Object)} 或 {@link #isFastDoubleClick(long)}.
      * @return true:fast double click; false: not fast double click.
      */
     public static boolean isFastDoubleClick() {
         StackTraceElement stack = new Throwable().getStackTrace()[1];
-        String key = stack.getFileName() + stack.getLineNumber();
+        // 文件名的hash由String缓存, 与行号组成long key, 不再拼接字符串
+        String fileName = stack.getFileName();
+        long key = ((long) (fileName == null ? 0 : fileName.hashCode()) << 32) | (stack.getLineNumber() & 0xffffffffL);
+        return !sCallSiteThrottle.tryAcquire(key);
+    }
+
+    /**
+     * @param key 区分不同的点击对象, 如 View 或 View 的id
+     * @return true:fast double click; false: not fast double click.
+     */
+    public static boolean isFastDoubleClick(Object key) {
+        return !sThrottle.tryAcquire(key);
+    }
 
-        Long lastClickTime = mViewLastClickTimes.get(key);
-        if(lastClickTime == null) {
-            lastClickTime = 0L;
-        }
-        long currentTime = System.currentTimeMillis();
-        mViewLastClickTimes.put(key, currentTime);
-        if((currentTime - lastClickTime) > mMinClickDelayTime) {
-            return false;
-        }
-        return true;
+    /**
+     * @param key 区分不同的点击对象, 如 View 的id, 不产生装箱
+     * @return true:fast double click; false: not fast double click.
+     */
+    public static boolean isFastDoubleClick(long key) {
+        return !sThrottle.tryAcquire(key);
     }
 }
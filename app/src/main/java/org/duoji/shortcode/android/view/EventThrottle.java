@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.view;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按key限制事件频率, 支持三种模式:
+ * {@link #MODE_THROTTLE} 距上一次放行超过间隔才放行;
+ * {@link #MODE_DEBOUNCE} 距上一次事件(无论是否放行)超过间隔才放行, 即 {@link CheckDoubleClick} 的行为;
+ * {@link #MODE_TOKEN_BUCKET} 令牌桶, 最多连续放行 burst 次, 之后每个间隔补充一次.
+ * 每个key的状态只有一个long, 保存在预分配的开放寻址表中, 调用过程不分配内存.
+ * key数量超过上限时先淘汰已过期(状态等同于不存在)的key, 没有则淘汰最久未访问的key.
+ * 使用 System.nanoTime, 不受系统时间修改影响. 线程安全.
+ */
+public class EventThrottle {
+    public static final int MODE_THROTTLE = 0;
+    public static final int MODE_DEBOUNCE = 1;
+    public static final int MODE_TOKEN_BUCKET = 2;
+
+    public static final int DEFAULT_MAX_KEYS = 128;
+
+    private final int mMode;
+    private final int mBurst;
+    private long mIntervalNanos;
+
+    private final int mMaxKeys;
+    private final int mMask;
+    private final boolean[] mUsed;
+    private final long[] mKeys;
+    /** 对象key, long key的槽位为null */
+    private final Object[] mObjectKeys;
+    /**
+     * 节流和防抖为上一次放行/事件的时间;
+     * 令牌桶为理论到达时间(GCRA), 不晚于当前时间表示桶已满
+     */
+    private final long[] mValues;
+    /** 最近访问时间, 用于淘汰 */
+    private final long[] mAccessTimes;
+    private int mSize = 0;
+    private long mEvictionCount = 0;
+
+    public static EventThrottle throttle(long intervalMillis) {
+        return new EventThrottle(MODE_THROTTLE, intervalMillis, 1, DEFAULT_MAX_KEYS);
+    }
+
+    public static EventThrottle debounce(long intervalMillis) {
+        return new EventThrottle(MODE_DEBOUNCE, intervalMillis, 1, DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * @param intervalMillis 补充一次的间隔
+     * @param burst 桶容量, 空闲后最多连续放行的次数
+     */
+    public static EventThrottle tokenBucket(long intervalMillis, int burst) {
+        return new EventThrottle(MODE_TOKEN_BUCKET, intervalMillis, burst, DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * @param mode MODE_THROTTLE, MODE_DEBOUNCE or MODE_TOKEN_BUCKET
+     * @param intervalMillis 间隔
+     * @param burst 令牌桶容量, 其它模式忽略
+     * @param maxKeys 同时保存状态的key数上限
+     */
+    public EventThrottle(int mode, long intervalMillis, int burst, int maxKeys) {
+        if (mode < MODE_THROTTLE || mode > MODE_TOKEN_BUCKET || intervalMillis < 0 || burst <= 0 || maxKeys <= 0) {
+            throw new IllegalArgumentException("mode:" + mode + ", interval:" + intervalMillis
+                    + ", burst:" + burst + ", maxKeys:" + maxKeys);
+        }
+        mMode = mode;
+        mBurst = burst;
+        mIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        mMaxKeys = maxKeys;
+        // 装载率不超过1/2, 探测序列短
+        int capacity = Integer.highestOneBit(maxKeys) << 2;
+        mMask = capacity - 1;
+        mUsed = new boolean[capacity];
+        mKeys = new long[capacity];
+        mObjectKeys = new Object[capacity];
+        mValues = new long[capacity];
+        mAccessTimes = new long[capacity];
+    }
+
+    public synchronized void setInterval(long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("interval:" + intervalMillis);
+        }
+        mIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    /**
+     * @return true:放行; false:拦截
+     */
+    public boolean tryAcquire(long key) {
+        return tryAcquire(key, null, System.nanoTime());
+    }
+
+    /**
+     * @param key 按 equals/hashCode 区分, 如 View 或 Integer. 表中持有其引用直到被淘汰或 {@link #remove(Object)}
+     * @return true:放行; false:拦截
+     */
+    public boolean tryAcquire(Object key) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+        return tryAcquire(key.hashCode(), key, System.nanoTime());
+    }
+
+    public synchronized void remove(long key) {
+        int slot = find(key, null);
+        if (slot >= 0) {
+            delete(slot);
+        }
+    }
+
+    public synchronized void remove(Object key) {
+        int slot = find(key.hashCode(), key);
+        if (slot >= 0) {
+            delete(slot);
+        }
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i <= mMask; i++) {
+            mUsed[i] = false;
+            mObjectKeys[i] = null;
+        }
+        mSize = 0;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return 因超过key数上限被淘汰的未过期key数
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * @param objectKey 为null时使用long key
+     * @param now System.nanoTime()
+     */
+    synchronized boolean tryAcquire(long key, Object objectKey, long now) {
+        int slot = find(key, objectKey);
+        if (slot < 0) {
+            if (mSize >= mMaxKeys) {
+                makeRoom(now);
+            }
+            slot = insert(key, objectKey);
+            mAccessTimes[slot] = now;
+            mValues[slot] = mMode == MODE_TOKEN_BUCKET ? now + mIntervalNanos : now;
+            return true;
+        }
+        mAccessTimes[slot] = now;
+        long value = mValues[slot];
+        switch (mMode) {
+            case MODE_THROTTLE:
+                if (now - value >= mIntervalNanos) {
+                    mValues[slot] = now;
+                    return true;
+                }
+                return false;
+            case MODE_DEBOUNCE:
+                mValues[slot] = now;
+                return now - value >= mIntervalNanos;
+            default:
+                // 理论到达时间超前当前时间不超过 burst-1 个间隔, 即桶中还有令牌
+                long tat = value - now > 0 ? value : now;
+                if (tat - now <= (mBurst - 1) * mIntervalNanos) {
+                    mValues[slot] = tat + mIntervalNanos;
+                    return true;
+                }
+                return false;
+        }
+    }
+
+    private boolean isExpired(int slot, long now) {
+        if (mMode == MODE_TOKEN_BUCKET) {
+            return mValues[slot] - now <= 0;
+        }
+        return now - mValues[slot] >= mIntervalNanos;
+    }
+
+    /**
+     * 先移除所有已过期的key, 都未过期时淘汰最久未访问的一个
+     */
+    private void makeRoom(long now) {
+        for (int i = 0; i <= mMask; i++) {
+            // 删除会把后面的槽位前移, 所以同一位置需要再检查一次
+            while (mUsed[i] && isExpired(i, now)) {
+                delete(i);
+            }
+        }
+        if (mSize < mMaxKeys) {
+            return;
+        }
+        int oldest = -1;
+        for (int i = 0; i <= mMask; i++) {
+            if (mUsed[i] && (oldest < 0 || mAccessTimes[i] - mAccessTimes[oldest] < 0)) {
+                oldest = i;
+            }
+        }
+        delete(oldest);
+        mEvictionCount++;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private boolean matches(int slot, long key, Object objectKey) {
+        if (mKeys[slot] != key) {
+            return false;
+        }
+        Object stored = mObjectKeys[slot];
+        return objectKey == null ? stored == null : objectKey.equals(stored);
+    }
+
+    private int find(long key, Object objectKey) {
+        int slot = hash(key) & mMask;
+        while (mUsed[slot]) {
+            if (matches(slot, key, objectKey)) {
+                return slot;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return -1;
+    }
+
+    private int insert(long key, Object objectKey) {
+        int slot = hash(key) & mMask;
+        while (mUsed[slot]) {
+            slot = (slot + 1) & mMask;
+        }
+        mUsed[slot] = true;
+        mKeys[slot] = key;
+        mObjectKeys[slot] = objectKey;
+        mSize++;
+        return slot;
+    }
+
+    /**
+     * 线性探测的删除: 把后面探测序列中的条目前移填补空位, 不留墓碑
+     */
+    private void delete(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mMask;
+        while (mUsed[next]) {
+            int home = hash(mKeys[next]) & mMask;
+            // home 不在 (hole, next] 之间时, 该条目可以移到 hole
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                mKeys[hole] = mKeys[next];
+                mObjectKeys[hole] = mObjectKeys[next];
+                mValues[hole] = mValues[next];
+                mAccessTimes[hole] = mAccessTimes[next];
+                hole = next;
+            }
+            next = (next + 1) & mMask;
+        }
+        mUsed[hole] = false;
+        mObjectKeys[hole] = null;
+        mSize--;
+    }
+}
@@ -0,0 +1,221 @@
+package org.duoji.shortcode.android.assets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link AssetCopier}, 源为本地临时目录.
+ */
+public class AssetCopierTest {
+    private File mRoot;
+    private File mTarget;
+    private AssetCopier mCopier;
+
+    @Before
+    public void setUp() throws IOException {
+        mRoot = createTempDir("asset_source");
+        mTarget = createTempDir("asset_target");
+        mCopier = new AssetCopier(3);
+    }
+
+    @After
+    public void tearDown() {
+        mCopier.shutdown();
+        delete(mRoot);
+        delete(mTarget);
+    }
+
+    @Test
+    public void copy_copiesTreeThroughChannelAndBuffer() throws Exception {
+        Random random = new Random(7);
+        byte[][] contents = new byte[12][];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = new byte[random.nextInt(300 * 1024)];
+            random.nextBytes(contents[i]);
+            write(new File(mRoot, "models/" + (i % 3 == 0 ? "" : "sub" + (i % 3) + "/") + "file_" + i), contents[i]);
+        }
+        final AtomicInteger progress = new AtomicInteger();
+        mCopier.setBufferSize(64 * 1024);
+        mCopier.setProgressListener(new AssetCopier.ProgressListener() {
+            @Override
+            public void onProgress(AssetCopyJob job) {
+                progress.incrementAndGet();
+            }
+        });
+        final DirectorySource directory = new DirectorySource(mRoot);
+        // 非FileInputStream, 走buffer拷贝
+        AssetSource buffered = new AssetSource() {
+            @Override
+            public String[] list(String path) throws IOException {
+                return directory.list(path);
+            }
+
+            @Override
+            public InputStream open(String path) throws IOException {
+                return new BufferedInputStream(directory.open(path));
+            }
+        };
+        AssetSource[] sources = {directory, buffered};
+        for (int s = 0; s < sources.length; s++) {
+            File target = new File(mTarget, "copy" + s);
+            AssetCopyJob job = mCopier.copy(sources[s], "models", target);
+            assertTrue(job.await());
+            assertEquals(contents.length, job.getTotalFiles());
+            assertEquals(contents.length, job.getCopiedFiles());
+            assertTrue(job.getFailures().isEmpty());
+            long total = 0;
+            for (int i = 0; i < contents.length; i++) {
+                File file = new File(target, (i % 3 == 0 ? "" : "sub" + (i % 3) + "/") + "file_" + i);
+                assertArrayEquals(contents[i], read(file));
+                total += contents[i].length;
+            }
+            assertEquals(total, job.getCopiedBytes());
+        }
+        assertEquals(2 * contents.length, progress.get());
+    }
+
+    @Test
+    public void copy_reportsPerFileFailures() throws Exception {
+        write(new File(mRoot, "models/good"), new byte[]{1, 2, 3});
+        write(new File(mRoot, "models/bad"), new byte[]{4});
+        final DirectorySource directory = new DirectorySource(mRoot);
+        AssetSource source = new AssetSource() {
+            @Override
+            public String[] list(String path) throws IOException {
+                return directory.list(path);
+            }
+
+            @Override
+            public InputStream open(String path) throws IOException {
+                if (path.endsWith("bad")) {
+                    throw new IOException("broken");
+                }
+                return directory.open(path);
+            }
+        };
+        AssetCopyJob job = mCopier.copy(source, "models", mTarget);
+        assertFalse(job.await());
+        assertEquals(2, job.getFinishedFiles());
+        assertEquals(1, job.getCopiedFiles());
+        assertEquals(1, job.getFailures().size());
+        assertEquals("broken", job.getFailures().get("models/bad").getMessage());
+        assertArrayEquals(new byte[]{1, 2, 3}, read(new File(mTarget, "good")));
+        assertFalse(new File(mTarget, "bad").exists());
+    }
+
+    @Test
+    public void cancel_leavesNoPartialFiles() throws Exception {
+        byte[] data = new byte[4 * 1024 * 1024];
+        write(new File(mRoot, "models/big"), data);
+        final DirectorySource directory = new DirectorySource(mRoot);
+        final AssetCopyJob[] holder = new AssetCopyJob[1];
+        final Object lock = new Object();
+        AssetSource source = new AssetSource() {
+            @Override
+            public String[] list(String path) throws IOException {
+                return directory.list(path);
+            }
+
+            @Override
+            public InputStream open(String path) throws IOException {
+                return new BufferedInputStream(directory.open(path)) {
+                    @Override
+                    public synchronized int read(byte[] b, int off, int len) throws IOException {
+                        synchronized (lock) {
+                            // 读第一块时取消
+                            holder[0].cancel();
+                        }
+                        return super.read(b, off, len);
+                    }
+                };
+            }
+        };
+        mCopier.setBufferSize(4096);
+        synchronized (lock) {
+            holder[0] = mCopier.copy(source, "models", mTarget);
+        }
+        assertFalse(holder[0].await());
+        assertTrue(holder[0].isCancelled());
+        assertEquals(0, holder[0].getCopiedFiles());
+        assertTrue(holder[0].getCopiedBytes() < data.length);
+        String[] left = mTarget.list();
+        assertEquals("[]", Arrays.toString(left));
+    }
+
+    @Test
+    public void copyFile_updatesChecksumWithCopiedData() throws Exception {
+        byte[] data = new byte[100 * 1024 + 17];
+        new Random(3).nextBytes(data);
+        write(new File(mRoot, "model.bin"), data);
+        File file = new File(mTarget, "model.bin");
+        CRC32 crc = new CRC32();
+        // 源是FileInputStream, 有校验和时也要走buffer拷贝
+        long size = AssetCopier.copyFile(new DirectorySource(mRoot), "model.bin", file, new byte[4096], null, crc);
+        assertEquals(data.length, size);
+        assertArrayEquals(data, read(file));
+        CRC32 expected = new CRC32();
+        expected.update(data, 0, data.length);
+        assertEquals(expected.getValue(), crc.getValue());
+        assertEquals("[model.bin]", Arrays.toString(mTarget.list()));
+    }
+
+    private static File createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("can not create " + dir);
+        }
+        return dir;
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                int count = in.read(data, offset, data.length - offset);
+                if (count < 0) {
+                    throw new IOException("short read");
+                }
+                offset += count;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,82 @@
+package org.duoji.shortcode.android.assets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link AssetsManifest}.
+ */
+public class AssetsManifestTest {
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("assets", AssetsFileUtil.MANIFEST_SUFFIX);
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void writeThenRead_keepsEntries() throws IOException {
+        AssetsManifest manifest = new AssetsManifest("12:1540000000000", "models");
+        manifest.put(new AssetsManifest.Entry("a.bin", 1024, 0xffffffffL));
+        manifest.put(new AssetsManifest.Entry("sub/b.bin", 0, 0));
+        manifest.write(mFile);
+
+        AssetsManifest read = AssetsManifest.read(mFile);
+        assertNotNull(read);
+        assertTrue(read.matches("12:1540000000000", "models"));
+        assertFalse(read.matches("13:1540000000000", "models"));
+        assertFalse(read.matches("12:1540000000000", "config"));
+        assertEquals(2, read.size());
+        assertEquals(1024, read.get("a.bin").mSize);
+        assertEquals(0xffffffffL, read.get("a.bin").mCrc);
+        assertEquals(0, read.get("sub/b.bin").mSize);
+        assertFalse(new File(mFile.getParentFile(), "." + mFile.getName() + ".tmp").exists());
+    }
+
+    @Test
+    public void singleFileEntry_keepsEmptyPath() throws IOException {
+        // 源路径本身是文件时, 相对路径为""
+        AssetsManifest manifest = new AssetsManifest("12:1540000000000", "models/a.bin");
+        manifest.put(new AssetsManifest.Entry("", 1024, 0x1234L));
+        manifest.write(mFile);
+
+        AssetsManifest read = AssetsManifest.read(mFile);
+        assertEquals(1, read.size());
+        assertEquals(1024, read.get("").mSize);
+        assertEquals(0x1234L, read.get("").mCrc);
+    }
+
+    @Test
+    public void writeWithoutVersion_neverMatches() throws IOException {
+        new AssetsManifest(null, "models").write(mFile);
+        AssetsManifest read = AssetsManifest.read(mFile);
+        assertNotNull(read);
+        assertNull(read.getVersion());
+        assertFalse(read.matches(null, "models"));
+    }
+
+    @Test
+    public void read_returnsNullForCorruptFile() throws IOException {
+        FileWriter writer = new FileWriter(mFile);
+        try {
+            writer.write("1:2\tmodels\na.bin\tnot-a-number\t0\n");
+        } finally {
+            writer.close();
+        }
+        assertNull(AssetsManifest.read(mFile));
+        mFile.delete();
+        assertNull(AssetsManifest.read(mFile));
+    }
+}
@@ -0,0 +1,182 @@
+package org.duoji.shortcode.android.assets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link LazyAssetProvider}, 源为本地临时目录.
+ */
+public class LazyAssetProviderTest {
+    private File mRoot;
+    private File mTarget;
+    private CountingSource mSource;
+
+    /**
+     * 统计 list() 和 open() 的调用次数
+     */
+    private static class CountingSource implements AssetSource {
+        final DirectorySource mDirectory;
+        final AtomicInteger mLists = new AtomicInteger();
+        final AtomicInteger mOpens = new AtomicInteger();
+
+        CountingSource(File root) {
+            mDirectory = new DirectorySource(root);
+        }
+
+        @Override
+        public String[] list(String path) throws IOException {
+            mLists.incrementAndGet();
+            return mDirectory.list(path);
+        }
+
+        @Override
+        public InputStream open(String path) throws IOException {
+            mOpens.incrementAndGet();
+            return mDirectory.open(path);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mRoot = createTempDir("lazy_source");
+        mTarget = createTempDir("lazy_target");
+        write(new File(mRoot, "models/a.bin"), new byte[]{1, 2, 3});
+        write(new File(mRoot, "models/sub/b.bin"), new byte[20000]);
+        mSource = new CountingSource(mRoot);
+    }
+
+    @After
+    public void tearDown() {
+        delete(mRoot);
+        delete(mTarget);
+    }
+
+    @Test
+    public void lookups_useIndexWithoutCopying() throws IOException {
+        LazyAssetProvider provider = new LazyAssetProvider(mSource, "models", mTarget);
+        assertTrue(provider.isFile("a.bin"));
+        assertTrue(provider.isDirectory("sub"));
+        assertTrue(provider.isFile("sub/b.bin"));
+        assertFalse(provider.exists("missing"));
+        assertFalse(provider.isFile("sub"));
+        assertEquals(2, provider.list("").length);
+        int lists = mSource.mLists.get();
+        provider.exists("sub/b.bin");
+        provider.list("sub");
+        assertEquals(lists, mSource.mLists.get());
+
+        ByteBuffer buffer = provider.readBuffer("sub/b.bin");
+        assertEquals(20000, buffer.remaining());
+        InputStream in = provider.open("a.bin");
+        try {
+            assertEquals(1, in.read());
+        } finally {
+            in.close();
+        }
+        assertEquals(0, mTarget.list().length);
+    }
+
+    @Test
+    public void getFile_extractsOnceForConcurrentCallers() throws Exception {
+        final LazyAssetProvider provider = new LazyAssetProvider(mSource, "models", mTarget);
+        final CountDownLatch start = new CountDownLatch(1);
+        final File[] files = new File[8];
+        Thread[] threads = new Thread[files.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        files[index] = provider.getFile("sub/b.bin");
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        File expected = new File(mTarget, "sub/b.bin");
+        for (File file : files) {
+            assertEquals(expected, file);
+        }
+        assertEquals(20000, expected.length());
+        assertEquals(1, mSource.mOpens.get());
+
+        // 已拷贝的文件从磁盘读取
+        assertEquals(20000, provider.readBuffer("sub/b.bin").remaining());
+        assertEquals(1, mSource.mOpens.get());
+
+        // 新的实例复用上次拷贝的文件
+        LazyAssetProvider next = new LazyAssetProvider(mSource, "models", mTarget);
+        assertEquals(expected, next.getFile("sub/b.bin"));
+        assertEquals(1, mSource.mOpens.get());
+
+        try {
+            provider.getFile("sub");
+            fail("expected IOException");
+        } catch (IOException expectedException) {
+        }
+    }
+
+    @Test
+    public void prepareVersionDir_keepsOnlyCurrentVersion() throws IOException {
+        write(new File(mTarget, "1_100/a.bin"), new byte[]{1});
+        write(new File(mTarget, "2_200/a.bin"), new byte[]{2});
+        write(new File(mTarget, "unknown/a.bin"), new byte[]{3});
+
+        File dir = LazyAssetProvider.prepareVersionDir(mTarget, "2:200");
+        assertEquals(new File(mTarget, "2_200"), dir);
+        assertTrue(new File(dir, "a.bin").isFile());
+        assertEquals(1, mTarget.list().length);
+
+        // 版本未知时不复用已有文件
+        dir = LazyAssetProvider.prepareVersionDir(mTarget, null);
+        assertEquals(new File(mTarget, "unknown"), dir);
+        assertEquals(0, mTarget.list().length);
+    }
+
+    private static File createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("can not create " + dir);
+        }
+        return dir;
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,152 @@
+package org.duoji.shortcode.android.process;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * JVM tests for {@link CommandCache}, 需要 /bin/sh.
+ * 每次真正执行命令都向计数文件追加一行, 以此统计进程启动次数.
+ */
+public class CommandCacheTest {
+    private File mCounter;
+    private File mScript;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(new File("/bin/sh").exists());
+        mCounter = File.createTempFile("command_cache", ".txt");
+        mScript = File.createTempFile("command_cache", ".sh");
+        FileWriter writer = new FileWriter(mScript);
+        try {
+            // $1: 输出内容, $2: 退出码, $3: 输出前等待的秒数
+            writer.write("echo run >> " + mCounter.getAbsolutePath() + "\n"
+                    + "if [ -n \"$3\" ]; then sleep $3; fi\n"
+                    + "echo $1\n"
+                    + "exit ${2:-0}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mCounter.delete();
+        mScript.delete();
+    }
+
+    @Test
+    public void execute_returnsCachedResultWithinTtl() throws Exception {
+        CommandCache cache = new CommandCache(8);
+        String cmd = countedCommand("value");
+        assertEquals("value\n", cache.execute(cmd, false, 60000).getOutput());
+        assertEquals("value\n", cache.execute(cmd, false, 60000).getOutput());
+        assertEquals(1, runCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        cache.invalidate(cmd);
+        cache.execute(cmd, false, 60000);
+        assertEquals(2, runCount());
+
+        // 过期后重新执行
+        cache.invalidateAll();
+        cache.execute(cmd, false, 1);
+        Thread.sleep(20);
+        cache.execute(cmd, false, 1);
+        assertEquals(4, runCount());
+
+        // 不缓存失败的结果
+        String failing = countedCommand("failed 2");
+        assertFalse(cache.execute(failing, false, 60000).isSuccess());
+        assertFalse(cache.execute(failing, false, 60000).isSuccess());
+        assertEquals(6, runCount());
+    }
+
+    @Test
+    public void execute_evictsLeastRecentlyUsed() throws Exception {
+        CommandCache cache = new CommandCache(2);
+        String a = countedCommand("a");
+        String b = countedCommand("b");
+        String c = countedCommand("c");
+        cache.execute(a, false, 60000);
+        cache.execute(b, false, 60000);
+        cache.execute(a, false, 60000);
+        cache.execute(c, false, 60000);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(3, runCount());
+        // b最久未使用, 已被淘汰
+        cache.execute(a, false, 60000);
+        assertEquals(3, runCount());
+        cache.execute(b, false, 60000);
+        assertEquals(4, runCount());
+    }
+
+    @Test
+    public void submit_coalescesConcurrentRequests() throws Exception {
+        ShellExecutor executor = new ShellExecutor(4, 64);
+        final CommandCache cache = new CommandCache(executor, 8);
+        try {
+            final String cmd = countedCommand("slow 0 0.3");
+            List<Future<CommandResult>> futures = new ArrayList<Future<CommandResult>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(cache.submit(cmd, false, 60000));
+            }
+            final CountDownLatch done = new CountDownLatch(4);
+            final String[] outputs = new String[4];
+            for (int i = 0; i < 4; i++) {
+                final int index = i;
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        outputs[index] = cache.execute(cmd, false, 60000).getOutput();
+                        done.countDown();
+                    }
+                }).start();
+            }
+            for (Future<CommandResult> future : futures) {
+                assertEquals("slow\n", future.get().getOutput());
+            }
+            done.await();
+            for (String output : outputs) {
+                assertEquals("slow\n", output);
+            }
+            assertEquals(1, runCount());
+            assertEquals(1, cache.getMissCount());
+            assertEquals(11, cache.getCoalescedCount() + cache.getHitCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private String countedCommand(String args) {
+        return "sh " + mScript.getAbsolutePath() + " " + args;
+    }
+
+    private int runCount() throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(mCounter));
+        try {
+            int count = 0;
+            while (reader.readLine() != null) {
+                count++;
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+}
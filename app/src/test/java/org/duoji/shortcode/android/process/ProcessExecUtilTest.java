@@ -0,0 +1,98 @@
+package org.duoji.shortcode.android.process;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * JVM tests for {@link ProcessExecUtil}, 需要 /bin/sh.
+ */
+public class ProcessExecUtilTest {
+    private File mScript;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(new File("/bin/sh").exists());
+        mScript = File.createTempFile("process_exec", ".sh");
+    }
+
+    @After
+    public void tearDown() {
+        mScript.delete();
+    }
+
+    @Test
+    public void processExec_drainsLargeOutputOnBothStreams() throws IOException {
+        // 两个流都远超管道buffer, 顺序读取会互相阻塞
+        writeScript("i=0; while [ $i -lt 20000 ]; do echo \"out line $i\"; echo \"err line $i\" >&2; i=$((i+1)); done");
+        ProcessExecUtil util = ProcessExecUtil.getInstance();
+        assertFalse(util.processExec("sh " + mScript.getAbsolutePath(), false, 30000, null));
+        assertEquals("", util.getInputInfo());
+        assertTrue(util.getErrorInfo().startsWith("err line 0\nerr line 1\n"));
+        assertTrue(util.getErrorInfo().endsWith("err line 19999\n"));
+    }
+
+    @Test
+    public void processExec_streamsLinesToListener() throws IOException {
+        writeScript("i=0; while [ $i -lt 5000 ]; do echo \"line $i\"; i=$((i+1)); done");
+        final AtomicInteger lines = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        ProcessExecUtil util = ProcessExecUtil.getInstance();
+        assertTrue(util.processExec("sh " + mScript.getAbsolutePath(), false, 0,
+                new ProcessExecUtil.OutputListener() {
+                    @Override
+                    public void onOutputLine(String line) {
+                        lines.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onErrorLine(String line) {
+                        errors.incrementAndGet();
+                    }
+                }));
+        assertEquals(5000, lines.get());
+        assertEquals(0, errors.get());
+        assertEquals("", util.getInputInfo());
+    }
+
+    @Test
+    public void processExec_killsHungChildOnTimeout() throws IOException {
+        writeScript("echo started; exec sleep 30");
+        ProcessExecUtil util = ProcessExecUtil.getInstance();
+        long start = System.currentTimeMillis();
+        assertFalse(util.processExec("sh " + mScript.getAbsolutePath(), false, 300, null));
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertTrue(util.getErrorInfo().contains("timeout"));
+    }
+
+    @Test
+    public void execute_reportsInterruptNotTimeout() throws IOException {
+        // 输出流立即结束, 调用方在等待进程退出时被中断
+        writeScript("exec sleep 30 > /dev/null 2>&1");
+        long start = System.currentTimeMillis();
+        Thread.currentThread().interrupt();
+        CommandResult result = ProcessExecUtil.getInstance().execute("sh " + mScript.getAbsolutePath(), false, 0, null);
+        assertTrue(Thread.interrupted());
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertFalse(result.isTimedOut());
+        assertEquals(CommandResult.EXIT_CODE_UNKNOWN, result.getExitCode());
+        assertTrue(result.getError().contains("interrupted"));
+    }
+
+    private void writeScript(String content) throws IOException {
+        FileWriter writer = new FileWriter(mScript);
+        try {
+            writer.write(content + "\n");
+        } finally {
+            writer.close();
+        }
+    }
+}
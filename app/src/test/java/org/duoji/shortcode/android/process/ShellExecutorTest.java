@@ -0,0 +1,115 @@
+package org.duoji.shortcode.android.process;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * JVM tests for {@link ShellExecutor}, 需要 /bin/sh.
+ */
+public class ShellExecutorTest {
+
+    @Before
+    public void setUp() {
+        assumeTrue(new File("/bin/sh").exists());
+    }
+
+    @Test
+    public void submit_returnsIndependentResults() throws Exception {
+        ShellExecutor executor = new ShellExecutor(4, 64);
+        try {
+            List<Future<CommandResult>> futures = new ArrayList<Future<CommandResult>>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit("echo value_" + i, false));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                CommandResult result = futures.get(i).get();
+                assertEquals("value_" + i + "\n", result.getOutput());
+                assertEquals(0, result.getExitCode());
+                assertTrue(result.isSuccess());
+            }
+            CommandResult failed = executor.submit("ls /dj_missing_dir", false).get();
+            assertFalse(failed.isSuccess());
+            assertFalse(failed.getError().isEmpty());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void submit_rejectsWhenQueueIsFull() throws Exception {
+        ShellExecutor executor = new ShellExecutor(1, 1);
+        try {
+            Future<CommandResult> running = executor.submit("sleep 1", false);
+            executor.submit("echo queued", false);
+            try {
+                executor.submit("echo rejected", false);
+                fail("expected RejectedExecutionException");
+            } catch (RejectedExecutionException expected) {
+            }
+            assertTrue(running.get().isSuccess());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void submitBatch_splitsResultsPerCommand() throws Exception {
+        ShellExecutor executor = new ShellExecutor();
+        try {
+            List<String> cmds = new ArrayList<String>();
+            cmds.add("echo first");
+            cmds.add("echo second >&2; false");
+            // 超过直接写入的长度, 且输出超过管道buffer
+            StringBuilder padding = new StringBuilder("true");
+            while (padding.length() < 8192) {
+                padding.append("; true");
+            }
+            cmds.add(padding.toString());
+            for (int i = 0; i < 200; i++) {
+                cmds.add("i=0; while [ $i -lt 50 ]; do echo \"cmd " + i + " line $i\"; i=$((i+1)); done");
+            }
+            List<CommandResult> results = executor.submitBatch(cmds, false).get();
+            assertEquals(cmds.size(), results.size());
+            assertEquals("first\n", results.get(0).getOutput());
+            assertEquals(0, results.get(0).getExitCode());
+            assertEquals("second\n", results.get(1).getError());
+            assertEquals(1, results.get(1).getExitCode());
+            assertTrue(results.get(2).isSuccess());
+            for (int i = 0; i < 200; i++) {
+                String output = results.get(i + 3).getOutput();
+                assertTrue(output.startsWith("cmd " + i + " line 0\n"));
+                assertTrue(output.endsWith("cmd " + i + " line 49\n"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void submitBatch_marksRemainingCommandsAfterTimeout() throws Exception {
+        ShellExecutor executor = new ShellExecutor();
+        try {
+            List<String> cmds = new ArrayList<String>();
+            cmds.add("echo done");
+            cmds.add("sleep 30");
+            cmds.add("echo never");
+            List<CommandResult> results = executor.submitBatch(cmds, false, 300).get();
+            assertTrue(results.get(0).isSuccess());
+            assertTrue(results.get(1).isTimedOut());
+            assertTrue(results.get(2).isTimedOut());
+            assertEquals(CommandResult.EXIT_CODE_UNKNOWN, results.get(2).getExitCode());
+            assertEquals("", results.get(2).getOutput());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.duoji.shortcode.android.process;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * JVM tests for {@link ShellSession}, 需要 /bin/sh.
+ */
+public class ShellSessionTest {
+
+    @Before
+    public void setUp() {
+        assumeTrue(new File("/bin/sh").exists());
+    }
+
+    @Test
+    public void exec_splitsOutputErrorAndExitCode() {
+        ShellSession session = new ShellSession("sh");
+        try {
+            CommandResult result = session.exec("echo hello; echo oops >&2; printf tail; false", 10000);
+            assertEquals("hello\ntail", result.getOutput());
+            assertEquals("oops\n", result.getError());
+            assertEquals(1, result.getExitCode());
+
+            // 同一个shell, 状态保留
+            session.exec("DJ_VALUE=42", 10000);
+            result = session.exec("echo $DJ_VALUE", 10000);
+            assertEquals("42\n", result.getOutput());
+            assertTrue(result.isSuccess());
+            assertEquals(1, session.getStartCount());
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void exec_restartsAfterExitAndTimeout() {
+        ShellSession session = new ShellSession("sh");
+        try {
+            CommandResult result = session.exec("exit 3", 10000);
+            assertEquals(CommandResult.EXIT_CODE_UNKNOWN, result.getExitCode());
+            assertEquals("ok\n", session.exec("echo ok", 10000).getOutput());
+            assertEquals(2, session.getStartCount());
+
+            result = session.exec("sleep 30", 300);
+            assertTrue(result.isTimedOut());
+            assertEquals("ok\n", session.exec("echo ok", 10000).getOutput());
+            assertEquals(3, session.getStartCount());
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void exec_timeoutReturnsWhileChildHoldsOutput() {
+        ShellSession session = new ShellSession("sh");
+        try {
+            // sleep是shell的子进程, shell被结束后仍占用输出管道
+            long start = System.nanoTime();
+            CommandResult result = session.exec("sleep 5", 300);
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(result.isTimedOut());
+            assertTrue("elapsed " + elapsed, elapsed < 2000);
+
+            start = System.nanoTime();
+            List<CommandResult> results = session.execBatch(Arrays.asList("echo a", "sleep 5", "echo b"), 300);
+            elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("elapsed " + elapsed, elapsed < 2000);
+            assertEquals("a\n", results.get(0).getOutput());
+            assertTrue(results.get(1).isTimedOut());
+            assertTrue(results.get(2).isTimedOut());
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void exec_serializesConcurrentCallers() throws Exception {
+        final ShellSession session = new ShellSession("sh");
+        final AtomicInteger errors = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 50; i++) {
+                        String expected = id + "_" + i;
+                        CommandResult result = session.exec("echo " + expected + "; echo " + expected + " >&2", 10000);
+                        if (!result.getOutput().equals(expected + "\n") || !result.getError().equals(expected + "\n")) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        session.close();
+        assertEquals(0, errors.get());
+        assertEquals(1, session.getStartCount());
+    }
+}
@@ -0,0 +1,114 @@
+package org.duoji.shortcode.android.record;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link AudioBus}.
+ */
+public class AudioBusTest {
+
+    @Test
+    public void slowSubscriberDoesNotHoldBackOthers() throws Exception {
+        AudioBus bus = new AudioBus();
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicLong lastSeen = new AtomicLong(-1);
+        AudioBus.Subscription slow = bus.subscribe(new AudioBus.Subscriber() {
+            @Override
+            public void onFrame(AudioFrame frame) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 2, AudioBus.POLICY_DROP_NEWEST);
+        final CountDownLatch fastDone = new CountDownLatch(100);
+        AudioBus.Subscription fast = bus.subscribe(new AudioBus.Subscriber() {
+            @Override
+            public void onFrame(AudioFrame frame) {
+                assertEquals(4, frame.size());
+                assertEquals((byte) frame.getSequence(), frame.get(0));
+                lastSeen.set(frame.getSequence());
+                fastDone.countDown();
+            }
+        }, 100, AudioBus.POLICY_BLOCK);
+
+        byte[] data = new byte[4];
+        for (int i = 0; i < 100; i++) {
+            data[0] = (byte) i;
+            bus.onRecording(data, data.length);
+        }
+        assertTrue(fastDone.await(5, TimeUnit.SECONDS));
+        assertEquals(99, lastSeen.get());
+        // 计数在onFrame返回后才增加, 等最后一帧的回调结束
+        long deadline = System.currentTimeMillis() + 5000;
+        while (fast.getDeliveredCount() < 100 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(100, fast.getDeliveredCount());
+        assertTrue(slow.getDroppedCount() > 0);
+        gate.countDown();
+        bus.close();
+        assertEquals(0, bus.getSubscriberCount());
+    }
+
+    @Test
+    public void coalesceKeepsNewestFrame() throws Exception {
+        AudioBus bus = new AudioBus();
+        final CountDownLatch gate = new CountDownLatch(1);
+        final CountDownLatch taken = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        final AtomicLong lastSeen = new AtomicLong(-1);
+        bus.subscribe(new AudioBus.Subscriber() {
+            @Override
+            public void onFrame(AudioFrame frame) {
+                taken.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                lastSeen.set(frame.getSequence());
+                done.countDown();
+            }
+        }, 1, AudioBus.POLICY_COALESCE);
+
+        byte[] data = new byte[2];
+        bus.onRecording(data, data.length);
+        // 等订阅者取走第0帧并阻塞在gate上
+        assertTrue(taken.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < 10; i++) {
+            bus.onRecording(data, data.length);
+        }
+        gate.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(9, lastSeen.get());
+        bus.close();
+    }
+
+    @Test
+    public void failedSubscriberIsRemoved() throws Exception {
+        AudioBus bus = new AudioBus();
+        AudioBus.Subscription failing = bus.subscribe(new AudioBus.Subscriber() {
+            @Override
+            public void onFrame(AudioFrame frame) {
+                throw new IllegalStateException("broken");
+            }
+        }, 4, AudioBus.POLICY_BLOCK);
+        byte[] data = new byte[2];
+        bus.onRecording(data, data.length);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (bus.getSubscriberCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, bus.getSubscriberCount());
+        assertTrue(failing.isDetached());
+        assertEquals("broken", failing.getFailure().getMessage());
+    }
+}
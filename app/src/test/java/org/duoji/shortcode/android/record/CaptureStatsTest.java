@@ -0,0 +1,60 @@
+package org.duoji.shortcode.android.record;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link CaptureStats}.
+ */
+public class CaptureStatsTest {
+    private static final long MS = 1000000L;
+
+    @Test
+    public void onRead_fillsHistogramAndCounters() {
+        CaptureStats stats = new CaptureStats();
+        // 16kHz 单声道16位, buffer 3200 字节 = 100ms
+        stats.onStart(16000, 2, 3200);
+        stats.onRead(1600, 1600, 0, 50 * MS);
+        stats.onRead(1600, 800, 50 * MS, 50 * MS + 30000);
+        stats.onRead(1600, -3, 60 * MS, 60 * MS + 100);
+        stats.onCallback(200000);
+
+        CaptureStats.Snapshot snapshot = new CaptureStats.Snapshot();
+        stats.snapshot(snapshot);
+        assertEquals(3, snapshot.reads);
+        assertEquals(1, snapshot.shortReads);
+        assertEquals(1, snapshot.errors);
+        assertEquals(2400, snapshot.readBytes);
+        assertEquals(1, snapshot.callbacks);
+        assertEquals(2, snapshot.readHistogram[0]);
+        assertEquals(65536, snapshot.getReadPercentileMicros(100));
+        assertEquals(64, snapshot.getReadPercentileMicros(50));
+        assertEquals(256, snapshot.getCallbackPercentileMicros(99));
+
+        stats.reset();
+        stats.snapshot(snapshot);
+        assertEquals(0, snapshot.reads);
+        assertEquals(0, snapshot.readHistogram[0]);
+    }
+
+    @Test
+    public void onRead_estimatesOverrunFromDrift() {
+        CaptureStats stats = new CaptureStats();
+        stats.onStart(16000, 2, 3200);
+        long now = 0;
+        for (int i = 0; i < 10; i++) {
+            stats.onRead(1600, 1600, now, now + 50 * MS);
+            now += 50 * MS;
+        }
+        // listener 卡住 300ms, 超过 100ms 的 buffer
+        now += 300 * MS;
+        stats.onRead(1600, 1600, now, now + 1 * MS);
+
+        CaptureStats.Snapshot snapshot = new CaptureStats.Snapshot();
+        stats.snapshot(snapshot);
+        assertEquals(1, snapshot.estimatedOverruns);
+        assertTrue(snapshot.estimatedLostNanos >= 250 * MS);
+        assertTrue(snapshot.driftNanos >= 250 * MS);
+    }
+}
@@ -0,0 +1,44 @@
+package org.duoji.shortcode.android.record;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link FormatConverter}.
+ */
+public class FormatConverterTest {
+
+    @Test
+    public void splitFrames_matchWholeInput() {
+        // 48kHz双声道16位, 100ms
+        byte[] pcm = new byte[4800 * 4];
+        new Random(9).nextBytes(pcm);
+
+        PreRollTapTest.CollectingListener whole = new PreRollTapTest.CollectingListener();
+        FormatConverter converter = new FormatConverter(48000, 2, false, 16000, 1, false, 4096, whole);
+        converter.onRecordingStart();
+        converter.onRecording(pcm, pcm.length);
+        converter.onRecordingEnd();
+
+        // 块大小不是帧大小(4字节)的整数倍, 帧会被拆到两次调用中, 也有比一帧还小的块
+        PreRollTapTest.CollectingListener split = new PreRollTapTest.CollectingListener();
+        converter = new FormatConverter(48000, 2, false, 16000, 1, false, 4096, split);
+        converter.onRecordingStart();
+        int[] sizes = {1, 2, 7, 1, 333, 3, 1022};
+        byte[] chunk = new byte[1022];
+        int offset = 0;
+        for (int i = 0; offset < pcm.length; i++) {
+            int size = Math.min(sizes[i % sizes.length], pcm.length - offset);
+            System.arraycopy(pcm, offset, chunk, 0, size);
+            converter.onRecording(chunk, size);
+            offset += size;
+        }
+        converter.onRecordingEnd();
+
+        assertTrue(whole.bytes().length > 0);
+        assertArrayEquals(whole.bytes(), split.bytes());
+    }
+}
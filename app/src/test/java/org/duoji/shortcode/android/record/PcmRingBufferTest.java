@@ -0,0 +1,111 @@
+package org.duoji.shortcode.android.record;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link PcmRingBuffer} and {@link PcmDispatcher}.
+ */
+public class PcmRingBufferTest {
+
+    @Test
+    public void claim_returnsNullAndCountsDropsWhenFull() {
+        PcmRingBuffer ring = new PcmRingBuffer(3, 8);
+        assertEquals(4, ring.getCapacity());
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(ring.claim());
+            ring.publish(8);
+        }
+        assertNull(ring.claim());
+        assertNull(ring.claim());
+        assertEquals(1, ring.getOverrunCount());
+        assertEquals(2, ring.getDroppedFrameCount());
+
+        ring.peek();
+        ring.release();
+        assertNotNull(ring.claim());
+        ring.publish(8);
+        assertNull(ring.claim());
+        assertEquals(2, ring.getOverrunCount());
+        assertEquals(3, ring.getDroppedFrameCount());
+    }
+
+    @Test
+    public void dispatcher_deliversFramesInOrder() throws Exception {
+        final int frames = 200000;
+        PcmRingBuffer ring = new PcmRingBuffer(8, 4);
+        final AtomicInteger expected = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        PcmDispatcher dispatcher = new PcmDispatcher(ring, new ListenerAdapter() {
+            @Override
+            public void onRecording(byte[] data, int sizeInBytes) {
+                int value = (data[0] & 0xff) << 24 | (data[1] & 0xff) << 16 | (data[2] & 0xff) << 8 | (data[3] & 0xff);
+                if (value != expected.getAndIncrement() || sizeInBytes != 4) {
+                    errors.incrementAndGet();
+                }
+            }
+        });
+        dispatcher.start("test_dispatch");
+        for (int i = 0; i < frames; i++) {
+            byte[] slot;
+            while ((slot = ring.claim()) == null) {
+                Thread.yield();
+            }
+            slot[0] = (byte) (i >>> 24);
+            slot[1] = (byte) (i >>> 16);
+            slot[2] = (byte) (i >>> 8);
+            slot[3] = (byte) i;
+            ring.publish(4);
+            dispatcher.signal();
+        }
+        dispatcher.finish();
+        assertEquals(frames, expected.get());
+        assertEquals(0, errors.get());
+        assertNull(dispatcher.getFailure());
+    }
+
+    @Test
+    public void dispatcher_keepsFailureAndDrains() throws Exception {
+        PcmRingBuffer ring = new PcmRingBuffer(4, 4);
+        PcmDispatcher dispatcher = new PcmDispatcher(ring, new ListenerAdapter() {
+            @Override
+            public void onRecording(byte[] data, int sizeInBytes) {
+                throw new IllegalStateException("boom");
+            }
+        });
+        dispatcher.start("test_dispatch");
+        for (int i = 0; i < 4; i++) {
+            ring.claim();
+            ring.publish(4);
+        }
+        dispatcher.signal();
+        dispatcher.finish();
+        assertTrue(ring.isEmpty());
+        assertNotNull(dispatcher.getFailure());
+    }
+
+    static class ListenerAdapter implements VoiceRecord.RecordListener {
+        @Override
+        public void onRecordingStart() {
+        }
+
+        @Override
+        public void onRecording(byte[] data, int sizeInBytes) {
+        }
+
+        @Override
+        public void onRecordCreateError() {
+        }
+
+        @Override
+        public void onRecordingFailed() {
+        }
+
+        @Override
+        public void onRecordingEnd() {
+        }
+    }
+}
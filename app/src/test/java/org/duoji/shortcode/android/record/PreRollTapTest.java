@@ -0,0 +1,101 @@
+package org.duoji.shortcode.android.record;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link PcmHistoryBuffer} and {@link PreRollTap}.
+ */
+public class PreRollTapTest {
+
+    @Test
+    public void history_keepsMostRecentBytesInOrder() {
+        PcmHistoryBuffer history = new PcmHistoryBuffer(10);
+        CollectingListener out = new CollectingListener();
+        byte[] data = sequence(0, 23);
+        history.write(data, 0, 7);
+        history.write(data, 7, 7);
+        history.write(data, 14, 9);
+        assertEquals(10, history.size());
+        history.replay(out, new byte[4]);
+        assertArrayEquals(sequence(13, 10), out.bytes());
+
+        history.write(sequence(0, 30), 0, 30);
+        out = new CollectingListener();
+        history.replay(out, new byte[3]);
+        assertArrayEquals(sequence(20, 10), out.bytes());
+    }
+
+    @Test
+    public void stream_replaysPreRollThenContinuesLive() {
+        CollectingListener main = new CollectingListener();
+        PreRollTap tap = new PreRollTap(main);
+        tap.prepare(8, 4);
+        CollectingListener target = new CollectingListener();
+        int next = 0;
+        for (int i = 0; i < 5; i++, next += 4) {
+            tap.onRecording(sequence(next, 4), 4);
+        }
+        tap.startStream(target);
+        for (int i = 0; i < 3; i++, next += 4) {
+            tap.onRecording(sequence(next, 4), 4);
+        }
+        tap.stopStream(target);
+        tap.onRecording(sequence(next, 4), 4);
+        tap.endStreams();
+
+        assertArrayEquals(sequence(0, 36), main.bytes());
+        // 8字节前导音 + 触发后的3块实时数据, 中间无缺口无重复
+        assertArrayEquals(sequence(12, 20), target.bytes());
+        assertEquals(1, target.starts);
+        assertEquals(1, target.ends);
+    }
+
+    @Test
+    public void endStreams_endsActiveTargets() {
+        PreRollTap tap = new PreRollTap(null);
+        tap.prepare(0, 4);
+        CollectingListener target = new CollectingListener();
+        tap.startStream(target);
+        tap.onRecording(sequence(0, 4), 4);
+        tap.endStreams();
+        assertArrayEquals(sequence(0, 4), target.bytes());
+        assertEquals(1, target.ends);
+    }
+
+    private static byte[] sequence(int start, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (start + i);
+        }
+        return data;
+    }
+
+    static class CollectingListener extends PcmRingBufferTest.ListenerAdapter {
+        private final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+        int starts;
+        int ends;
+
+        @Override
+        public void onRecordingStart() {
+            starts++;
+        }
+
+        @Override
+        public void onRecording(byte[] data, int sizeInBytes) {
+            mOut.write(data, 0, sizeInBytes);
+        }
+
+        @Override
+        public void onRecordingEnd() {
+            ends++;
+        }
+
+        byte[] bytes() {
+            return mOut.toByteArray();
+        }
+    }
+}
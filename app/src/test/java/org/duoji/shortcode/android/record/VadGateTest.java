@@ -0,0 +1,62 @@
+package org.duoji.shortcode.android.record;
+
+import org.duoji.shortcode.android.record.dsp.VoiceActivityDetector;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link VadGate}.
+ */
+public class VadGateTest {
+    private static final int SAMPLE_RATE = 16000;
+
+    @Test
+    public void speechOnset_reachesDelegate() {
+        VoiceActivityDetector detector = new VoiceActivityDetector(SAMPLE_RATE, 1);
+        final long[] start = {-1};
+        detector.setListener(new VoiceActivityDetector.Listener() {
+            @Override
+            public void onSpeechStart(long sampleIndex) {
+                start[0] = sampleIndex;
+            }
+
+            @Override
+            public void onSpeechEnd(long sampleIndex) {
+            }
+        });
+        PreRollTapTest.CollectingListener collected = new PreRollTapTest.CollectingListener();
+        VadGate gate = new VadGate(detector, collected);
+
+        // 1s noise then 1s tone, 16-bit little endian, fed in 10ms chunks
+        byte[] pcm = new byte[SAMPLE_RATE * 2 * 2];
+        Random random = new Random(5);
+        for (int i = 0; i < pcm.length / 2; i++) {
+            int value = random.nextInt(200) - 100;
+            if (i >= SAMPLE_RATE) {
+                value += (int) (6000 * Math.sin(2 * Math.PI * 300 * i / SAMPLE_RATE));
+            }
+            pcm[i * 2] = (byte) value;
+            pcm[i * 2 + 1] = (byte) (value >> 8);
+        }
+        gate.onRecordingStart();
+        byte[] chunk = new byte[320];
+        for (int offset = 0; offset < pcm.length; offset += chunk.length) {
+            System.arraycopy(pcm, offset, chunk, 0, chunk.length);
+            gate.onRecording(chunk, chunk.length);
+        }
+        gate.onRecordingEnd();
+
+        // 下游收到的是一段连续的尾部, 且从语音开始处之前就开始
+        byte[] out = collected.bytes();
+        int first = pcm.length - out.length;
+        assertTrue("onset " + start[0], start[0] > 0);
+        assertTrue("first " + first, first <= start[0] * 2);
+        assertArrayEquals(Arrays.copyOfRange(pcm, first, pcm.length), out);
+        assertEquals(out.length, gate.getPassedBytes());
+        assertEquals(first, gate.getGatedBytes());
+    }
+}
@@ -0,0 +1,191 @@
+package org.duoji.shortcode.android.record;
+
+import org.duoji.shortcode.android.record.dsp.LevelMeter;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link VoiceRecord} driven by a replay {@link AudioSource},
+ * {@link AudioReplayer}, {@link PcmStreamSource} and {@link PcmFileSource}.
+ */
+public class VoiceRecordTest {
+
+    @Test
+    public void replay_deliversWholeStreamWithoutDrops() throws Exception {
+        byte[] pcm = new byte[100000];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (byte) (i * 7);
+        }
+        SlowListener listener = new SlowListener();
+        VoiceRecord record = new VoiceRecord(listener);
+        record.setReplaySource(new PcmStreamSource(new ByteArrayInputStream(pcm), 16000, 1, 16));
+        record.setParam(VoiceRecord.PARAM_KEY_SET_RECORD_BUFFER_SIZE, 641);
+        record.setParam(VoiceRecord.PARAM_KEY_SET_DISPATCH_SLOTS, 2);
+        record.setParam(VoiceRecord.PARAM_KEY_SET_LEVEL_METER, 1);
+        record.startRecord();
+        assertTrue(listener.ended.await(5, TimeUnit.SECONDS));
+
+        assertArrayEquals(pcm, listener.bytes());
+        assertEquals(1, listener.starts);
+        assertEquals(1, listener.ends);
+        assertEquals(640, listener.maxChunk);
+        assertEquals(0, record.getDroppedFrameCount());
+        assertNull(record.getFailure());
+        // 回放同样经过统计和电平
+        CaptureStats.Snapshot snapshot = new CaptureStats.Snapshot();
+        record.getCaptureStats().snapshot(snapshot);
+        assertEquals(pcm.length, snapshot.readBytes);
+        assertTrue(record.readLevel(new LevelMeter.Level()));
+    }
+
+    @Test
+    public void replay_reportsListenerFailure() {
+        final int[] failed = {0};
+        AudioReplayer replayer = new AudioReplayer(
+                new PcmStreamSource(new ByteArrayInputStream(new byte[64000]), 16000, 1, 16),
+                new PcmRingBufferTest.ListenerAdapter() {
+                    @Override
+                    public void onRecording(byte[] data, int sizeInBytes) {
+                        throw new IllegalStateException("boom");
+                    }
+
+                    @Override
+                    public void onRecordingFailed() {
+                        failed[0]++;
+                    }
+                });
+        replayer.run();
+        assertEquals(1, failed[0]);
+        assertTrue(replayer.getFailure() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void create_readsWaveFormatAndData() throws Exception {
+        byte[] data = {1, 2, 3, 4, 5, 6, 7, 8};
+        ByteBuffer wav = ByteBuffer.allocate(44 + 10 + data.length + 8).order(ByteOrder.LITTLE_ENDIAN);
+        wav.putInt(0x46464952).putInt(wav.capacity() - 8).putInt(0x45564157);
+        wav.putInt(0x20746d66).putInt(16).putShort((short) 1).putShort((short) 2)
+                .putInt(48000).putInt(48000 * 4).putShort((short) 4).putShort((short) 16);
+        // 一个需要跳过的奇数长度块
+        wav.putInt(0x5453494c).putInt(1).put((byte) 0).put((byte) 0);
+        wav.putInt(0x61746164).putInt(data.length).put(data);
+        wav.putInt(0x74786574).putInt(0);
+        File file = File.createTempFile("replay", ".wav");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(wav.array(), 0, wav.position());
+            out.close();
+
+            PcmFileSource source = PcmFileSource.create(file);
+            assertEquals(48000, source.getSampleRate());
+            assertEquals(2, source.getChannelCount());
+            assertEquals(16, source.getBitsPerSample());
+            assertEquals(data.length, source.getDataLength());
+            SlowListener listener = new SlowListener();
+            new AudioReplayer(source, listener).run();
+            assertArrayEquals(data, listener.bytes());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void readFailure_countsErrorAndEndsCapture() throws Exception {
+        final CountDownLatch ended = new CountDownLatch(1);
+        final int[] failed = {0};
+        VoiceRecord record = new VoiceRecord(new PcmRingBufferTest.ListenerAdapter() {
+            @Override
+            public void onRecordingFailed() {
+                failed[0]++;
+            }
+
+            @Override
+            public void onRecordingEnd() {
+                ended.countDown();
+            }
+        });
+        record.setReplaySource(new FailingSource(3));
+        record.startRecord();
+        assertTrue(ended.await(5, TimeUnit.SECONDS));
+
+        CaptureStats.Snapshot snapshot = new CaptureStats.Snapshot();
+        record.getCaptureStats().snapshot(snapshot);
+        assertEquals(1, snapshot.errors);
+        assertEquals(4, snapshot.reads);
+        assertEquals(1, failed[0]);
+    }
+
+    static class SlowListener extends PreRollTapTest.CollectingListener {
+        final CountDownLatch ended = new CountDownLatch(1);
+        int maxChunk;
+        int chunks;
+
+        @Override
+        public void onRecording(byte[] data, int sizeInBytes) {
+            maxChunk = Math.max(maxChunk, sizeInBytes);
+            if (++chunks % 3 == 0) {
+                // 让读取线程有机会写满环
+                Thread.yield();
+            }
+            super.onRecording(data, sizeInBytes);
+        }
+
+        @Override
+        public void onRecordingEnd() {
+            super.onRecordingEnd();
+            ended.countDown();
+        }
+    }
+
+    /**
+     * 读取几次后抛出异常的数据源, 模拟AudioRecord返回错误码
+     */
+    private static class FailingSource implements AudioSource {
+        private int mRemaining;
+
+        FailingSource(int reads) {
+            mRemaining = reads;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return 16000;
+        }
+
+        @Override
+        public int getChannelCount() {
+            return 1;
+        }
+
+        @Override
+        public int getBitsPerSample() {
+            return 16;
+        }
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int size) throws IOException {
+            if (mRemaining-- <= 0) {
+                throw new IOException("read() return AudioRecord.ERROR_INVALID_OPERATION");
+            }
+            return size;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
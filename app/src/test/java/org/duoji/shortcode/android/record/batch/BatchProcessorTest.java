@@ -0,0 +1,174 @@
+package org.duoji.shortcode.android.record.batch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link BatchProcessor}.
+ */
+public class BatchProcessorTest {
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("batch", "");
+        mDir.delete();
+        mDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        delete(mDir);
+    }
+
+    @Test
+    public void statsTask_matchesSequentialMeasure() throws Exception {
+        byte[] large = randomPcm(1, 100000);
+        byte[] small = randomPcm(2, 1000);
+        write(new File(mDir, "a.pcm"), large);
+        new File(mDir, "sub").mkdirs();
+        write(new File(mDir, "sub/b.pcm"), small);
+        write(new File(mDir, "ignored.txt"), small);
+
+        BatchProcessor processor = new BatchProcessor(4);
+        processor.setBlockSize(4096);
+        processor.setMaxInFlightBytes(3 * 4096);
+        final AtomicInteger progress = new AtomicInteger();
+        processor.setProgressListener(new BatchProcessor.ProgressListener() {
+            @Override
+            public void onProgress(BatchJob<?> job) {
+                progress.incrementAndGet();
+            }
+        });
+        PcmStatsTask task = new PcmStatsTask();
+        BatchJob<PcmStats> job = processor.submit(mDir, task);
+        job.await();
+        processor.shutdown();
+
+        assertEquals(2, job.getFinishedFiles());
+        assertEquals(large.length + small.length, job.getProcessedBytes());
+        assertEquals(0, job.getFailures().size());
+        assertTrue(progress.get() >= 2 + large.length / 4096);
+        PcmStats expected = PcmStats.measure(large, 0, large.length);
+        PcmStats actual = task.getResults().get(new File(mDir, "a.pcm"));
+        assertEquals(expected.getSamples(), actual.getSamples());
+        assertEquals(expected.getRms(), actual.getRms(), 1e-9);
+        assertEquals(expected.getPeak(), actual.getPeak(), 0);
+        assertEquals(500, task.getResults().get(new File(mDir, "sub/b.pcm")).getSamples());
+    }
+
+    @Test
+    public void sequentialTask_seesBlocksInOrder() throws Exception {
+        write(new File(mDir, "a.pcm"), randomPcm(3, 50001));
+        final AtomicInteger errors = new AtomicInteger();
+        BatchProcessor processor = new BatchProcessor(4);
+        processor.setBlockSize(1000);
+        BatchJob<Long> job = processor.submit(mDir, new OrderTask(errors));
+        job.await();
+        processor.shutdown();
+        assertEquals(0, errors.get());
+        assertEquals(50001, job.getProcessedBytes());
+    }
+
+    @Test
+    public void cancel_stopsRemainingWork() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            write(new File(mDir, i + ".pcm"), randomPcm(i, 20000));
+        }
+        BatchProcessor processor = new BatchProcessor(2);
+        processor.setBlockSize(1000);
+        processor.setProgressListener(new BatchProcessor.ProgressListener() {
+            @Override
+            public void onProgress(BatchJob<?> job) {
+                job.cancel();
+            }
+        });
+        BatchJob<PcmStats> job = processor.submit(mDir, new PcmStatsTask());
+        job.await();
+        processor.shutdown();
+        assertTrue(job.isCancelled());
+        assertTrue(job.getProcessedBytes() < 20 * 20000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setBlockSize_rejectsTooSmall() {
+        new BatchProcessor(1).setBlockSize(1);
+    }
+
+    /**
+     * 不可拆分的任务, 检查块偏移连续递增
+     */
+    private static class OrderTask implements BatchTask<Long> {
+        private final AtomicInteger mErrors;
+        private long mNext;
+
+        OrderTask(AtomicInteger errors) {
+            mErrors = errors;
+        }
+
+        @Override
+        public boolean accept(File file) {
+            return true;
+        }
+
+        @Override
+        public boolean isSplittable() {
+            return false;
+        }
+
+        @Override
+        public Long processBlock(BatchFile file, long offset, byte[] data, int length) {
+            if (offset != mNext) {
+                mErrors.incrementAndGet();
+            }
+            mNext = offset + length;
+            return (long) length;
+        }
+
+        @Override
+        public Long merge(Long left, Long right) {
+            return left + right;
+        }
+
+        @Override
+        public void onFileDone(BatchFile file, Long result) {
+            if (result != file.getDataLength()) {
+                mErrors.incrementAndGet();
+            }
+        }
+    }
+
+    private static byte[] randomPcm(int seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
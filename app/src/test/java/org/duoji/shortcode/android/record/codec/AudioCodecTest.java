@@ -0,0 +1,112 @@
+package org.duoji.shortcode.android.record.codec;
+
+import org.duoji.shortcode.android.record.util.EncodingPcmFileWriter;
+import org.duoji.shortcode.android.record.util.SaveConfig;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the block codecs and the encoded file round trip.
+ */
+public class AudioCodecTest {
+
+    @Test
+    public void riceLossless_roundTripsExactly() {
+        AudioCodec codec = AudioCodecs.get(AudioCodecs.CODEC_RICE_LOSSLESS);
+        for (int channels = 1; channels <= 2; channels++) {
+            byte[] pcm = sine(4001, channels, true);
+            byte[] encoded = new byte[codec.maxEncodedSize(pcm.length, channels)];
+            int length = codec.encode(pcm, 0, pcm.length, channels, encoded);
+            assertTrue(length < pcm.length);
+            byte[] decoded = new byte[pcm.length];
+            codec.decode(encoded, 0, length, channels, decoded, decoded.length);
+            assertArrayEquals(pcm, decoded);
+        }
+    }
+
+    @Test
+    public void riceLossless_handlesFullScaleNoise() {
+        AudioCodec codec = AudioCodecs.get(AudioCodecs.CODEC_RICE_LOSSLESS);
+        byte[] pcm = new byte[2048];
+        new Random(7).nextBytes(pcm);
+        pcm[0] = 0;
+        pcm[1] = (byte) 0x80;
+        byte[] encoded = new byte[codec.maxEncodedSize(pcm.length, 1)];
+        int length = codec.encode(pcm, 0, pcm.length, 1, encoded);
+        byte[] decoded = new byte[pcm.length];
+        codec.decode(encoded, 0, length, 1, decoded, decoded.length);
+        assertArrayEquals(pcm, decoded);
+    }
+
+    @Test
+    public void imaAdpcm_compressesFourToOneWithSmallError() {
+        AudioCodec codec = AudioCodecs.get(AudioCodecs.CODEC_IMA_ADPCM);
+        byte[] pcm = sine(4000, 1, false);
+        byte[] encoded = new byte[codec.maxEncodedSize(pcm.length, 1)];
+        int length = codec.encode(pcm, 0, pcm.length, 1, encoded);
+        assertTrue(length <= pcm.length / 4 + 4);
+        byte[] decoded = new byte[pcm.length];
+        codec.decode(encoded, 0, length, 1, decoded, decoded.length);
+        double signal = 0;
+        double noise = 0;
+        for (int i = 0; i < pcm.length; i += 2) {
+            int expected = (short) ((pcm[i] & 0xff) | (pcm[i + 1] << 8));
+            int actual = (short) ((decoded[i] & 0xff) | (decoded[i + 1] << 8));
+            signal += (double) expected * expected;
+            noise += (double) (expected - actual) * (expected - actual);
+        }
+        assertTrue("snr too low", 10 * Math.log10(signal / noise) > 20);
+    }
+
+    @Test
+    public void encodedFile_decodesAsStream() throws IOException {
+        File file = File.createTempFile("encoded", EncodedAudioFormat.FILE_SUFFIX);
+        try {
+            SaveConfig config = new SaveConfig();
+            config.setAudioParams(16000, 1, 16, false);
+            EncodingPcmFileWriter writer = new EncodingPcmFileWriter(file, config,
+                    AudioCodecs.get(AudioCodecs.CODEC_RICE_LOSSLESS));
+            byte[] pcm = sine(50000, 1, true);
+            for (int offset = 0; offset < pcm.length; offset += 1536) {
+                writer.write(pcm, offset, Math.min(1536, pcm.length - offset));
+            }
+            writer.close();
+
+            EncodedAudioReader reader = new EncodedAudioReader(new FileInputStream(file));
+            assertEquals(16000, reader.getSampleRate());
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            int length;
+            while ((length = reader.readFrame()) >= 0) {
+                decoded.write(reader.getPcm(), 0, length);
+            }
+            reader.close();
+            assertArrayEquals(pcm, decoded.toByteArray());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static byte[] sine(int samples, int channels, boolean noise) {
+        Random random = new Random(3);
+        byte[] pcm = new byte[samples * channels * 2];
+        for (int i = 0; i < samples; i++) {
+            for (int c = 0; c < channels; c++) {
+                int value = (int) (8000 * Math.sin(i * 0.05 * (c + 1)));
+                if (noise) {
+                    value += random.nextInt(64) - 32;
+                }
+                int index = (i * channels + c) * 2;
+                pcm[index] = (byte) value;
+                pcm[index + 1] = (byte) (value >> 8);
+            }
+        }
+        return pcm;
+    }
+}
@@ -0,0 +1,91 @@
+package org.duoji.shortcode.android.record.dsp;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link LevelMeter}.
+ */
+public class LevelMeterTest {
+
+    @Test
+    public void measure16_reportsRmsPeakDcAndClipping() {
+        LevelMeter meter = new LevelMeter(16);
+        // 方波 +-16384 叠加 1024 直流, 最后一个采样削波
+        byte[] pcm = new byte[2000];
+        for (int i = 0; i < 1000; i++) {
+            int sample = (i % 2 == 0 ? 16384 : -16384) + 1024;
+            if (i == 999) {
+                sample = 32767;
+            }
+            pcm[i * 2] = (byte) sample;
+            pcm[i * 2 + 1] = (byte) (sample >> 8);
+        }
+        meter.measure(pcm, 0, pcm.length);
+        LevelMeter.Level level = new LevelMeter.Level();
+        meter.read(level);
+        assertEquals(0.5, level.rms, 0.02);
+        assertEquals(32767 / 32768.0, level.peak, 1e-6);
+        assertEquals(1024 / 32768.0, level.dcOffset, 0.002);
+        assertEquals(1, level.clippedSamples);
+        assertEquals(1, level.totalClipped);
+        assertEquals(1, level.frameCount);
+        assertEquals(-6.0, level.getRmsDb(), 0.3);
+
+        meter.reset();
+        meter.read(level);
+        assertEquals(0, level.frameCount);
+        assertEquals(-120.0, level.getPeakDb(), 0);
+    }
+
+    @Test
+    public void measureFloat_countsClipping() {
+        LevelMeter meter = new LevelMeter(32);
+        float[] samples = {0.25f, -1.0f, 0.25f, 1.0f};
+        byte[] pcm = new byte[16];
+        SampleConverter.floatToPcmFloat(samples, 0, pcm, 0, 4);
+        meter.measure(pcm, 0, pcm.length);
+        LevelMeter.Level level = new LevelMeter.Level();
+        meter.read(level);
+        assertEquals(2, level.clippedSamples);
+        assertEquals(1.0, level.peak, 0);
+        assertEquals(0.125, level.dcOffset, 1e-6);
+    }
+
+    @Test
+    public void read_neverSeesTornSnapshot() throws Exception {
+        final LevelMeter meter = new LevelMeter(16);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger torn = new AtomicInteger();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                LevelMeter.Level level = new LevelMeter.Level();
+                while (!done.get()) {
+                    meter.read(level);
+                    // 每帧都是常数信号, 一致的快照中 rms == peak == dcOffset
+                    if (level.rms != level.peak || level.peak != level.dcOffset) {
+                        torn.incrementAndGet();
+                    }
+                }
+            }
+        });
+        reader.start();
+        byte[] pcm = new byte[64];
+        for (int i = 0; i < 200000; i++) {
+            int sample = i % 30000 + 1;
+            for (int j = 0; j < pcm.length; j += 2) {
+                pcm[j] = (byte) sample;
+                pcm[j + 1] = (byte) (sample >> 8);
+            }
+            meter.measure(pcm, 0, pcm.length);
+        }
+        done.set(true);
+        reader.join();
+        assertEquals(0, torn.get());
+    }
+}
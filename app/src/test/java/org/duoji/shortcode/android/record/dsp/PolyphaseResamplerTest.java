@@ -0,0 +1,91 @@
+package org.duoji.shortcode.android.record.dsp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link PolyphaseResampler} and {@link SampleConverter}.
+ */
+public class PolyphaseResamplerTest {
+
+    @Test
+    public void downsample_keepsPassbandAndRejectsAlias() {
+        assertEquals(1.0, toneGain(48000, 16000, 1000), 0.02);
+        assertEquals(1.0, toneGain(44100, 16000, 3000), 0.02);
+        // 10kHz 高于16kHz输出的奈奎斯特频率, 应被滤除
+        assertTrue(toneGain(48000, 16000, 10000) < 0.01);
+    }
+
+    @Test
+    public void upsample_keepsTone() {
+        assertEquals(1.0, toneGain(16000, 48000, 1000), 0.02);
+    }
+
+    @Test
+    public void process_isIndependentOfChunking() {
+        float[] input = tone(48000, 440, 4800);
+        PolyphaseResampler whole = new PolyphaseResampler(44100, 16000, 1);
+        float[] expected = new float[whole.getMaxOutputFrames(input.length)];
+        int expectedCount = whole.process(input, 0, input.length, expected, 0);
+
+        PolyphaseResampler chunked = new PolyphaseResampler(44100, 16000, 1);
+        float[] actual = new float[expected.length];
+        int count = 0;
+        for (int offset = 0, step = 1; offset < input.length; offset += step, step = step % 97 + 13) {
+            int frames = Math.min(step, input.length - offset);
+            count += chunked.process(input, offset, frames, actual, count);
+        }
+        assertEquals(expectedCount, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(expected[i], actual[i], 1e-6f);
+        }
+        assertEquals(input.length * 16000 / 44100, count, 1);
+    }
+
+    @Test
+    public void converter_roundTripsAndDownmixes() {
+        byte[] pcm = {0x00, (byte) 0x80, (byte) 0xff, 0x7f, 0x00, 0x40, 0x00, 0x00};
+        float[] samples = new float[4];
+        SampleConverter.pcm16ToFloat(pcm, 0, samples, 0, 4);
+        assertEquals(-1.0f, samples[0], 0);
+        assertEquals(0.5f, samples[2], 0);
+        byte[] back = new byte[8];
+        SampleConverter.floatToPcm16(samples, 0, back, 0, 4);
+        assertArrayEquals(pcm, back);
+
+        byte[] floats = new byte[16];
+        SampleConverter.floatToPcmFloat(samples, 0, floats, 0, 4);
+        float[] decoded = new float[4];
+        SampleConverter.pcmFloatToFloat(floats, 0, decoded, 0, 4);
+        assertArrayEquals(samples, decoded, 0);
+
+        SampleConverter.downmix(samples, 0, 2, samples, 0, 2);
+        assertEquals((-1.0f + 32767 / 32768f) / 2, samples[0], 1e-6f);
+        assertEquals(0.25f, samples[1], 0);
+    }
+
+    private static float[] tone(int rate, double frequency, int frames) {
+        float[] data = new float[frames];
+        for (int i = 0; i < frames; i++) {
+            data[i] = (float) (0.5 * Math.sin(2 * Math.PI * frequency * i / rate));
+        }
+        return data;
+    }
+
+    /**
+     * 重采样一段正弦波, 跳过滤波器暖启动部分后返回输出与输入的RMS之比
+     */
+    private static double toneGain(int inRate, int outRate, double frequency) {
+        float[] input = tone(inRate, frequency, inRate / 2);
+        PolyphaseResampler resampler = new PolyphaseResampler(inRate, outRate, 1);
+        float[] output = new float[resampler.getMaxOutputFrames(input.length)];
+        int count = resampler.process(input, 0, input.length, output, 0);
+        int skip = count / 5;
+        double sum = 0;
+        for (int i = skip; i < count; i++) {
+            sum += output[i] * output[i];
+        }
+        return Math.sqrt(sum / (count - skip)) / (0.5 / Math.sqrt(2));
+    }
+}
@@ -0,0 +1,69 @@
+package org.duoji.shortcode.android.record.dsp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link VoiceActivityDetector}.
+ */
+public class VoiceActivityDetectorTest {
+    private static final int SAMPLE_RATE = 16000;
+
+    @Test
+    public void detectsToneBurstInNoise() {
+        VoiceActivityDetector detector = new VoiceActivityDetector(SAMPLE_RATE, 1);
+        final long[] events = {-1, -1};
+        detector.setListener(new VoiceActivityDetector.Listener() {
+            @Override
+            public void onSpeechStart(long sampleIndex) {
+                events[0] = sampleIndex;
+            }
+
+            @Override
+            public void onSpeechEnd(long sampleIndex) {
+                events[1] = sampleIndex;
+            }
+        });
+
+        // 1s noise, 1s tone, 1s noise, fed in 640-sample chunks
+        short[] signal = new short[SAMPLE_RATE * 3];
+        Random random = new Random(5);
+        for (int i = 0; i < signal.length; i++) {
+            int value = random.nextInt(200) - 100;
+            if (i >= SAMPLE_RATE && i < SAMPLE_RATE * 2) {
+                value += (int) (6000 * Math.sin(2 * Math.PI * 300 * i / SAMPLE_RATE));
+            }
+            signal[i] = (short) value;
+        }
+        byte[] chunk = new byte[1280];
+        int passed = 0;
+        for (int offset = 0; offset < signal.length; offset += 640) {
+            for (int i = 0; i < 640; i++) {
+                chunk[i * 2] = (byte) signal[offset + i];
+                chunk[i * 2 + 1] = (byte) (signal[offset + i] >> 8);
+            }
+            if (detector.process(chunk, 0, chunk.length)) {
+                passed++;
+            }
+        }
+
+        assertTrue("start " + events[0], Math.abs(events[0] - SAMPLE_RATE) <= 160);
+        // end = tone end + hangover (300ms) within one analysis frame
+        assertTrue("end " + events[1], Math.abs(events[1] - (SAMPLE_RATE * 2 + 4800)) <= 320);
+        assertFalse(detector.isSpeech());
+        // 75 chunks of 40ms, roughly 1.3s of them should pass the gate
+        assertTrue("passed " + passed, passed >= 30 && passed <= 36);
+    }
+
+    @Test
+    public void silenceNeverOpensGate() {
+        VoiceActivityDetector detector = new VoiceActivityDetector(SAMPLE_RATE, 2);
+        short[] silence = new short[3200];
+        for (int i = 0; i < 50; i++) {
+            assertFalse(detector.process(silence, 0, silence.length));
+        }
+    }
+}
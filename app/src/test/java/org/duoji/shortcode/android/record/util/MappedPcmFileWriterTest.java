@@ -0,0 +1,75 @@
+package org.duoji.shortcode.android.record.util;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link MappedPcmFileWriter}.
+ */
+public class MappedPcmFileWriterTest {
+
+    @Test
+    public void close_truncatesPreallocatedSpace() throws IOException {
+        File file = File.createTempFile("mapped", ".wav");
+        try {
+            MappedPcmFileWriter writer = new MappedPcmFileWriter(file, config());
+            byte[] chunk = chunk(1536);
+            for (int i = 0; i < 10; i++) {
+                writer.write(chunk, 0, chunk.length);
+            }
+            writer.close();
+            byte[] wav = StreamingPcmFileWriterTest.readFile(file);
+            assertEquals(WavHeader.HEADER_SIZE + 15360, wav.length);
+            ByteBuffer header = ByteBuffer.wrap(wav).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(15360, header.getInt(40));
+            assertEquals(wav.length - 8, header.getInt(4));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void recover_keepsCommittedData() throws IOException {
+        File file = File.createTempFile("mapped", ".wav");
+        try {
+            MappedPcmFileWriter writer = new MappedPcmFileWriter(file, config());
+            byte[] chunk = chunk(1000);
+            writer.write(chunk, 0, chunk.length);
+            writer.write(chunk, 0, chunk.length);
+            // simulate a crash: the writer is never closed and the part file keeps its preallocated window
+            File partFile = new File(file.getPath() + MappedPcmFileWriter.PART_SUFFIX);
+            assertTrue(partFile.length() > WavHeader.HEADER_SIZE + 2000);
+
+            assertEquals(2000, MappedPcmFileWriter.recover(partFile));
+            assertFalse(partFile.exists());
+            byte[] wav = StreamingPcmFileWriterTest.readFile(file);
+            assertEquals(WavHeader.HEADER_SIZE + 2000, wav.length);
+            for (int i = 0; i < 2000; i++) {
+                assertEquals(chunk[i % 1000], wav[WavHeader.HEADER_SIZE + i]);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static SaveConfig config() {
+        SaveConfig config = new SaveConfig();
+        config.setWriteMode(SaveVoiceUtil.WRITE_MODE_MAPPED);
+        config.setMappedWindowSize(4096);
+        return config;
+    }
+
+    private static byte[] chunk(int length) {
+        byte[] chunk = new byte[length];
+        for (int i = 0; i < length; i++) {
+            chunk[i] = (byte) (i * 7);
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,93 @@
+package org.duoji.shortcode.android.record.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link RollingPcmFileWriter} writing WAV segments.
+ */
+public class RollingPcmFileWriterTest {
+
+    @Test
+    public void segmentsAreContiguousValidWavFiles() throws IOException {
+        File dir = File.createTempFile("rolling", "");
+        dir.delete();
+        dir.mkdirs();
+        SaveConfig config = new SaveConfig();
+        config.setFileFormat(SaveConfig.FILE_FORMAT_WAV);
+        config.setAudioParams(8000, 1, 16, false);
+        // 100ms at 8 kHz mono 16 bit = 1600 bytes
+        config.setSegment(0, 100);
+        assertEquals(1600, config.getSegmentBytes());
+
+        RollingPcmFileWriter writer = new RollingPcmFileWriter(new File(dir, "test.wav"), config);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        byte[] chunk = new byte[700];
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < chunk.length; j++) {
+                chunk[j] = (byte) (i * 31 + j);
+            }
+            writer.write(chunk, 0, chunk.length);
+            expected.write(chunk, 0, chunk.length);
+        }
+        writer.close();
+
+        // 7000 bytes -> 4 full segments and one of 600 bytes
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        for (int i = 0; i < 5; i++) {
+            byte[] wav = StreamingPcmFileWriterTest.readFile(writer.segmentFile(i));
+            ByteBuffer header = ByteBuffer.wrap(wav).order(ByteOrder.LITTLE_ENDIAN);
+            int dataLength = i < 4 ? 1600 : 600;
+            assertEquals(WavHeader.HEADER_SIZE + dataLength, wav.length);
+            assertEquals(wav.length - 8, header.getInt(4));
+            assertEquals(8000, header.getInt(24));
+            assertEquals(dataLength, header.getInt(40));
+            actual.write(wav, WavHeader.HEADER_SIZE, dataLength);
+            writer.segmentFile(i).delete();
+        }
+        assertFalse(writer.segmentFile(5).exists());
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        dir.delete();
+    }
+
+    @Test
+    public void failedRotationKeepsWriterUsable() throws IOException {
+        File dir = File.createTempFile("rolling", "");
+        dir.delete();
+        dir.mkdirs();
+        SaveConfig config = new SaveConfig();
+        config.setAudioParams(8000, 1, 16, false);
+        config.setSegment(0, 100);
+        RollingPcmFileWriter writer = new RollingPcmFileWriter(new File(dir, "test.pcm"), config);
+        // 用同名目录占住第二段的文件, 使其打开失败
+        File blocker = writer.segmentFile(1);
+        assertTrue(blocker.mkdirs());
+        byte[] chunk = new byte[1000];
+        writer.write(chunk, 0, chunk.length);
+        for (int i = 0; i < 2; i++) {
+            try {
+                writer.write(chunk, 0, chunk.length);
+                fail("expected IOException");
+            } catch (IOException expected) {
+            }
+        }
+        writer.flush();
+        assertEquals(0, writer.getSegmentIndex());
+
+        assertTrue(blocker.delete());
+        writer.write(chunk, 0, chunk.length);
+        assertEquals(1, writer.getSegmentIndex());
+        writer.close();
+        assertEquals(1600, writer.segmentFile(0).length());
+        writer.segmentFile(0).delete();
+        writer.segmentFile(1).delete();
+        dir.delete();
+    }
+}
@@ -0,0 +1,117 @@
+package org.duoji.shortcode.android.record.util;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link SaveSession} barriers. 存储线程的消息在测试线程中直接调用 handleXxx 处理.
+ */
+public class SaveSessionTest {
+
+    @Test
+    public void writeFailure_failsLaterSyncAndClose() throws Exception {
+        CountingWriter writer = new CountingWriter();
+        writer.mWriteFailure = new IOException("ENOSPC");
+        SaveSession session = open(writer);
+
+        PcmChunk chunk = SaveVoiceUtil.getInstance().obtainChunk();
+        chunk.setLength(100);
+        session.writeChunk(chunk);
+        session.handleWrite(chunk);
+        writer.mWriteFailure = null;
+
+        // writer恢复后sync本身会成功, 但之前的数据已经丢失
+        chunk = SaveVoiceUtil.getInstance().obtainChunk();
+        chunk.setLength(100);
+        session.writeChunk(chunk);
+        session.handleWrite(chunk);
+        SaveFuture sync = session.sync();
+        session.handleBarrier();
+        assertTrue(sync.isDone());
+        assertEquals("ENOSPC", sync.getFailure().getMessage());
+
+        SaveFuture close = session.close();
+        session.handleClose(close);
+        assertEquals("ENOSPC", close.getFailure().getMessage());
+    }
+
+    @Test
+    public void concurrentSyncs_groupCommitIntoOneForce() throws Exception {
+        CountingWriter writer = new CountingWriter();
+        final SaveSession session = open(writer);
+        final SaveFuture[] futures = new SaveFuture[8];
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[futures.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    futures[index] = session.sync();
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // 每个请求各有一条消息, 第一条处理全部请求, 其余的已无事可做
+        for (int i = 0; i < futures.length; i++) {
+            session.handleBarrier();
+        }
+        assertEquals(1, writer.mSyncs);
+        for (SaveFuture future : futures) {
+            assertTrue(future.isDone());
+            assertNull(future.getFailure());
+        }
+    }
+
+    private static SaveSession open(final PcmFileWriter writer) {
+        SaveConfig config = new SaveConfig() {
+            @Override
+            PcmFileWriter openWriter(File file) {
+                return writer;
+            }
+        };
+        SaveSession session = new SaveSession(SaveVoiceUtil.getInstance(),
+                new SaveVoiceUtil.WriterThread("save_session_test", null), new File("unused.pcm"), config);
+        session.handleOpen();
+        return session;
+    }
+
+    private static class CountingWriter implements PcmFileWriter {
+        IOException mWriteFailure;
+        int mSyncs;
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            if (mWriteFailure != null) {
+                throw mWriteFailure;
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void sync() {
+            mSyncs++;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.duoji.shortcode.android.record.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link StreamingPcmFileWriter}.
+ */
+public class StreamingPcmFileWriterTest {
+
+    @Test
+    public void write_producesSameBytesAcrossBufferBoundaries() throws IOException {
+        File file = File.createTempFile("streaming", ".pcm");
+        try {
+            StreamingPcmFileWriter writer = new StreamingPcmFileWriter(file, 1000, 3, 2500);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            Random random = new Random(1);
+            byte[] chunk = new byte[1536];
+            for (int i = 0; i < 200; i++) {
+                random.nextBytes(chunk);
+                int length = 1 + random.nextInt(chunk.length);
+                writer.write(chunk, 0, length);
+                expected.write(chunk, 0, length);
+            }
+            assertEquals(expected.size(), writer.getLength());
+            writer.close();
+            assertArrayEquals(expected.toByteArray(), readFile(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void close_returnsBuffersToPool() throws IOException {
+        File file = File.createTempFile("streaming", ".pcm");
+        try {
+            DirectBufferPool pool = new DirectBufferPool(8);
+            StreamingPcmFileWriter writer = new StreamingPcmFileWriter(file, 1000, 3, 2500, pool);
+            writer.write(new byte[100], 0, 100);
+            writer.close();
+            writer.close();
+            assertEquals(3, pool.getIdleCount());
+            // 下一个文件复用同样的buffer
+            writer = new StreamingPcmFileWriter(file, 1000, 3, 2500, pool);
+            assertEquals(0, pool.getIdleCount());
+            writer.write(new byte[]{1, 2, 3}, 0, 3);
+            writer.close();
+            assertArrayEquals(new byte[]{1, 2, 3}, readFile(file));
+            assertEquals(3, pool.getIdleCount());
+        } finally {
+            file.delete();
+        }
+    }
+
+    static byte[] readFile(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.duoji.shortcode.android.view;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for {@link EventThrottle}, 时间由测试传入.
+ */
+public class EventThrottleTest {
+    private static final long MS = 1000000L;
+
+    @Test
+    public void throttle_allowsOncePerIntervalSinceLastAllowed() {
+        EventThrottle throttle = EventThrottle.throttle(100);
+        assertTrue(throttle.tryAcquire(1, null, 0));
+        assertFalse(throttle.tryAcquire(1, null, 60 * MS));
+        // 被拦截的事件不推迟下一次放行
+        assertTrue(throttle.tryAcquire(1, null, 100 * MS));
+        assertTrue(throttle.tryAcquire(2, null, 100 * MS));
+    }
+
+    @Test
+    public void debounce_requiresQuietInterval() {
+        EventThrottle debounce = EventThrottle.debounce(100);
+        assertTrue(debounce.tryAcquire(1, null, 0));
+        assertFalse(debounce.tryAcquire(1, null, 60 * MS));
+        assertFalse(debounce.tryAcquire(1, null, 120 * MS));
+        assertTrue(debounce.tryAcquire(1, null, 220 * MS));
+    }
+
+    @Test
+    public void tokenBucket_allowsBurstThenRefills() {
+        EventThrottle bucket = EventThrottle.tokenBucket(100, 3);
+        assertTrue(bucket.tryAcquire(1, null, 0));
+        assertTrue(bucket.tryAcquire(1, null, 0));
+        assertTrue(bucket.tryAcquire(1, null, 0));
+        assertFalse(bucket.tryAcquire(1, null, 0));
+        assertFalse(bucket.tryAcquire(1, null, 99 * MS));
+        assertTrue(bucket.tryAcquire(1, null, 100 * MS));
+        assertFalse(bucket.tryAcquire(1, null, 150 * MS));
+        // 空闲足够久后桶重新装满
+        for (int i = 0; i < 3; i++) {
+            assertTrue(bucket.tryAcquire(1, null, 1000 * MS));
+        }
+        assertFalse(bucket.tryAcquire(1, null, 1000 * MS));
+    }
+
+    @Test
+    public void objectKeys_areComparedByEquals() {
+        EventThrottle throttle = EventThrottle.throttle(100);
+        assertTrue(throttle.tryAcquire(1L, "button", 0));
+        assertFalse(throttle.tryAcquire(1L, new String("button"), MS));
+        // 同hash的long key不共享状态
+        assertTrue(throttle.tryAcquire(1L, null, MS));
+        throttle.remove("button");
+        assertTrue(throttle.tryAcquire("button".hashCode(), "button", 2 * MS));
+    }
+
+    @Test
+    public void fullTable_dropsExpiredKeysBeforeEvictingOldest() {
+        EventThrottle throttle = new EventThrottle(EventThrottle.MODE_THROTTLE, 100, 1, 4);
+        for (int key = 0; key < 4; key++) {
+            throttle.tryAcquire(key, null, key * 50 * MS);
+        }
+        // key 0, 1 已过期, 插入时移除
+        assertTrue(throttle.tryAcquire(10, null, 160 * MS));
+        assertEquals(3, throttle.size());
+        assertEquals(0, throttle.getEvictionCount());
+        assertTrue(throttle.tryAcquire(11, null, 170 * MS));
+        // 都未过期, 淘汰最久未访问的 key 2
+        assertTrue(throttle.tryAcquire(12, null, 180 * MS));
+        assertEquals(1, throttle.getEvictionCount());
+        assertEquals(4, throttle.size());
+        assertFalse(throttle.tryAcquire(3, null, 190 * MS));
+        assertTrue(throttle.tryAcquire(2, null, 190 * MS));
+    }
+
+    @Test
+    public void randomOperations_matchReferenceMap() {
+        // 上限足够大, 不触发淘汰, 结果应与HashMap实现一致, 覆盖删除时的槽位前移
+        EventThrottle throttle = new EventThrottle(EventThrottle.MODE_THROTTLE, 10, 1, 4096);
+        Map<Long, Long> reference = new HashMap<Long, Long>();
+        Random random = new Random(3);
+        long now = 0;
+        for (int i = 0; i < 200000; i++) {
+            now += random.nextInt(3) * MS;
+            long key = random.nextInt(600) * 1024L;
+            if (random.nextInt(10) == 0) {
+                throttle.remove(key);
+                reference.remove(key);
+                continue;
+            }
+            Long last = reference.get(key);
+            boolean expected = last == null || now - last >= 10 * MS;
+            if (expected) {
+                reference.put(key, now);
+            }
+            assertEquals("op " + i, expected, throttle.tryAcquire(key, null, now));
+        }
+        assertEquals(reference.size(), throttle.size());
+
+        // 频繁淘汰时条目数不超过上限, 新key总是放行
+        EventThrottle small = new EventThrottle(EventThrottle.MODE_TOKEN_BUCKET, 1000, 2, 16);
+        for (int i = 0; i < 100000; i++) {
+            now += MS;
+            long key = random.nextInt(64);
+            small.tryAcquire(key, null, now);
+            assertTrue(small.size() <= 16);
+        }
+        assertTrue(small.getEvictionCount() > 0);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.benchmark;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+
+import org.duoji.shortcode.android.assets.AssetCopier;
+import org.duoji.shortcode.android.assets.AssetsFileUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AssetsFileUtil 拷贝一个assets目录的耗时, assets由本地临时目录模拟.
+ * copyDirIncremental 为已拷贝过、apk版本未变时的启动耗时, copyDirParallel 为 AssetCopier 多线程拷贝.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AssetsCopyBenchmark {
+    private static final String ASSET_DIR = "models";
+
+    @Param({"4096", "1048576"})
+    public int fileSize;
+
+    @Param({"16"})
+    public int fileCount;
+
+    private File mRoot;
+    private File mTarget;
+    private File mIncrementalTarget;
+    private Context mContext;
+    private AssetCopier mCopier;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mRoot = createTempDir("assets");
+        mTarget = createTempDir("assets_copy");
+        mIncrementalTarget = createTempDir("assets_incremental");
+        File dir = new File(mRoot, ASSET_DIR + "/sub");
+        dir.mkdirs();
+        byte[] data = new byte[fileSize];
+        new Random(1).nextBytes(data);
+        for (int i = 0; i < fileCount; i++) {
+            OutputStream out = new FileOutputStream(new File(i % 2 == 0 ? dir.getParentFile() : dir, "file_" + i));
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+        }
+        final AssetManager assets = new AssetManager(mRoot);
+        mContext = new Context() {
+            @Override
+            public AssetManager getAssets() {
+                return assets;
+            }
+        };
+        mCopier = new AssetCopier();
+        if (!copyDirIncremental()) {
+            throw new IOException("incremental copy failed");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mCopier.shutdown();
+        delete(mRoot);
+        delete(mTarget);
+        delete(mIncrementalTarget);
+    }
+
+    @Benchmark
+    public boolean copyDir() {
+        return AssetsFileUtil.copyAssetsDir(mContext, ASSET_DIR, mTarget.getAbsolutePath() + "/" + ASSET_DIR);
+    }
+
+    @Benchmark
+    public boolean copyDirParallel() throws InterruptedException {
+        return AssetsFileUtil.copyAssetsDirParallel(mContext, mCopier, ASSET_DIR,
+                mTarget.getAbsolutePath() + "/" + ASSET_DIR).await();
+    }
+
+    @Benchmark
+    public boolean copyDirIncremental() {
+        return AssetsFileUtil.copyAssetsDirIncremental(mContext, ASSET_DIR,
+                mIncrementalTarget.getAbsolutePath() + "/" + ASSET_DIR);
+    }
+
+    private static File createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("can not create " + dir);
+        }
+        return dir;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.benchmark;
+
+import org.duoji.shortcode.android.view.CheckDoubleClick;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CheckDoubleClick.isFastDoubleClick 单次调用的开销, 每次点击都在主线程上执行.
+ * isFastDoubleClickByKey 为调用方指定key、不生成调用栈的版本, 4线程用例观察锁竞争.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckDoubleClickBenchmark {
+
+    @Benchmark
+    @Threads(1)
+    public boolean isFastDoubleClick() {
+        return CheckDoubleClick.isFastDoubleClick();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean isFastDoubleClickByKey() {
+        return CheckDoubleClick.isFastDoubleClick(42L);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean isFastDoubleClickByKeyContended() {
+        return CheckDoubleClick.isFastDoubleClick(42L);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.benchmark;
+
+import org.duoji.shortcode.android.record.PcmDispatcher;
+import org.duoji.shortcode.android.record.PcmRingBuffer;
+import org.duoji.shortcode.android.record.VoiceRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VoiceRecord 录音线程到 RecordListener 的分发路径: 与 RecordingRunnable 相同的
+ * claim/read/publish/signal 循环, 由分发线程回调listener, 测量每帧的端到端耗时.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PcmDispatchBenchmark {
+    private static final int FRAMES = 1024;
+
+    @Param({"640", "3200"})
+    public int frameSize;
+
+    @Param({"16"})
+    public int slots;
+
+    private PcmRingBuffer mRing;
+    private PcmDispatcher mDispatcher;
+    private CountingListener mListener;
+    private byte[] mSource;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mSource = new byte[frameSize];
+        for (int i = 0; i < mSource.length; i++) {
+            mSource[i] = (byte) i;
+        }
+        mRing = new PcmRingBuffer(slots, frameSize);
+        mListener = new CountingListener();
+        mDispatcher = new PcmDispatcher(mRing, mListener);
+        mDispatcher.start("bench_dispatch");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        mDispatcher.finish();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long dispatch() {
+        long target = mListener.mFrames + FRAMES;
+        for (int i = 0; i < FRAMES; i++) {
+            byte[] slot;
+            while ((slot = mRing.claim()) == null) {
+                Thread.yield();
+            }
+            System.arraycopy(mSource, 0, slot, 0, frameSize);
+            mRing.publish(frameSize);
+            mDispatcher.signal();
+        }
+        while (mListener.mFrames < target) {
+            Thread.yield();
+        }
+        return mListener.mChecksum;
+    }
+
+    static class CountingListener implements VoiceRecord.RecordListener {
+        volatile long mFrames;
+        long mChecksum;
+
+        @Override
+        public void onRecordingStart() {
+        }
+
+        @Override
+        public void onRecording(byte[] data, int sizeInBytes) {
+            // 读取首尾字节, 模拟listener访问数据
+            mChecksum += data[0] + data[sizeInBytes - 1];
+            mFrames++;
+        }
+
+        @Override
+        public void onRecordCreateError() {
+        }
+
+        @Override
+        public void onRecordingFailed() {
+        }
+
+        @Override
+        public void onRecordingEnd() {
+        }
+    }
+}
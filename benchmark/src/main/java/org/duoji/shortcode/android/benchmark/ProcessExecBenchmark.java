@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.benchmark;
+
+import org.duoji.shortcode.android.process.ProcessExecUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProcessExecUtil 执行命令并解析大量输出的耗时, 用 cat 输出一个预先生成的文本文件.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessExecBenchmark {
+    @Param({"100", "5000", "50000"})
+    public int lines;
+
+    private File mFile;
+    private String mCmd;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("process_exec", ".txt");
+        Writer writer = new FileWriter(mFile);
+        try {
+            for (int i = 0; i < lines; i++) {
+                writer.write("drwxr-xr-x  2 system system 4096 2018-10-01 12:00 entry_" + i + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        mCmd = "cat " + mFile.getAbsolutePath();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Benchmark
+    public int execAndParse() {
+        ProcessExecUtil util = ProcessExecUtil.getInstance();
+        if (!util.processExec(mCmd, false)) {
+            throw new IllegalStateException(util.getErrorInfo());
+        }
+        return util.getInputInfo().length();
+    }
+}
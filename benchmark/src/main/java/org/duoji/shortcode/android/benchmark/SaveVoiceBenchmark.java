@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.duoji.shortcode.android.benchmark;
+
+import org.duoji.shortcode.android.record.util.SaveConfig;
+import org.duoji.shortcode.android.record.util.SaveSession;
+import org.duoji.shortcode.android.record.util.SaveVoiceUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SaveVoiceUtil 写入并关闭一段录音的耗时, 覆盖不同的写入块大小、录音时长和写入模式.
+ * 文件写到 benchmark.storage(默认 java.io.tmpdir) 下的 duoji/benchmark 目录, 每次调用后删除.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SaveVoiceBenchmark {
+    /** 16kHz 单声道16位 */
+    private static final int BYTES_PER_SECOND = 32000;
+
+    @Param({"640", "4096", "32768"})
+    public int chunkSize;
+
+    @Param({"1", "30"})
+    public int seconds;
+
+    @Param({"0", "1"})
+    public int writeMode;
+
+    private SaveVoiceUtil mUtil;
+    private SaveConfig mConfig;
+    private byte[] mChunk;
+    private File mLastFile;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mUtil = SaveVoiceUtil.getInstance();
+        mUtil.setSaveDir("duoji/benchmark");
+        mConfig = new SaveConfig();
+        mConfig.setWriteMode(writeMode);
+        mChunk = new byte[chunkSize];
+        for (int i = 0; i < mChunk.length; i++) {
+            mChunk[i] = (byte) (i * 31);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteFile() {
+        if (mLastFile != null) {
+            mLastFile.delete();
+            mLastFile = null;
+        }
+    }
+
+    @Benchmark
+    public long writeAndClose() throws IOException, InterruptedException {
+        SaveSession session = mUtil.createFile("bench", mConfig);
+        long total = (long) seconds * BYTES_PER_SECOND;
+        for (long written = 0; written < total; written += chunkSize) {
+            session.writeFile(mChunk, 0, (int) Math.min(chunkSize, total - written));
+        }
+        session.close().await();
+        mLastFile = session.getFile();
+        return mLastFile.length();
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content;
+
+import android.content.pm.PackageManager;
+import android.content.res.AssetManager;
+
+public abstract class Context {
+    private final PackageManager mPackageManager = new PackageManager();
+
+    public abstract AssetManager getAssets();
+
+    public String getPackageName() {
+        return "org.duoji.shortcode.android";
+    }
+
+    public PackageManager getPackageManager() {
+        return mPackageManager;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content.res;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 基准测试用的Android桩: 以本地目录模拟assets, 与真实实现一样对文件路径list返回空数组.
+ */
+public class AssetManager {
+    private final File mRoot;
+
+    public AssetManager(File root) {
+        mRoot = root;
+    }
+
+    public String[] list(String path) throws IOException {
+        String[] names = new File(mRoot, path).list();
+        return names == null ? new String[0] : names;
+    }
+
+    public InputStream open(String fileName) throws IOException {
+        return new FileInputStream(new File(mRoot, fileName));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2018 DUOJI Android Short Code
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.media;
+
+/**
+ * 基准测试用的Android桩: 不做任何等待, read立即返回请求长度的静音数据.
+ */
+public class AudioRecord {
+    public static final int STATE_UNINITIALIZED = 0;
+    public static final int STATE_INITIALIZED = 1;
+    public static final int ERROR = -1;
+    public static final int ERROR_BAD_VALUE = -2;
+    public static final int ERROR_INVALID_OPERATION = -3;
+
+    private int mState = STATE_INITIALIZED;
+
+    public AudioRecord(int audioSource, int sampleRateInHz, int channelConfig, int audioFormat,
+                       int bufferSizeInBytes) {
+    }
+
+    public static int getMinBufferSize(int sampleRateInHz, int channelConfig, int audioFormat) {
+        return 640;
+    }
+
+    public int getState() {
+        return mState;
+    }
+
+    public void startRecording() {
+    }
+
+    public int read(byte[] audioData, int offsetInBytes, int sizeInBytes) {
+        return mState == STATE_INITIALIZED ? sizeInBytes : ERROR_INVALID_OPERATION;
+    }
+
+    public void stop() {
+    }
+
+    public void release() {
+        mState = STATE_UNINITIALIZED;
+    }
+}